@@ -0,0 +1,78 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.googlecode.jsendnsca;
+
+import com.googlecode.jsendnsca.builders.NagiosSettingsBuilder;
+import org.apache.commons.lang3.StringUtils;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+
+/**
+ * Measures building a Passive Check packet and its CRC32 at the standard and
+ * large message packet sizes
+ * <p>
+ * Lives in the jsendnsca package so the package private
+ * {@link PassiveCheckBytesBuilder} can be benchmarked directly
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class PassiveCheckEncodingBenchmark {
+
+    @Param({"512", "4096"})
+    private int maxMessageSizeInChars;
+
+    private PassiveCheckBytesBuilder builder;
+    private MessagePayload payload;
+    private byte[] packet;
+    private CRC32 crc;
+
+    @Setup
+    public void setUp() {
+        NagiosSettingsBuilder settingsBuilder = new NagiosSettingsBuilder();
+        if (maxMessageSizeInChars > 512) {
+            settingsBuilder.withLargeMessageSupportEnabled();
+        }
+        NagiosSettings settings = settingsBuilder.create();
+        builder = new PassiveCheckBytesBuilder(settings);
+        payload = new MessagePayload("benchmark-host", Level.WARNING, "benchmark service",
+                StringUtils.repeat('x', maxMessageSizeInChars - 1));
+        packet = new byte[PassiveCheckBytesBuilder.packetSize(settings)];
+        crc = new CRC32();
+    }
+
+    @Benchmark
+    public byte[] encode() {
+        return builder.reset()
+                .withTimeStamp(1)
+                .withLevel(payload.getLevel())
+                .withHostname(payload.getHostname())
+                .withServiceName(payload.getServiceName())
+                .withMessage(payload.getMessage())
+                .writeCRC()
+                .toByteArray();
+    }
+
+    @Benchmark
+    public long crc32() {
+        crc.reset();
+        crc.update(packet, 0, packet.length);
+        return crc.getValue();
+    }
+}
@@ -0,0 +1,81 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.googlecode.jsendnsca.encryption;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures each {@link Encryption} over a Passive Check packet at the standard
+ * and large message packet sizes, both as a single check per connection and as
+ * one of many checks sent over an established connection
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class EncryptionBenchmark {
+
+    private static final String PASSWORD = "benchmark";
+
+    @Param({"NONE", "XOR", "TRIPLE_DES", "RIJNDAEL128", "RIJNDAEL192", "RIJNDAEL256", "BLOWFISH"})
+    private Encryption encryption;
+
+    @Param({"512", "4096"})
+    private int maxMessageSizeInChars;
+
+    private Encryptor encryptor;
+    private byte[] initVector;
+    private byte[] packet;
+    private EncryptionContext connection;
+
+    @Setup
+    public void setUp() {
+        Random random = new Random(42);
+        encryptor = encryption.getEncryptor();
+        initVector = new byte[128];
+        random.nextBytes(initVector);
+        // header, hostname, service name and message as laid out by PassiveCheckBytesBuilder
+        packet = new byte[16 + 64 + 128 + maxMessageSizeInChars];
+        random.nextBytes(packet);
+        connection = encryptor.initialise(initVector, PASSWORD);
+    }
+
+    @Benchmark
+    public byte[] singleCheckPerConnection() {
+        // closed as a session does, returning any pooled cipher for the next connection
+        final EncryptionContext context = encryptor.initialise(initVector, PASSWORD);
+        try {
+            context.encrypt(packet);
+        } finally {
+            context.close();
+        }
+        return packet;
+    }
+
+    @TearDown
+    public void tearDown() {
+        connection.close();
+    }
+
+    @Benchmark
+    public byte[] checkOnEstablishedConnection() {
+        connection.encrypt(packet);
+        return packet;
+    }
+}
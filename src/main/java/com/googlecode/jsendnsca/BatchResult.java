@@ -0,0 +1,119 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.googlecode.jsendnsca;
+
+import org.apache.commons.lang3.builder.ToStringBuilder;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static org.apache.commons.lang3.builder.ToStringStyle.SHORT_PREFIX_STYLE;
+
+/**
+ * The outcome of each Passive Check sent by
+ * {@link PassiveCheckSender#sendAll(Iterable)}
+ *
+ * @see PassiveCheckSender#sendAll(Iterable)
+ */
+public class BatchResult {
+
+    private final List<MessagePayload> succeeded = new ArrayList<>();
+    private final List<Failure> failures = new ArrayList<>();
+
+    /**
+     * Record a Passive Check as sent
+     *
+     * @param payload
+     *            the Passive Check message payload
+     */
+    void succeeded(MessagePayload payload) {
+        succeeded.add(payload);
+    }
+
+    /**
+     * Record a Passive Check as not sent
+     *
+     * @param payload
+     *            the Passive Check message payload
+     * @param exception
+     *            the reason the Passive Check was not sent
+     */
+    void failed(MessagePayload payload, Exception exception) {
+        failures.add(new Failure(payload, exception));
+    }
+
+    /**
+     * The Passive Checks sent, in the order they were sent
+     *
+     * @return the sent Passive Checks
+     */
+    public List<MessagePayload> getSucceeded() {
+        return Collections.unmodifiableList(succeeded);
+    }
+
+    /**
+     * The Passive Checks not sent, in the order they were sent
+     *
+     * @return the failures
+     */
+    public List<Failure> getFailures() {
+        return Collections.unmodifiableList(failures);
+    }
+
+    /**
+     * Whether every Passive Check was sent
+     *
+     * @return true if there were no failures
+     */
+    public boolean isSuccessful() {
+        return failures.isEmpty();
+    }
+
+    @Override
+    public String toString() {
+        return new ToStringBuilder(this, SHORT_PREFIX_STYLE)
+                .append("succeeded", succeeded.size())
+                .append("failed", failures.size())
+                .toString();
+    }
+
+    /**
+     * A Passive Check which was not sent and why
+     */
+    public static class Failure {
+
+        private final MessagePayload payload;
+        private final Exception exception;
+
+        Failure(MessagePayload payload, Exception exception) {
+            this.payload = payload;
+            this.exception = exception;
+        }
+
+        /**
+         * @return the Passive Check message payload
+         */
+        public MessagePayload getPayload() {
+            return payload;
+        }
+
+        /**
+         * @return the reason the Passive Check was not sent
+         */
+        public Exception getException() {
+            return exception;
+        }
+    }
+}
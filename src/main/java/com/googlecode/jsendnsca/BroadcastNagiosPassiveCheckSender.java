@@ -0,0 +1,235 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.googlecode.jsendnsca;
+
+import org.apache.commons.lang3.Validate;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Sends every Passive Check to each of several NSCA servers at the same time,
+ * such as to redundant Nagios instances that must all receive it, so sending
+ * takes as long as the slowest server needed rather than all of them in turn.
+ * <p>
+ *
+ * {@link #send(MessagePayload)} returns once the Passive Check has been sent
+ * to the servers required by the {@link Completion}, sending to the remaining
+ * servers carrying on in the background, and throws a {@link NagiosException}
+ * once too many servers have failed for it to be met.
+ * <p>
+ *
+ * Each server is sent to by at most {@link NagiosSettings#getBroadcastConcurrency()}
+ * threads with up to {@link NagiosSettings#getQueueCapacity()} Passive Checks
+ * waiting, so a slow server can't use up unbounded threads. A Passive Check
+ * that doesn't fit in a server's queue counts as failing to be sent to it.
+ * <p>
+ *
+ * This sender is thread safe. Call {@link #shutdown()} to stop the threads
+ * sending to each server.
+ *
+ * @see DestinationStatistics
+ */
+public class BroadcastNagiosPassiveCheckSender implements PassiveCheckSender {
+
+    /**
+     * How many NSCA servers a Passive Check must be sent to before
+     * {@link #send(MessagePayload)} returns
+     */
+    public enum Completion {
+        /**
+         * Every server
+         */
+        ALL,
+        /**
+         * At least one server
+         */
+        ANY,
+        /**
+         * More than half of the servers
+         */
+        QUORUM
+    }
+
+    private final List<PassiveCheckSender> senders;
+    private final List<DestinationStatistics> statistics;
+    private final int required;
+    private final List<ExecutorService> executors;
+
+    /**
+     * Construct a new {@link BroadcastNagiosPassiveCheckSender} sending to the
+     * NSCA servers of the provided {@link NagiosSettings}
+     *
+     * @param destinationSettings the {@link NagiosSettings} of each NSCA server
+     * @param completion the {@link Completion} required for a send to succeed
+     */
+    public BroadcastNagiosPassiveCheckSender(Collection<NagiosSettings> destinationSettings, Completion completion) {
+        this(senders(destinationSettings), destinationSettings, completion);
+    }
+
+    BroadcastNagiosPassiveCheckSender(List<PassiveCheckSender> senders, Collection<NagiosSettings> destinationSettings, Completion completion) {
+        Validate.notNull(completion, "completion cannot be null");
+        this.senders = senders;
+        this.statistics = new ArrayList<>(destinationSettings.size());
+        this.executors = new ArrayList<>(destinationSettings.size());
+        for (NagiosSettings settings : destinationSettings) {
+            statistics.add(new DestinationStatistics(settings));
+            executors.add(newExecutor(settings));
+        }
+        this.required = required(completion, senders.size());
+    }
+
+    private static ExecutorService newExecutor(NagiosSettings settings) {
+        final ThreadPoolExecutor executor = new ThreadPoolExecutor(settings.getBroadcastConcurrency(), settings.getBroadcastConcurrency(),
+                60L, TimeUnit.SECONDS, new ArrayBlockingQueue<>(settings.getQueueCapacity()), runnable -> {
+                    Thread thread = new Thread(runnable, "jsendnsca-broadcast");
+                    thread.setDaemon(true);
+                    return thread;
+                });
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+
+    /**
+     * Send the Passive Check to every NSCA server, waiting until it has been
+     * sent to the servers required by the {@link Completion}
+     *
+     * @param payload
+     *            the Passive Check message payload
+     * @throws NagiosException
+     *             thrown if the Passive Check failed to be sent to enough servers,
+     *             caused by the first server to fail with those of the others suppressed
+     */
+    @Override
+    public void send(MessagePayload payload) {
+        Validate.notNull(payload, "payload cannot be null");
+
+        final Broadcast broadcast = new Broadcast(senders.size());
+        for (int i = 0; i < senders.size(); i++) {
+            final PassiveCheckSender sender = senders.get(i);
+            final DestinationStatistics destination = statistics.get(i);
+            final ExecutorService executor = executors.get(i);
+            try {
+                executor.execute(() -> sendTo(sender, destination, payload, broadcast));
+            } catch (RejectedExecutionException e) {
+                if (executor.isShutdown()) {
+                    throw e;
+                }
+                final NagiosException overflow = new NagiosException("Passive alert dropped as queue is full", e);
+                destination.recordFailure(overflow);
+                broadcast.failed(overflow);
+            }
+        }
+        broadcast.await();
+    }
+
+    /**
+     * @return the statistics of each NSCA server, in the order they were provided
+     */
+    public List<DestinationStatistics> getDestinationStatistics() {
+        return Collections.unmodifiableList(statistics);
+    }
+
+    /**
+     * Stop the threads sending to each NSCA server, Passive Checks still being
+     * sent in the background are completed.
+     * <p>
+     * To be used when your application has been shutdown and you want to
+     * cleanup all resources such as if you run in a hot deployment environment.
+     */
+    public void shutdown() {
+        for (ExecutorService executor : executors) {
+            executor.shutdown();
+        }
+    }
+
+    private static void sendTo(PassiveCheckSender sender, DestinationStatistics destination, MessagePayload payload, Broadcast broadcast) {
+        final long start = System.nanoTime();
+        try {
+            sender.send(payload);
+            destination.recordSent(System.nanoTime() - start);
+            broadcast.sent();
+        } catch (Exception e) {
+            destination.recordFailure(e);
+            broadcast.failed(e);
+        }
+    }
+
+    private static List<PassiveCheckSender> senders(Collection<NagiosSettings> destinationSettings) {
+        Validate.notEmpty(destinationSettings, "destinationSettings cannot be null or empty");
+        final List<PassiveCheckSender> senders = new ArrayList<>(destinationSettings.size());
+        for (NagiosSettings settings : destinationSettings) {
+            senders.add(new NagiosPassiveCheckSender(settings));
+        }
+        return senders;
+    }
+
+    private static int required(Completion completion, int destinations) {
+        switch (completion) {
+            case ANY:
+                return 1;
+            case QUORUM:
+                return destinations / 2 + 1;
+            default:
+                return destinations;
+        }
+    }
+
+    private final class Broadcast {
+
+        private final int destinations;
+        private final List<Exception> failures = new ArrayList<>();
+        private int sent;
+
+        private Broadcast(int destinations) {
+            this.destinations = destinations;
+        }
+
+        private synchronized void sent() {
+            sent++;
+            notifyAll();
+        }
+
+        private synchronized void failed(Exception e) {
+            failures.add(e);
+            notifyAll();
+        }
+
+        private synchronized void await() {
+            try {
+                while (sent < required && destinations - failures.size() >= required) {
+                    wait();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new NagiosException("Interrupted while sending passive alert", e);
+            }
+            if (sent < required) {
+                final NagiosException e = new NagiosException("Passive alert sent to " + sent + " of " + destinations
+                        + " NSCA servers but " + required + " required", failures.get(0));
+                for (int i = 1; i < failures.size(); i++) {
+                    e.addSuppressed(failures.get(i));
+                }
+                throw e;
+            }
+        }
+    }
+}
@@ -0,0 +1,164 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.googlecode.jsendnsca;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Stops a {@link NagiosPassiveCheckSender} connecting to NSCA while it is
+ * unreachable, so senders fail fast rather than each waiting out the connect
+ * timeout.
+ * <p>
+ *
+ * The breaker is {@link State#CLOSED} until
+ * {@link NagiosSettings#getCircuitBreakerFailureRateThreshold()} percent of
+ * the last {@link NagiosSettings#getCircuitBreakerWindowSize()} connections
+ * have failed, including those timing out, then {@link State#OPEN} for
+ * {@link NagiosSettings#getCircuitBreakerOpenDuration()}, rejecting every
+ * connection, then {@link State#HALF_OPEN}, letting a single connection
+ * through which closes the breaker if it succeeds or opens it again if not.
+ */
+public final class CircuitBreaker {
+
+    /**
+     * The state of a {@link CircuitBreaker}
+     */
+    public enum State {
+        /**
+         * Connecting to NSCA as normal
+         */
+        CLOSED,
+        /**
+         * Failing fast without connecting to NSCA
+         */
+        OPEN,
+        /**
+         * Letting a single connection through to test whether NSCA has recovered
+         */
+        HALF_OPEN
+    }
+
+    private final NagiosSettings settings;
+    private final boolean[] failed;
+    private final LongAdder rejected = new LongAdder();
+    private volatile State state = State.CLOSED;
+    private int calls;
+    private int failures;
+    private int next;
+    private long openedAt;
+    private boolean probing;
+
+    CircuitBreaker(NagiosSettings settings) {
+        this.settings = settings;
+        this.failed = new boolean[settings.getCircuitBreakerWindowSize()];
+    }
+
+    /**
+     * @return the current state, {@link State#CLOSED} while the breaker is disabled
+     */
+    public State getState() {
+        return state;
+    }
+
+    /**
+     * @return the percentage of the connections in the window that failed
+     */
+    public synchronized int getFailureRate() {
+        return calls == 0 ? 0 : failures * 100 / calls;
+    }
+
+    /**
+     * @return the number of connections rejected without trying NSCA
+     */
+    public long getRejectedCount() {
+        return rejected.sum();
+    }
+
+    boolean tryAcquire() {
+        if (state == State.CLOSED) {
+            return true;
+        }
+        synchronized (this) {
+            if (state == State.OPEN) {
+                if (System.nanoTime() - openedAt < TimeUnit.MILLISECONDS.toNanos(settings.getCircuitBreakerOpenDuration())) {
+                    rejected.increment();
+                    return false;
+                }
+                state = State.HALF_OPEN;
+                probing = false;
+            }
+            if (state == State.HALF_OPEN) {
+                if (probing) {
+                    rejected.increment();
+                    return false;
+                }
+                probing = true;
+            }
+            return true;
+        }
+    }
+
+    synchronized void recordSuccess() {
+        if (state == State.HALF_OPEN) {
+            close();
+        } else if (state == State.CLOSED) {
+            record(false);
+        }
+    }
+
+    synchronized void recordFailure() {
+        if (state == State.HALF_OPEN) {
+            open();
+        } else if (state == State.CLOSED) {
+            record(true);
+            final int threshold = settings.getCircuitBreakerFailureRateThreshold();
+            if (threshold > 0 && calls == failed.length && failures * 100 >= threshold * calls) {
+                open();
+            }
+        }
+    }
+
+    private void record(boolean failure) {
+        if (calls == failed.length) {
+            if (failed[next]) {
+                failures--;
+            }
+        } else {
+            calls++;
+        }
+        failed[next] = failure;
+        if (failure) {
+            failures++;
+        }
+        next = (next + 1) % failed.length;
+    }
+
+    private void open() {
+        openedAt = System.nanoTime();
+        state = State.OPEN;
+    }
+
+    private void close() {
+        calls = 0;
+        failures = 0;
+        next = 0;
+        state = State.CLOSED;
+    }
+
+    @Override
+    public String toString() {
+        return "CircuitBreaker[state=" + state + ",failureRate=" + getFailureRate() + ",rejected=" + getRejectedCount() + "]";
+    }
+}
@@ -0,0 +1,29 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.googlecode.jsendnsca;
+
+/**
+ * Thrown instead of connecting to NSCA while the {@link CircuitBreaker} is open
+ */
+public class CircuitBreakerOpenException extends NagiosException {
+
+    private static final long serialVersionUID = -3385213373208530446L;
+
+    /**
+     * Constructs an instance of <code>CircuitBreakerOpenException</code>
+     */
+    public CircuitBreakerOpenException() {
+        super("Circuit breaker is open, not connecting to NSCA");
+    }
+}
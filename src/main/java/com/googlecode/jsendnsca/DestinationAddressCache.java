@@ -0,0 +1,212 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.googlecode.jsendnsca;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.BiConsumer;
+
+/**
+ * The resolved addresses of an NSCA host, cached for
+ * {@link NagiosSettings#getAddressCacheTimeToLive()}. Once expired the cached
+ * addresses are still used while they are resolved again in the background,
+ * and kept for another time to live if that fails.
+ * <p>
+ * Background resolution runs on a small shared pool of resolver threads, and
+ * callers waiting on a host already being resolved share that lookup rather
+ * than queueing another.
+ */
+final class DestinationAddressCache {
+
+    private static final int RESOLVER_THREADS = 4;
+    private static final Executor REFRESHER = newRefresher();
+
+    private final NagiosSettings nagiosSettings;
+    private final Lookup lookup;
+    private final Executor refresher;
+    private final AtomicBoolean refreshing = new AtomicBoolean();
+    private final Map<String, List<BiConsumer<InetAddress[], UnknownHostException>>> pendingLookups = new HashMap<>();
+    private volatile Resolved resolved;
+
+    DestinationAddressCache(NagiosSettings nagiosSettings) {
+        this(nagiosSettings, InetAddress::getAllByName, REFRESHER);
+    }
+
+    DestinationAddressCache(NagiosSettings nagiosSettings, Lookup lookup, Executor refresher) {
+        this.nagiosSettings = nagiosSettings;
+        this.lookup = lookup;
+        this.refresher = refresher;
+    }
+
+    /**
+     * @param host
+     *            the NSCA host, resolved again if it is not the host cached
+     * @return the addresses of the NSCA host
+     * @throws UnknownHostException
+     *             thrown if the host has not been resolved and cannot be
+     */
+    InetAddress[] getAddresses(String host) throws UnknownHostException {
+        final long timeToLiveInNanos = TimeUnit.MILLISECONDS.toNanos(nagiosSettings.getAddressCacheTimeToLive());
+        if (timeToLiveInNanos == 0) {
+            return resolve(host).addresses;
+        }
+        Resolved current = resolved;
+        if (current == null || !current.host.equals(host)) {
+            synchronized (this) {
+                current = resolved;
+                if (current == null || !current.host.equals(host)) {
+                    current = resolve(host);
+                    resolved = current;
+                }
+            }
+        } else if (System.nanoTime() - current.resolvedAt >= timeToLiveInNanos && refreshing.compareAndSet(false, true)) {
+            refreshInBackground(current);
+        }
+        return current.addresses;
+    }
+
+    /**
+     * The cached addresses of the NSCA host without blocking, refreshing them
+     * in the background once expired
+     *
+     * @param host
+     *            the NSCA host
+     * @return the cached addresses, or null if the host has not been resolved
+     *         or addresses are not cached
+     */
+    InetAddress[] getCachedAddresses(String host) {
+        final long timeToLiveInNanos = TimeUnit.MILLISECONDS.toNanos(nagiosSettings.getAddressCacheTimeToLive());
+        final Resolved current = resolved;
+        if (timeToLiveInNanos == 0 || current == null || !current.host.equals(host)) {
+            return null;
+        }
+        if (System.nanoTime() - current.resolvedAt >= timeToLiveInNanos && refreshing.compareAndSet(false, true)) {
+            refreshInBackground(current);
+        }
+        return current.addresses;
+    }
+
+    private static Executor newRefresher() {
+        final ThreadPoolExecutor refresher = new ThreadPoolExecutor(RESOLVER_THREADS, RESOLVER_THREADS, 60, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>(), runnable -> {
+                    Thread thread = new Thread(runnable, "jsendnsca-address-resolver");
+                    thread.setDaemon(true);
+                    return thread;
+                });
+        refresher.allowCoreThreadTimeOut(true);
+        return refresher;
+    }
+
+    /**
+     * Resolve the NSCA host on a resolver thread, passing its addresses or
+     * the failure to resolve them to the callback, joining the lookup already
+     * pending for the host if there is one
+     *
+     * @param host
+     *            the NSCA host
+     * @param callback
+     *            called with the addresses, or null and the failure
+     */
+    void resolveInBackground(String host, BiConsumer<InetAddress[], UnknownHostException> callback) {
+        synchronized (pendingLookups) {
+            final List<BiConsumer<InetAddress[], UnknownHostException>> waiting = pendingLookups.get(host);
+            if (waiting != null) {
+                waiting.add(callback);
+                return;
+            }
+            final List<BiConsumer<InetAddress[], UnknownHostException>> callbacks = new ArrayList<>();
+            callbacks.add(callback);
+            pendingLookups.put(host, callbacks);
+        }
+        try {
+            refresher.execute(() -> lookUpFor(host));
+        } catch (RejectedExecutionException e) {
+            synchronized (pendingLookups) {
+                pendingLookups.remove(host);
+            }
+            throw e;
+        }
+    }
+
+    private void lookUpFor(String host) {
+        InetAddress[] addresses = null;
+        UnknownHostException unresolved = null;
+        try {
+            addresses = getAddresses(host);
+        } catch (UnknownHostException e) {
+            unresolved = e;
+        }
+        final List<BiConsumer<InetAddress[], UnknownHostException>> callbacks;
+        synchronized (pendingLookups) {
+            callbacks = pendingLookups.remove(host);
+        }
+        for (BiConsumer<InetAddress[], UnknownHostException> callback : callbacks) {
+            callback.accept(addresses, unresolved);
+        }
+    }
+
+    private void refreshInBackground(Resolved current) {
+        try {
+            refresher.execute(() -> {
+                try {
+                    resolved = resolve(current.host);
+                } catch (UnknownHostException e) {
+                    resolved = new Resolved(current.host, current.addresses);
+                } finally {
+                    refreshing.set(false);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            refreshing.set(false);
+        }
+    }
+
+    private Resolved resolve(String host) throws UnknownHostException {
+        try {
+            return new Resolved(host, lookup.lookUp(host));
+        } catch (UnknownHostException e) {
+            // keep the message of an unresolved address failing to connect
+            UnknownHostException unknownHost = new UnknownHostException(host);
+            unknownHost.initCause(e);
+            throw unknownHost;
+        }
+    }
+
+    interface Lookup {
+
+        InetAddress[] lookUp(String host) throws UnknownHostException;
+    }
+
+    private static final class Resolved {
+
+        private final String host;
+        private final InetAddress[] addresses;
+        private final long resolvedAt = System.nanoTime();
+
+        private Resolved(String host, InetAddress[] addresses) {
+            this.host = host;
+            this.addresses = addresses;
+        }
+    }
+}
@@ -0,0 +1,89 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.googlecode.jsendnsca;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * The health of one NSCA server a {@link NagiosPassiveCheckSender} sends to.
+ * A server that fails to accept a connection is skipped for
+ * {@link NagiosSettings#getFailoverCoolDown()} while other servers are
+ * healthy, rather than every send waiting on it.
+ */
+public final class DestinationHealth {
+
+    private static final long NEVER = -1L;
+
+    private final NagiosDestination destination;
+    private final DestinationAddressCache addresses;
+    private final AtomicInteger consecutiveFailures = new AtomicInteger();
+    private volatile long lastFailureAt = NEVER;
+    private volatile long lastConnectLatencyInNanos = NEVER;
+
+    DestinationHealth(NagiosDestination destination, DestinationAddressCache addresses) {
+        this.destination = destination;
+        this.addresses = addresses;
+    }
+
+    /**
+     * @return the NSCA server this health is for
+     */
+    public NagiosDestination getDestination() {
+        return destination;
+    }
+
+    /**
+     * @return the number of times in a row connecting to this server has
+     *         failed, 0 once a connection succeeds
+     */
+    public int getConsecutiveFailures() {
+        return consecutiveFailures.get();
+    }
+
+    /**
+     * @return how long the last successful connection took to open in ms,
+     *         or -1 if none has
+     */
+    public long getLastConnectLatency() {
+        final long latency = lastConnectLatencyInNanos;
+        return latency == NEVER ? NEVER : TimeUnit.NANOSECONDS.toMillis(latency);
+    }
+
+    DestinationAddressCache getAddresses() {
+        return addresses;
+    }
+
+    boolean isCoolingDown(int coolDown) {
+        final long failedAt = lastFailureAt;
+        return consecutiveFailures.get() > 0 && failedAt != NEVER
+                && System.nanoTime() - failedAt < TimeUnit.MILLISECONDS.toNanos(coolDown);
+    }
+
+    void recordSuccess(long connectLatencyInNanos) {
+        lastConnectLatencyInNanos = connectLatencyInNanos;
+        consecutiveFailures.set(0);
+    }
+
+    void recordFailure() {
+        lastFailureAt = System.nanoTime();
+        consecutiveFailures.incrementAndGet();
+    }
+
+    @Override
+    public String toString() {
+        return "DestinationHealth[destination=" + destination + ",consecutiveFailures=" + getConsecutiveFailures()
+                + ",lastConnectLatency=" + getLastConnectLatency() + "]";
+    }
+}
@@ -0,0 +1,88 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.googlecode.jsendnsca;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counts and latency of the Passive Checks a
+ * {@link BroadcastNagiosPassiveCheckSender} sent to one of its NSCA servers
+ */
+public final class DestinationStatistics {
+
+    private static final long NEVER = -1L;
+
+    private final NagiosSettings settings;
+    private final LongAdder sent = new LongAdder();
+    private final LongAdder failed = new LongAdder();
+    private volatile long lastLatencyInNanos = NEVER;
+    private volatile Exception lastFailure;
+
+    DestinationStatistics(NagiosSettings settings) {
+        this.settings = settings;
+    }
+
+    /**
+     * @return the {@link NagiosSettings} of the NSCA server
+     */
+    public NagiosSettings getSettings() {
+        return settings;
+    }
+
+    /**
+     * @return the number of Passive Checks sent to the NSCA server
+     */
+    public long getSentCount() {
+        return sent.sum();
+    }
+
+    /**
+     * @return the number of Passive Checks that failed to be sent to the NSCA server
+     */
+    public long getFailureCount() {
+        return failed.sum();
+    }
+
+    /**
+     * @return how long the last Passive Check sent took in ms, or -1 if none has been
+     */
+    public long getLastLatency() {
+        final long latency = lastLatencyInNanos;
+        return latency == NEVER ? NEVER : TimeUnit.NANOSECONDS.toMillis(latency);
+    }
+
+    /**
+     * @return the exception the last failed Passive Check was sent with, or null if none has failed
+     */
+    public Exception getLastFailure() {
+        return lastFailure;
+    }
+
+    void recordSent(long latencyInNanos) {
+        lastLatencyInNanos = latencyInNanos;
+        sent.increment();
+    }
+
+    void recordFailure(Exception e) {
+        lastFailure = e;
+        failed.increment();
+    }
+
+    @Override
+    public String toString() {
+        return "DestinationStatistics[destinations=" + settings.getDestinations() + ",sent=" + getSentCount()
+                + ",failed=" + getFailureCount() + ",lastLatency=" + getLastLatency() + "]";
+    }
+}
@@ -0,0 +1,170 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.googlecode.jsendnsca;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.Inet6Address;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Connects to whichever address of a host answers first, in the style of
+ * happy eyeballs (RFC 8305). Addresses are tried alternating between IPv6 and
+ * IPv4, a further attempt being started every {@value #ATTEMPT_DELAY_IN_MS} ms
+ * or as soon as an attempt fails, so an unreachable address doesn't cost the
+ * whole connect timeout. All attempts share the one connect timeout, where 0
+ * means no timeout as for {@link Socket#connect(java.net.SocketAddress, int)}.
+ */
+final class HappyEyeballsConnector {
+
+    static final int ATTEMPT_DELAY_IN_MS = 250;
+
+    private HappyEyeballsConnector() {
+        // private constructor as only supports static methods
+    }
+
+    static Socket connect(InetAddress[] addresses, int port, int connectTimeout) throws IOException {
+        if (addresses.length == 1) {
+            Socket socket = new Socket();
+            try {
+                socket.connect(new InetSocketAddress(addresses[0], port), connectTimeout);
+                return socket;
+            } catch (IOException e) {
+                closeQuietly(socket);
+                throw e;
+            }
+        }
+        return race(interleaved(addresses), port, connectTimeout);
+    }
+
+    private static Socket race(List<InetAddress> addresses, int port, int connectTimeout) throws IOException {
+        final List<SocketChannel> attempts = new ArrayList<>();
+        SocketChannel connected = null;
+        IOException failure = null;
+        final boolean timed = connectTimeout > 0;
+        final long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(connectTimeout);
+        long nextAttemptAt = System.nanoTime();
+        int next = 0;
+        // cancelled keys stay in the selector's key set until the next select, so live attempts are counted here
+        int live = 0;
+        try (Selector selector = Selector.open()) {
+            while (connected == null) {
+                long now = System.nanoTime();
+                if (next < addresses.size() && (now >= nextAttemptAt || live == 0)) {
+                    SocketChannel channel = SocketChannel.open();
+                    attempts.add(channel);
+                    try {
+                        channel.configureBlocking(false);
+                        if (channel.connect(new InetSocketAddress(addresses.get(next++), port))) {
+                            connected = channel;
+                            break;
+                        }
+                        channel.register(selector, SelectionKey.OP_CONNECT);
+                        live++;
+                        nextAttemptAt = now + TimeUnit.MILLISECONDS.toNanos(ATTEMPT_DELAY_IN_MS);
+                    } catch (IOException e) {
+                        failure = e;
+                        closeQuietly(channel);
+                    }
+                    continue;
+                }
+                if (live == 0) {
+                    throw failure;
+                }
+                if (timed && now >= deadline) {
+                    throw new SocketTimeoutException("Connect timed out");
+                }
+                if (next < addresses.size() || timed) {
+                    long wakeAt = next >= addresses.size() ? deadline : timed ? Math.min(deadline, nextAttemptAt) : nextAttemptAt;
+                    selector.select(Math.max(1L, TimeUnit.NANOSECONDS.toMillis(wakeAt - now)));
+                } else {
+                    // no connect timeout, so wait for an attempt to connect or fail
+                    selector.select();
+                }
+                Iterator<SelectionKey> selected = selector.selectedKeys().iterator();
+                while (selected.hasNext() && connected == null) {
+                    SelectionKey key = selected.next();
+                    selected.remove();
+                    SocketChannel channel = (SocketChannel) key.channel();
+                    try {
+                        if (channel.finishConnect()) {
+                            key.cancel();
+                            connected = channel;
+                        }
+                    } catch (IOException e) {
+                        failure = e;
+                        key.cancel();
+                        closeQuietly(channel);
+                        live--;
+                        nextAttemptAt = System.nanoTime();
+                    }
+                }
+            }
+        } finally {
+            for (SocketChannel attempt : attempts) {
+                if (attempt != connected) {
+                    closeQuietly(attempt);
+                }
+            }
+        }
+        // the selector is closed so the channel is deregistered and can block again
+        try {
+            connected.configureBlocking(true);
+            return connected.socket();
+        } catch (IOException e) {
+            closeQuietly(connected);
+            throw e;
+        }
+    }
+
+    private static List<InetAddress> interleaved(InetAddress[] addresses) {
+        final List<InetAddress> preferred = new ArrayList<>();
+        final List<InetAddress> other = new ArrayList<>();
+        final boolean preferIpv6 = addresses[0] instanceof Inet6Address;
+        for (InetAddress address : addresses) {
+            if ((address instanceof Inet6Address) == preferIpv6) {
+                preferred.add(address);
+            } else {
+                other.add(address);
+            }
+        }
+        final List<InetAddress> interleaved = new ArrayList<>(addresses.length);
+        for (int i = 0; i < Math.max(preferred.size(), other.size()); i++) {
+            if (i < preferred.size()) {
+                interleaved.add(preferred.get(i));
+            }
+            if (i < other.size()) {
+                interleaved.add(other.get(i));
+            }
+        }
+        return interleaved;
+    }
+
+    private static void closeQuietly(Closeable closeable) {
+        try {
+            closeable.close();
+        } catch (IOException ignore) {
+        }
+    }
+}
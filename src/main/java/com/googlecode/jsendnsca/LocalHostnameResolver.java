@@ -0,0 +1,188 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.googlecode.jsendnsca;
+
+import com.googlecode.jsendnsca.MessagePayload.UnknownHostRuntimeException;
+import org.apache.commons.lang3.Validate;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Process wide cache of the short and canonical hostname of this machine, used
+ * when a {@link MessagePayload} is sent with the local hostname.
+ * <p>
+ * Each name is resolved the first time it is asked for and then cached. Once
+ * the time to live has passed the cached name is still returned while it is
+ * resolved again in the background, so slow or broken reverse DNS only ever
+ * delays the first passive check. If resolving again fails the cached name
+ * is kept for another time to live.
+ */
+public final class LocalHostnameResolver {
+
+    private static final int DEFAULT_TIME_TO_LIVE = 300000;
+
+    private static final LocalHostnameResolver INSTANCE = new LocalHostnameResolver(LocalHostnameResolver::lookUp, refresher());
+
+    private final Lookup lookup;
+    private final Executor refresher;
+    private final CachedHostname hostname = new CachedHostname(false);
+    private final CachedHostname canonicalHostname = new CachedHostname(true);
+    private volatile int timeToLive = DEFAULT_TIME_TO_LIVE;
+
+    LocalHostnameResolver(Lookup lookup, Executor refresher) {
+        this.lookup = lookup;
+        this.refresher = refresher;
+    }
+
+    /**
+     * @return the {@link LocalHostnameResolver} shared by this process
+     */
+    public static LocalHostnameResolver getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * The short hostname of this machine
+     *
+     * @return the short hostname
+     * @throws UnknownHostRuntimeException
+     *             thrown if the hostname has never been resolved and cannot be
+     */
+    public String getHostname() {
+        return hostname.get();
+    }
+
+    /**
+     * The fully qualified domain name of this machine
+     *
+     * @return the canonical hostname
+     * @throws UnknownHostRuntimeException
+     *             thrown if the hostname has never been resolved and cannot be
+     */
+    public String getCanonicalHostname() {
+        return canonicalHostname.get();
+    }
+
+    /**
+     * How long a resolved hostname is used before it is resolved again in the
+     * background
+     *
+     * @param timeToLive
+     *            the time to live in ms, defaults to 300000 ms
+     */
+    public void setTimeToLive(int timeToLive) {
+        Validate.isTrue(timeToLive >= 0, "timeToLive cannot be negative");
+        this.timeToLive = timeToLive;
+    }
+
+    /**
+     * How long a resolved hostname is used before it is resolved again in the
+     * background
+     *
+     * @return the time to live in ms
+     */
+    public int getTimeToLive() {
+        return timeToLive;
+    }
+
+    private static String lookUp(boolean canonical) throws UnknownHostException {
+        final InetAddress localHost = InetAddress.getLocalHost();
+        return canonical ? localHost.getCanonicalHostName() : localHost.getHostName();
+    }
+
+    private static Executor refresher() {
+        return new ThreadPoolExecutor(0, 1, 60, TimeUnit.SECONDS, new LinkedBlockingQueue<>(), runnable -> {
+            Thread thread = new Thread(runnable, "jsendnsca-hostname-resolver");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    interface Lookup {
+
+        String lookUp(boolean canonical) throws UnknownHostException;
+    }
+
+    private final class CachedHostname {
+
+        private final boolean canonical;
+        private final AtomicBoolean refreshing = new AtomicBoolean();
+        private volatile Resolved resolved;
+
+        private CachedHostname(boolean canonical) {
+            this.canonical = canonical;
+        }
+
+        private String get() {
+            Resolved current = resolved;
+            if (current == null) {
+                synchronized (this) {
+                    current = resolved;
+                    if (current == null) {
+                        current = resolve();
+                        resolved = current;
+                    }
+                }
+            } else if (current.isExpired() && refreshing.compareAndSet(false, true)) {
+                refreshInBackground(current);
+            }
+            return current.name;
+        }
+
+        private void refreshInBackground(Resolved current) {
+            try {
+                refresher.execute(() -> {
+                    try {
+                        resolved = resolve();
+                    } catch (UnknownHostRuntimeException e) {
+                        resolved = new Resolved(current.name);
+                    } finally {
+                        refreshing.set(false);
+                    }
+                });
+            } catch (RejectedExecutionException e) {
+                refreshing.set(false);
+            }
+        }
+
+        private Resolved resolve() {
+            try {
+                return new Resolved(lookup.lookUp(canonical));
+            } catch (UnknownHostException e) {
+                throw new UnknownHostRuntimeException(e);
+            }
+        }
+    }
+
+    private final class Resolved {
+
+        private final String name;
+        private final long resolvedAt = System.nanoTime();
+
+        private Resolved(String name) {
+            this.name = name;
+        }
+
+        private boolean isExpired() {
+            return System.nanoTime() - resolvedAt >= TimeUnit.MILLISECONDS.toNanos(timeToLive);
+        }
+    }
+}
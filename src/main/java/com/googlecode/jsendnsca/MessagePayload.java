@@ -20,7 +20,6 @@ import org.apache.commons.lang3.builder.HashCodeBuilder;
 import org.apache.commons.lang3.builder.ToStringBuilder;
 
 import java.io.Serializable;
-import java.net.InetAddress;
 import java.net.UnknownHostException;
 
 import static org.apache.commons.lang3.builder.ToStringStyle.SHORT_PREFIX_STYLE;
@@ -105,19 +104,11 @@ public class MessagePayload implements Serializable {
      *
      * @param useCanonical true to use this machines fully qualified domain name, false
      *                     to use the short hostname
+     * @see LocalHostnameResolver
      */
     public void setHostname(boolean useCanonical) {
-        InetAddress ipAddress;
-        try {
-            ipAddress = InetAddress.getLocalHost();
-        } catch (UnknownHostException e) {
-            throw new UnknownHostRuntimeException(e);
-        }
-        if (useCanonical) {
-            this.hostname = ipAddress.getCanonicalHostName();
-        } else {
-            this.hostname = ipAddress.getHostName();
-        }
+        final LocalHostnameResolver resolver = LocalHostnameResolver.getInstance();
+        this.hostname = useCanonical ? resolver.getCanonicalHostname() : resolver.getHostname();
     }
 
     /**
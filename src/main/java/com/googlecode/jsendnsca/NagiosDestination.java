@@ -0,0 +1,115 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.googlecode.jsendnsca;
+
+import org.apache.commons.lang3.Validate;
+import org.apache.commons.lang3.builder.EqualsBuilder;
+import org.apache.commons.lang3.builder.HashCodeBuilder;
+
+/**
+ * An NSCA server that Passive Checks can be sent to
+ *
+ * @see NagiosSettings#setDestinations(java.util.List)
+ */
+public final class NagiosDestination {
+
+    private static final int MIN_PORT = 1;
+    private static final int MAX_PORT = 65535;
+
+    private final String host;
+    private final int port;
+
+    /**
+     * Construct a new {@link NagiosDestination}
+     *
+     * @param host
+     *            the NSCA host
+     * @param port
+     *            the NSCA port
+     */
+    public NagiosDestination(String host, int port) {
+        Validate.notBlank(host, "host cannot be null or empty");
+        Validate.isTrue(port >= MIN_PORT && port <= MAX_PORT, "port must be between %s and %s inclusive", MIN_PORT, MAX_PORT);
+        this.host = host;
+        this.port = port;
+    }
+
+    /**
+     * Parse a destination of the form host, host:port or [ipv6 address]:port
+     *
+     * @param destination
+     *            the destination to parse
+     * @param defaultPort
+     *            the port to use if the destination has none
+     * @return the {@link NagiosDestination}
+     */
+    public static NagiosDestination parse(String destination, int defaultPort) {
+        Validate.notBlank(destination, "destination cannot be null or empty");
+        final String trimmed = destination.trim();
+        if (trimmed.startsWith("[")) {
+            final int end = trimmed.indexOf(']');
+            Validate.isTrue(end > 0, "destination [%s] has no closing ]", trimmed);
+            final String host = trimmed.substring(1, end);
+            final String rest = trimmed.substring(end + 1);
+            return new NagiosDestination(host, rest.startsWith(":") ? toPort(trimmed, rest.substring(1)) : defaultPort);
+        }
+        final int colon = trimmed.indexOf(':');
+        if (colon < 0 || colon != trimmed.lastIndexOf(':')) {
+            // no port or an unbracketed IPv6 address
+            return new NagiosDestination(trimmed, defaultPort);
+        }
+        return new NagiosDestination(trimmed.substring(0, colon), toPort(trimmed, trimmed.substring(colon + 1)));
+    }
+
+    private static int toPort(String destination, String port) {
+        try {
+            return Integer.parseInt(port);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("destination [" + destination + "] port must be an integer");
+        }
+    }
+
+    /**
+     * @return the NSCA host
+     */
+    public String getHost() {
+        return host;
+    }
+
+    /**
+     * @return the NSCA port
+     */
+    public int getPort() {
+        return port;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (!(obj instanceof NagiosDestination)) {
+            return false;
+        }
+        NagiosDestination other = (NagiosDestination) obj;
+        return new EqualsBuilder().append(host, other.host).append(port, other.port).isEquals();
+    }
+
+    @Override
+    public int hashCode() {
+        return new HashCodeBuilder(23, 41).append(host).append(port).toHashCode();
+    }
+
+    @Override
+    public String toString() {
+        return (host.indexOf(':') >= 0 ? "[" + host + "]" : host) + ":" + port;
+    }
+}
@@ -23,6 +23,16 @@ public class NagiosException extends RuntimeException {
 
     private static final long serialVersionUID = 5630051795639637370L;
 
+    /**
+     * Constructs an instance of <code>NagiosException</code>
+     * 
+     * @param msg
+     *            the detail message.
+     */
+    public NagiosException(String msg) {
+        super(msg);
+    }
+
     /**
      * Constructs an instance of <code>NagiosException</code> with the cause
      * 
@@ -0,0 +1,252 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.googlecode.jsendnsca;
+
+import org.apache.commons.lang3.Validate;
+
+import java.util.ArrayDeque;
+import java.util.Objects;
+import java.util.concurrent.Flow;
+
+/**
+ * Bridges a reactive pipeline to NSCA, subscribing to the Passive Checks of
+ * an upstream {@link Flow.Publisher} and sending each with
+ * {@link NioNagiosPassiveCheckSender#sendAsync(MessagePayload)}, then
+ * publishing the {@link SendResult} of each, successful or not, to a single
+ * downstream {@link Flow.Subscriber}.
+ * <p>
+ *
+ * At most maxInFlight Passive Checks are being sent or waiting for downstream
+ * demand at once. Another Passive Check is only requested from upstream once
+ * the outcome of one has been delivered downstream, so a burst slows the
+ * producer down rather than queueing on the heap. Outcomes completed while no
+ * subscriber is subscribed are discarded, so the processor can also be used
+ * purely as a subscriber.
+ * <p>
+ *
+ * Outcomes are delivered on the thread completing the send, usually the
+ * selector thread of the sender, so downstream must not block.
+ */
+public class NagiosPassiveCheckProcessor implements Flow.Processor<MessagePayload, SendResult> {
+
+    private final NioNagiosPassiveCheckSender sender;
+    private final int maxInFlight;
+    private final ArrayDeque<SendResult> outcomes = new ArrayDeque<>();
+    private Flow.Subscription upstream;
+    private Flow.Subscriber<? super SendResult> downstream;
+    private long demand;
+    private int inFlight;
+    private boolean upstreamDone;
+    private Throwable upstreamError;
+    private boolean terminated;
+    private boolean emitting;
+    private boolean missed;
+
+    /**
+     * Construct a new {@link NagiosPassiveCheckProcessor} sending with the
+     * provided {@link NioNagiosPassiveCheckSender}
+     *
+     * @param sender the {@link NioNagiosPassiveCheckSender} to send the Passive Checks with
+     * @param maxInFlight the most Passive Checks being sent or waiting for downstream demand at once
+     */
+    public NagiosPassiveCheckProcessor(NioNagiosPassiveCheckSender sender, int maxInFlight) {
+        Validate.notNull(sender, "sender cannot be null");
+        Validate.isTrue(maxInFlight > 0, "maxInFlight must be greater than 0");
+        this.sender = sender;
+        this.maxInFlight = maxInFlight;
+    }
+
+    @Override
+    public void onSubscribe(Flow.Subscription subscription) {
+        Objects.requireNonNull(subscription, "subscription cannot be null");
+        synchronized (this) {
+            if (upstream != null) {
+                subscription.cancel();
+                return;
+            }
+            upstream = subscription;
+        }
+        subscription.request(maxInFlight);
+    }
+
+    @Override
+    public void onNext(MessagePayload payload) {
+        Objects.requireNonNull(payload, "payload cannot be null");
+        synchronized (this) {
+            inFlight++;
+        }
+        try {
+            sender.sendAsync(payload).whenComplete((result, e) -> completed(payload, result, e));
+        } catch (RuntimeException e) {
+            completed(payload, null, e);
+        }
+    }
+
+    @Override
+    public void onError(Throwable throwable) {
+        Objects.requireNonNull(throwable, "throwable cannot be null");
+        synchronized (this) {
+            upstreamError = throwable;
+            upstreamDone = true;
+        }
+        drain();
+    }
+
+    @Override
+    public void onComplete() {
+        synchronized (this) {
+            upstreamDone = true;
+        }
+        drain();
+    }
+
+    /**
+     * Subscribe to the outcome of each Passive Check, only one subscriber
+     * being supported
+     *
+     * @param subscriber the subscriber to the outcomes
+     */
+    @Override
+    public void subscribe(Flow.Subscriber<? super SendResult> subscriber) {
+        Objects.requireNonNull(subscriber, "subscriber cannot be null");
+        synchronized (this) {
+            if (downstream != null || terminated) {
+                subscriber.onSubscribe(new CancelledSubscription());
+                subscriber.onError(new IllegalStateException("Only one subscriber is supported"));
+                return;
+            }
+            downstream = subscriber;
+        }
+        subscriber.onSubscribe(new OutcomeSubscription());
+        drain();
+    }
+
+    private void completed(MessagePayload payload, SendResult result, Throwable e) {
+        final boolean discarded;
+        synchronized (this) {
+            inFlight--;
+            discarded = downstream == null;
+            if (!discarded) {
+                outcomes.add(e == null ? result : new SendResult(payload, toNagiosException(e)));
+            }
+        }
+        if (discarded) {
+            requestUpstream();
+        }
+        drain();
+    }
+
+    private void drain() {
+        synchronized (this) {
+            if (emitting) {
+                missed = true;
+                return;
+            }
+            emitting = true;
+        }
+        while (true) {
+            final Flow.Subscriber<? super SendResult> subscriber;
+            SendResult outcome = null;
+            Throwable error = null;
+            boolean complete = false;
+            synchronized (this) {
+                subscriber = downstream;
+                if (subscriber != null && demand > 0 && !outcomes.isEmpty()) {
+                    outcome = outcomes.poll();
+                    demand--;
+                } else if (subscriber != null && upstreamDone && inFlight == 0 && outcomes.isEmpty() && !terminated) {
+                    terminated = true;
+                    downstream = null;
+                    error = upstreamError;
+                    complete = error == null;
+                } else if (missed) {
+                    missed = false;
+                    continue;
+                } else {
+                    emitting = false;
+                    return;
+                }
+            }
+            if (outcome != null) {
+                subscriber.onNext(outcome);
+                requestUpstream();
+            } else if (complete) {
+                subscriber.onComplete();
+            } else {
+                subscriber.onError(error);
+            }
+        }
+    }
+
+    private void requestUpstream() {
+        final Flow.Subscription subscription;
+        synchronized (this) {
+            subscription = upstreamDone ? null : upstream;
+        }
+        if (subscription != null) {
+            subscription.request(1);
+        }
+    }
+
+    private static NagiosException toNagiosException(Throwable e) {
+        return e instanceof NagiosException ? (NagiosException) e : new NagiosException("Error occurred while sending passive alert", e);
+    }
+
+    private final class OutcomeSubscription implements Flow.Subscription {
+
+        @Override
+        public void request(long n) {
+            if (n <= 0) {
+                final Flow.Subscriber<? super SendResult> subscriber;
+                synchronized (NagiosPassiveCheckProcessor.this) {
+                    subscriber = downstream;
+                }
+                cancel();
+                if (subscriber != null) {
+                    subscriber.onError(new IllegalArgumentException("request must be greater than 0"));
+                }
+                return;
+            }
+            synchronized (NagiosPassiveCheckProcessor.this) {
+                demand = demand + n < 0 ? Long.MAX_VALUE : demand + n;
+            }
+            drain();
+        }
+
+        @Override
+        public void cancel() {
+            final Flow.Subscription subscription;
+            synchronized (NagiosPassiveCheckProcessor.this) {
+                downstream = null;
+                terminated = true;
+                outcomes.clear();
+                subscription = upstream;
+            }
+            if (subscription != null) {
+                subscription.cancel();
+            }
+        }
+    }
+
+    private static final class CancelledSubscription implements Flow.Subscription {
+
+        @Override
+        public void request(long n) {
+        }
+
+        @Override
+        public void cancel() {
+        }
+    }
+}
@@ -15,9 +15,12 @@ package com.googlecode.jsendnsca;
 
 import org.apache.commons.lang3.Validate;
 
-import java.io.*;
-import java.net.InetSocketAddress;
-import java.net.Socket;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
 
 /**
  * This class is used to send a Passive Check to the Nagios NSCA add-on
@@ -27,9 +30,12 @@ import java.net.Socket;
  */
 public class NagiosPassiveCheckSender implements PassiveCheckSender {
 
-    private static final int INITIALISATION_VECTOR_SIZE = 128;
-
     private final NagiosSettings nagiosSettings;
+    private final PacketSizeStatistics packetSizeStatistics = new PacketSizeStatistics();
+    private final Queue<PassiveCheckBytesBuilder> idleBuilders = new ConcurrentLinkedQueue<>();
+    private final ConcurrentMap<NagiosDestination, DestinationHealth> destinationHealth = new ConcurrentHashMap<>();
+    private final CircuitBreaker circuitBreaker;
+    private volatile PassiveCheckSender circuitBreakerFallback;
 
     /**
      * Construct a new {@link NagiosPassiveCheckSender} with the provided
@@ -40,6 +46,7 @@ public class NagiosPassiveCheckSender implements PassiveCheckSender {
     public NagiosPassiveCheckSender(NagiosSettings nagiosSettings) {
         Validate.notNull(nagiosSettings, "nagiosSettings cannot be null");
         this.nagiosSettings = nagiosSettings;
+        this.circuitBreaker = new CircuitBreaker(nagiosSettings);
     }
 
     /*
@@ -52,54 +59,207 @@ public class NagiosPassiveCheckSender implements PassiveCheckSender {
     public void send(MessagePayload payload) {
         Validate.notNull(payload, "payload cannot be null");
 
-        try (Socket socket = connectedToNagios()) {
-            try (OutputStream outputStream = socket.getOutputStream()) {
-                try (InputStream inputStream = socket.getInputStream()) {
-                    outputStream.write(passiveCheck(payload, new DataInputStream(inputStream)));
-                    outputStream.flush();
+        final NagiosPassiveCheckSession session;
+        try {
+            session = openSession();
+        } catch (CircuitBreakerOpenException e) {
+            divert(payload, e);
+            return;
+        }
+        try (NagiosPassiveCheckSession open = session) {
+            open.send(payload);
+        }
+    }
+
+    /**
+     * Send many Passive Checks over as few connections to NSCA as possible. A
+     * new connection is only opened after a Passive Check fails to send, as the
+     * failure leaves the connection unusable. If a connection cannot be opened
+     * all remaining Passive Checks fail with the same exception.
+     *
+     * @param payloads
+     *            the Passive Check message payloads
+     * @return the {@link BatchResult} recording which Passive Checks failed
+     */
+    @Override
+    public BatchResult sendAll(Iterable<MessagePayload> payloads) {
+        Validate.notNull(payloads, "payloads cannot be null");
+
+        BatchResult result = new BatchResult();
+        NagiosPassiveCheckSession session = null;
+        RuntimeException openFailure = null;
+        try {
+            for (MessagePayload payload : payloads) {
+                if (openFailure != null) {
+                    failOrDivert(payload, openFailure, result);
+                    continue;
+                }
+                if (session == null) {
+                    try {
+                        session = openSession();
+                    } catch (RuntimeException e) {
+                        openFailure = e;
+                        failOrDivert(payload, e, result);
+                        continue;
+                    }
+                }
+                try {
+                    session.send(payload);
+                    result.succeeded(payload);
+                } catch (NagiosException e) {
+                    result.failed(payload, e);
+                    session = closeQuietly(session);
+                } catch (RuntimeException e) {
+                    result.failed(payload, e);
                 }
             }
-        } catch (IOException e) {
-            throw new NagiosException("Error occurred while sending passive alert", e);
+        } finally {
+            closeQuietly(session);
         }
+        return result;
     }
 
-    private Socket connectedToNagios() {
+    /**
+     * Open a {@link NagiosPassiveCheckSession} to send many Passive Checks
+     * over a single connection to NSCA, which must be closed when done with.
+     * The {@link NagiosSettings#getDestinations()} are tried in priority
+     * order, skipping those cooling down after a failure unless no other
+     * destination accepts the connection.
+     *
+     * @return the open {@link NagiosPassiveCheckSession}
+     * @throws CircuitBreakerOpenException
+     *             thrown without connecting while the {@link CircuitBreaker} is open
+     * @throws NagiosException
+     *             thrown if the initialisation vector cannot be read from NSCA
+     */
+    public NagiosPassiveCheckSession openSession() {
+        if (!circuitBreaker.tryAcquire()) {
+            throw new CircuitBreakerOpenException();
+        }
         try {
-            Socket socket = new Socket();
-            socket.connect(new InetSocketAddress(nagiosSettings.getNagiosHost(), nagiosSettings.getPort()), nagiosSettings.getConnectTimeout());
-            socket.setSoTimeout(nagiosSettings.getTimeout());
-            return socket;
-        } catch (IOException e) {
-            throw new UncheckedIOException(e);
+            final NagiosPassiveCheckSession session = openSessionToFirstAvailable();
+            circuitBreaker.recordSuccess();
+            return session;
+        } catch (RuntimeException e) {
+            circuitBreaker.recordFailure();
+            throw e;
         }
     }
 
-    private byte[] passiveCheck(MessagePayload payload, DataInputStream inputStream) {
-        final byte[] initVector = readFrom(inputStream);
+    private NagiosPassiveCheckSession openSessionToFirstAvailable() {
+        final List<DestinationHealth> destinations = getDestinationHealth();
+        final int coolDown = nagiosSettings.getFailoverCoolDown();
+        final List<DestinationHealth> coolingDown = new ArrayList<>();
+        RuntimeException failure = null;
+        for (DestinationHealth destination : destinations) {
+            if (destination.isCoolingDown(coolDown)) {
+                coolingDown.add(destination);
+                continue;
+            }
+            try {
+                return openSession(destination);
+            } catch (RuntimeException e) {
+                failure = e;
+            }
+        }
+        for (DestinationHealth destination : coolingDown) {
+            try {
+                return openSession(destination);
+            } catch (RuntimeException e) {
+                failure = e;
+            }
+        }
+        throw failure;
+    }
+
+    private NagiosPassiveCheckSession openSession(DestinationHealth destination) {
+        final long start = System.nanoTime();
         try {
-            int receivedTimeStamp = inputStream.readInt();
-            return new PassiveCheckBytesBuilder(nagiosSettings)
-                    .withTimeStamp(receivedTimeStamp)
-                    .withLevel(payload.getLevel())
-                    .withHostname(payload.getHostname())
-                    .withServiceName(payload.getServiceName())
-                    .withMessage(payload.getMessage())
-                    .writeCRC()
-                    .encrypt(initVector)
-                    .toByteArray();
-        } catch (IOException e) {
-            throw new UncheckedIOException(e);
+            NagiosPassiveCheckSession session = new NagiosPassiveCheckSession(nagiosSettings, this::borrowBuilder, idleBuilders::offer,
+                    destination);
+            destination.recordSuccess(System.nanoTime() - start);
+            return session;
+        } catch (RuntimeException e) {
+            destination.recordFailure();
+            throw e;
         }
     }
 
-    private static byte[] readFrom(DataInputStream inputStream) {
+    private PassiveCheckBytesBuilder borrowBuilder() {
+        final PassiveCheckBytesBuilder builder = idleBuilders.poll();
+        return builder != null ? builder : new PassiveCheckBytesBuilder(nagiosSettings, packetSizeStatistics);
+    }
+
+    /**
+     * The health of each of the {@link NagiosSettings#getDestinations()} in
+     * priority order
+     *
+     * @return the health of each destination
+     */
+    public List<DestinationHealth> getDestinationHealth() {
+        final List<NagiosDestination> destinations = nagiosSettings.getDestinations();
+        final List<DestinationHealth> health = new ArrayList<>(destinations.size());
+        for (NagiosDestination destination : destinations) {
+            health.add(destinationHealth.computeIfAbsent(destination,
+                    key -> new DestinationHealth(key, new DestinationAddressCache(nagiosSettings))));
+        }
+        return health;
+    }
+
+    /**
+     * @return the counts of each packet size sent by this sender and its sessions
+     */
+    public PacketSizeStatistics getPacketSizeStatistics() {
+        return packetSizeStatistics;
+    }
+
+    /**
+     * @return the {@link CircuitBreaker} guarding connections to NSCA
+     */
+    public CircuitBreaker getCircuitBreaker() {
+        return circuitBreaker;
+    }
+
+    /**
+     * Send Passive Checks to the supplied fallback while the
+     * {@link CircuitBreaker} is open, such as one queueing them to disk,
+     * rather than failing fast
+     *
+     * @param circuitBreakerFallback
+     *            the fallback, or null to fail fast
+     */
+    public void setCircuitBreakerFallback(PassiveCheckSender circuitBreakerFallback) {
+        this.circuitBreakerFallback = circuitBreakerFallback;
+    }
+
+    void divert(MessagePayload payload, CircuitBreakerOpenException e) {
+        final PassiveCheckSender fallback = circuitBreakerFallback;
+        if (fallback == null) {
+            throw e;
+        }
+        fallback.send(payload);
+    }
+
+    private void failOrDivert(MessagePayload payload, RuntimeException openFailure, BatchResult result) {
+        if (!(openFailure instanceof CircuitBreakerOpenException)) {
+            result.failed(payload, openFailure);
+            return;
+        }
         try {
-            final byte[] initVector = new byte[INITIALISATION_VECTOR_SIZE];
-            inputStream.readFully(initVector, 0, INITIALISATION_VECTOR_SIZE);
-            return initVector;
-        } catch (IOException e) {
-            throw new NagiosException("Can't read initialisation vector", e);
+            divert(payload, (CircuitBreakerOpenException) openFailure);
+            result.succeeded(payload);
+        } catch (RuntimeException e) {
+            result.failed(payload, e);
+        }
+    }
+
+    private static NagiosPassiveCheckSession closeQuietly(NagiosPassiveCheckSession session) {
+        if (session != null) {
+            try {
+                session.close();
+            } catch (NagiosException ignore) {
+            }
         }
+        return null;
     }
-}
\ No newline at end of file
+}
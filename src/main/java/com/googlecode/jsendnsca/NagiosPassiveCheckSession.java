@@ -0,0 +1,183 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.googlecode.jsendnsca;
+
+import com.googlecode.jsendnsca.encryption.EncryptionContext;
+import org.apache.commons.lang3.Validate;
+
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.net.Socket;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+/**
+ * A connection to the Nagios NSCA add-on over which any number of Passive
+ * Checks can be sent.
+ * <p>
+ * The connection is opened and the initialisation vector and timestamp are
+ * read from NSCA once, each Passive Check sent then only needs to be encoded,
+ * encrypted and written. NSCA keeps reading Passive Checks until the
+ * connection is closed, so the session must always be closed when done with
+ * e.g.
+ *
+ * <pre>
+ * try (NagiosPassiveCheckSession session = sender.openSession()) {
+ *     for (MessagePayload payload : payloads) {
+ *         session.send(payload);
+ *     }
+ * }
+ * </pre>
+ *
+ * A session is not thread safe. It borrows the buffers Passive Checks are
+ * encoded into from its sender, returning them once closed.
+ *
+ * @see NagiosPassiveCheckSender#openSession()
+ */
+public class NagiosPassiveCheckSession implements PassiveCheckSender, Closeable {
+
+    private static final int INITIALISATION_VECTOR_SIZE = 128;
+
+    private final NagiosSettings nagiosSettings;
+    private final Socket socket;
+    private final OutputStream outputStream;
+    private final int timeStamp;
+    private final EncryptionContext encryptionContext;
+    private final Consumer<PassiveCheckBytesBuilder> builderReturn;
+    private PassiveCheckBytesBuilder builder;
+
+    NagiosPassiveCheckSession(NagiosSettings nagiosSettings, Supplier<PassiveCheckBytesBuilder> builderLoan,
+            Consumer<PassiveCheckBytesBuilder> builderReturn, DestinationHealth destination) {
+        this.nagiosSettings = nagiosSettings;
+        this.builderReturn = builderReturn;
+        this.socket = connectedTo(destination);
+        this.builder = builderLoan.get();
+        try {
+            DataInputStream inputStream = new DataInputStream(socket.getInputStream());
+            final byte[] initVector = readFrom(inputStream);
+            this.timeStamp = inputStream.readInt();
+            this.outputStream = socket.getOutputStream();
+            this.encryptionContext = nagiosSettings.getEncryptor().initialise(initVector, nagiosSettings.getPassword());
+        } catch (IOException e) {
+            closeQuietly();
+            throw new UncheckedIOException(e);
+        } catch (RuntimeException e) {
+            closeQuietly();
+            throw e;
+        }
+    }
+
+    /**
+     * Send a Passive Check over this session
+     *
+     * @param payload
+     *            the Passive Check message payload
+     * @throws NagiosException
+     *             thrown if an error occurs while sending the passive check
+     */
+    @Override
+    public void send(MessagePayload payload) {
+        Validate.notNull(payload, "payload cannot be null");
+        if (builder == null) {
+            throw new NagiosException("Error occurred while sending passive alert as session is closed");
+        }
+
+        try {
+            outputStream.write(passiveCheck(payload));
+            outputStream.flush();
+        } catch (IOException e) {
+            throw new NagiosException("Error occurred while sending passive alert", e);
+        }
+    }
+
+    /**
+     * Close the connection to NSCA, which then processes the Passive Checks
+     * sent over this session
+     *
+     * @throws NagiosException
+     *             thrown if an error occurs while closing the connection
+     */
+    @Override
+    public void close() {
+        try {
+            socket.close();
+        } catch (IOException e) {
+            throw new NagiosException("Error occurred while closing connection", e);
+        } finally {
+            encryptionContext.close();
+            returnBuilder();
+        }
+    }
+
+    private void returnBuilder() {
+        if (builder != null) {
+            builderReturn.accept(builder);
+            builder = null;
+        }
+    }
+
+    private Socket connectedTo(DestinationHealth destination) {
+        final NagiosDestination server = destination.getDestination();
+        final Socket socket;
+        try {
+            socket = HappyEyeballsConnector.connect(destination.getAddresses().getAddresses(server.getHost()), server.getPort(),
+                    nagiosSettings.getConnectTimeout());
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        try {
+            socket.setSoTimeout(nagiosSettings.getTimeout());
+            return socket;
+        } catch (IOException e) {
+            try {
+                socket.close();
+            } catch (IOException ignore) {
+            }
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private byte[] passiveCheck(MessagePayload payload) {
+        return builder.reset()
+                .withTimeStamp(timeStamp)
+                .withLevel(payload.getLevel())
+                .withHostname(payload.getHostname())
+                .withServiceName(payload.getServiceName())
+                .withMessage(payload.getMessage())
+                .writeCRC()
+                .encrypt(encryptionContext)
+                .toByteArray();
+    }
+
+    private void closeQuietly() {
+        returnBuilder();
+        try {
+            socket.close();
+        } catch (IOException ignore) {
+        }
+    }
+
+    private static byte[] readFrom(DataInputStream inputStream) {
+        try {
+            final byte[] initVector = new byte[INITIALISATION_VECTOR_SIZE];
+            inputStream.readFully(initVector, 0, INITIALISATION_VECTOR_SIZE);
+            return initVector;
+        } catch (IOException e) {
+            throw new NagiosException("Can't read initialisation vector", e);
+        }
+    }
+}
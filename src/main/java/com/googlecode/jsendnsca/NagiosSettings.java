@@ -21,6 +21,11 @@ import org.apache.commons.lang3.builder.EqualsBuilder;
 import org.apache.commons.lang3.builder.HashCodeBuilder;
 import org.apache.commons.lang3.builder.ToStringBuilder;
 
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
 import static com.googlecode.jsendnsca.encryption.Encryption.NONE;
 import static org.apache.commons.lang3.StringUtils.defaultIfEmpty;
 import static org.apache.commons.lang3.builder.ToStringStyle.SHORT_PREFIX_STYLE;
@@ -37,8 +42,9 @@ public class NagiosSettings {
     private static final int MIN_PORT = 1;
     private static final int MAX_PORT = 65535;
     private static final String INVALID_PORT_MESSAGE = String.format("port must be between %s and %s inclusive", MIN_PORT, MAX_PORT);
-    private static final int SMALL_MAX_MESSAGE_SIZE_IN_CHARS = 512;
+    static final int SMALL_MAX_MESSAGE_SIZE_IN_CHARS = 512;
     private static final int LARGE_MAX_MESSAGE_SIZE_IN_CHARS = 4096;
+    private static final int MIN_SPOOL_SEGMENT_SIZE = 64 * 1024;
 
     private String nagiosHost = "localhost";
     private String password = "";
@@ -47,6 +53,32 @@ public class NagiosSettings {
     private int connectTimeout = 5000;
     private Encryptor encryptor = NONE.getEncryptor();
     private int maxMessageSizeInChars = SMALL_MAX_MESSAGE_SIZE_IN_CHARS;
+    private boolean adaptivePacketSizeEnabled;
+    private int connectionPoolSize = 2;
+    private int maxConnectionAge = 20000;
+    private boolean virtualThreadsEnabled;
+    private int maxConcurrentSends = 1;
+    private int queueCapacity = 10000;
+    private int broadcastConcurrency = 16;
+    private long queueCapacityInBytes = 8L * 1024 * 1024;
+    private OverflowPolicy overflowPolicy = OverflowPolicy.DROP_OLDEST;
+    private int queueOfferTimeout = 1000;
+    private int queueTimeToLive;
+    private int ringBufferSize;
+    private WaitStrategy waitStrategy = WaitStrategy.BLOCKING;
+    private boolean coalescingEnabled;
+    private int maxBatchSize = 1;
+    private int linger;
+    private int addressCacheTimeToLive = 30000;
+    private List<NagiosDestination> destinations = Collections.emptyList();
+    private int failoverCoolDown = 30000;
+    private int circuitBreakerFailureRateThreshold;
+    private int circuitBreakerWindowSize = 10;
+    private int circuitBreakerOpenDuration = 30000;
+    private File spoolDirectory;
+    private int spoolSegmentSize = 4 * 1024 * 1024;
+    private long spoolCapacityInBytes = 64L * 1024 * 1024;
+    private int spoolReplayRate = 100;
 
     /**
      * The connection timeout
@@ -183,6 +215,28 @@ public class NagiosSettings {
         maxMessageSizeInChars = LARGE_MAX_MESSAGE_SIZE_IN_CHARS;
     }
 
+    /**
+     * Enable large message support but send each Passive Check in the legacy
+     * packet whenever its message fits in 512 chars, only using the 4096 char
+     * packet when it has to. NSCA 2.9 onwards accepts both packet sizes.
+     *
+     * @see PacketSizeStatistics
+     */
+    public void enableAdaptivePacketSize() {
+        enableLargeMessageSupport();
+        adaptivePacketSizeEnabled = true;
+    }
+
+    /**
+     * Whether the smallest packet the message fits in is sent
+     *
+     * see enableAdaptivePacketSize
+     * @return true if adaptive packet size is enabled
+     */
+    public boolean isAdaptivePacketSizeEnabled() {
+        return adaptivePacketSizeEnabled;
+    }
+
     /**
      * The maximum number of chars in message sent to NSCA before
      * the message is truncated
@@ -194,6 +248,574 @@ public class NagiosSettings {
         return maxMessageSizeInChars;
     }
 
+    /**
+     * The number of connections to NSCA a
+     * {@link PooledNagiosPassiveCheckSender} keeps open and ready to send on
+     *
+     * @return the number of connections, defaults to 2
+     */
+    public int getConnectionPoolSize() {
+        return connectionPoolSize;
+    }
+
+    /**
+     * The number of connections to NSCA a
+     * {@link PooledNagiosPassiveCheckSender} keeps open and ready to send on
+     *
+     * @param connectionPoolSize
+     *            the number of connections, defaults to 2
+     */
+    public void setConnectionPoolSize(int connectionPoolSize) {
+        Validate.isTrue(connectionPoolSize > 0, "connectionPoolSize must be greater than 0");
+        this.connectionPoolSize = connectionPoolSize;
+    }
+
+    /**
+     * The age after which a pooled connection to NSCA is no longer used
+     *
+     * @return the age in ms, defaults to 20000 ms
+     */
+    public int getMaxConnectionAge() {
+        return maxConnectionAge;
+    }
+
+    /**
+     * The age after which a pooled connection to NSCA is no longer used. Passive
+     * Checks sent over a connection carry the timestamp NSCA sent when it was
+     * opened, so this must be less than max_packet_age in the nsca.cfg file
+     *
+     * @param maxConnectionAge
+     *            the age in ms, defaults to 20000 ms
+     */
+    public void setMaxConnectionAge(int maxConnectionAge) {
+        Validate.isTrue(maxConnectionAge > 0, "maxConnectionAge must be greater than 0");
+        this.maxConnectionAge = maxConnectionAge;
+    }
+
+    /**
+     * Send Passive Checks queued by a {@link NonBlockingNagiosPassiveCheckSender}
+     * on a virtual thread each, with at most maxConcurrentSends in flight at once.
+     * <p>
+     * Virtual threads need Java 21 or later, on earlier versions a pool of
+     * maxConcurrentSends platform threads is used instead.
+     *
+     * @param maxConcurrentSends
+     *            the maximum number of Passive Checks being sent at once
+     */
+    public void enableVirtualThreads(int maxConcurrentSends) {
+        setMaxConcurrentSends(maxConcurrentSends);
+        this.virtualThreadsEnabled = true;
+    }
+
+    /**
+     * Whether a {@link NonBlockingNagiosPassiveCheckSender} sends on virtual threads
+     *
+     * see enableVirtualThreads
+     * @return true if enabled, defaults to false
+     */
+    public boolean isVirtualThreadsEnabled() {
+        return virtualThreadsEnabled;
+    }
+
+    /**
+     * The maximum number of Passive Checks a
+     * {@link NonBlockingNagiosPassiveCheckSender} sends at once
+     *
+     * see enableVirtualThreads
+     * @return the number of Passive Checks, defaults to 1
+     */
+    public int getMaxConcurrentSends() {
+        return maxConcurrentSends;
+    }
+
+    /**
+     * The maximum number of Passive Checks a
+     * {@link NonBlockingNagiosPassiveCheckSender} sends at once, which needs an
+     * executor with at least as many threads
+     *
+     * @param maxConcurrentSends
+     *            the number of Passive Checks, defaults to 1
+     */
+    public void setMaxConcurrentSends(int maxConcurrentSends) {
+        Validate.isTrue(maxConcurrentSends > 0, "maxConcurrentSends must be greater than 0");
+        this.maxConcurrentSends = maxConcurrentSends;
+    }
+
+    /**
+     * The maximum number of Passive Checks a
+     * {@link BroadcastNagiosPassiveCheckSender} sends to this NSCA server at
+     * once, so concurrent callers aren't serialised behind each other
+     *
+     * @return the number of Passive Checks, defaults to 16
+     */
+    public int getBroadcastConcurrency() {
+        return broadcastConcurrency;
+    }
+
+    /**
+     * The maximum number of Passive Checks a
+     * {@link BroadcastNagiosPassiveCheckSender} sends to this NSCA server at
+     * once, each on its own thread
+     *
+     * @param broadcastConcurrency
+     *            the number of Passive Checks, defaults to 16
+     */
+    public void setBroadcastConcurrency(int broadcastConcurrency) {
+        Validate.isTrue(broadcastConcurrency > 0, "broadcastConcurrency must be greater than 0");
+        this.broadcastConcurrency = broadcastConcurrency;
+    }
+
+    /**
+     * The maximum number of Passive Checks queued by a
+     * {@link NonBlockingNagiosPassiveCheckSender}
+     *
+     * @return the number of Passive Checks, defaults to 10000
+     */
+    public int getQueueCapacity() {
+        return queueCapacity;
+    }
+
+    /**
+     * The maximum number of Passive Checks queued by a
+     * {@link NonBlockingNagiosPassiveCheckSender}
+     *
+     * @param queueCapacity
+     *            the number of Passive Checks, defaults to 10000
+     */
+    public void setQueueCapacity(int queueCapacity) {
+        Validate.isTrue(queueCapacity > 0, "queueCapacity must be greater than 0");
+        this.queueCapacity = queueCapacity;
+    }
+
+    /**
+     * The maximum estimated size of the Passive Checks queued by a
+     * {@link NonBlockingNagiosPassiveCheckSender}
+     *
+     * @return the size in bytes, defaults to 8 MiB
+     */
+    public long getQueueCapacityInBytes() {
+        return queueCapacityInBytes;
+    }
+
+    /**
+     * The maximum estimated size of the Passive Checks queued by a
+     * {@link NonBlockingNagiosPassiveCheckSender}
+     *
+     * @param queueCapacityInBytes
+     *            the size in bytes, defaults to 8 MiB
+     */
+    public void setQueueCapacityInBytes(long queueCapacityInBytes) {
+        Validate.isTrue(queueCapacityInBytes > 0, "queueCapacityInBytes must be greater than 0");
+        this.queueCapacityInBytes = queueCapacityInBytes;
+    }
+
+    /**
+     * What a {@link NonBlockingNagiosPassiveCheckSender} does with a Passive
+     * Check sent while its queue is full
+     *
+     * @return the {@link OverflowPolicy}, defaults to DROP_OLDEST
+     */
+    public OverflowPolicy getOverflowPolicy() {
+        return overflowPolicy;
+    }
+
+    /**
+     * What a {@link NonBlockingNagiosPassiveCheckSender} does with a Passive
+     * Check sent while its queue is full
+     *
+     * @param overflowPolicy
+     *            the {@link OverflowPolicy}, defaults to DROP_OLDEST
+     */
+    public void setOverflowPolicy(OverflowPolicy overflowPolicy) {
+        Validate.notNull(overflowPolicy, "overflowPolicy cannot be null");
+        this.overflowPolicy = overflowPolicy;
+    }
+
+    /**
+     * How long sending waits for room in a full queue with {@link OverflowPolicy#BLOCK}
+     *
+     * @return the timeout in ms, defaults to 1000 ms
+     */
+    public int getQueueOfferTimeout() {
+        return queueOfferTimeout;
+    }
+
+    /**
+     * How long sending waits for room in a full queue with {@link OverflowPolicy#BLOCK}
+     *
+     * @param queueOfferTimeout
+     *            the timeout in ms, defaults to 1000 ms
+     */
+    public void setQueueOfferTimeout(int queueOfferTimeout) {
+        Validate.isTrue(queueOfferTimeout >= 0, "queueOfferTimeout cannot be negative");
+        this.queueOfferTimeout = queueOfferTimeout;
+    }
+
+    /**
+     * How long a Passive Check can wait in the queue or spool of a
+     * {@link NonBlockingNagiosPassiveCheckSender} before it is discarded
+     * unsent, such as NSCA's max_packet_age
+     *
+     * @return the time to live in ms, defaults to 0 which never discards
+     */
+    public int getQueueTimeToLive() {
+        return queueTimeToLive;
+    }
+
+    /**
+     * How long a Passive Check can wait in the queue or spool of a
+     * {@link NonBlockingNagiosPassiveCheckSender} before it is discarded
+     * unsent, such as NSCA's max_packet_age
+     *
+     * @param queueTimeToLive
+     *            the time to live in ms, 0 never discarding
+     */
+    public void setQueueTimeToLive(int queueTimeToLive) {
+        Validate.isTrue(queueTimeToLive >= 0, "queueTimeToLive cannot be negative");
+        this.queueTimeToLive = queueTimeToLive;
+    }
+
+    /**
+     * The number of slots in the ring buffer a
+     * {@link NonBlockingNagiosPassiveCheckSender} queues Passive Checks in
+     * instead of its queue
+     *
+     * @return the number of slots, defaults to 0 which uses the queue
+     */
+    public int getRingBufferSize() {
+        return ringBufferSize;
+    }
+
+    /**
+     * Have a {@link NonBlockingNagiosPassiveCheckSender} queue Passive Checks
+     * in a preallocated ring buffer sent from by a single thread, rather than
+     * its queue
+     *
+     * @param ringBufferSize
+     *            the number of slots as a power of 2, 0 using the queue
+     */
+    public void setRingBufferSize(int ringBufferSize) {
+        Validate.isTrue(ringBufferSize >= 0 && (ringBufferSize & (ringBufferSize - 1)) == 0, "ringBufferSize must be 0 or a power of 2");
+        this.ringBufferSize = ringBufferSize;
+    }
+
+    /**
+     * How the thread sending from the ring buffer of a
+     * {@link NonBlockingNagiosPassiveCheckSender} waits for Passive Checks
+     *
+     * @return the {@link WaitStrategy}, defaults to BLOCKING
+     */
+    public WaitStrategy getWaitStrategy() {
+        return waitStrategy;
+    }
+
+    /**
+     * How the thread sending from the ring buffer of a
+     * {@link NonBlockingNagiosPassiveCheckSender} waits for Passive Checks
+     *
+     * @param waitStrategy
+     *            the {@link WaitStrategy}, defaults to BLOCKING
+     */
+    public void setWaitStrategy(WaitStrategy waitStrategy) {
+        Validate.notNull(waitStrategy, "waitStrategy cannot be null");
+        this.waitStrategy = waitStrategy;
+    }
+
+    /**
+     * Have a {@link NonBlockingNagiosPassiveCheckSender} replace any queued
+     * Passive Check with a newer one for the same hostname and service name, so
+     * its queue holds at most one Passive Check per service
+     */
+    public void enableCoalescing() {
+        coalescingEnabled = true;
+    }
+
+    /**
+     * Whether a {@link NonBlockingNagiosPassiveCheckSender} only keeps the
+     * latest queued Passive Check for each hostname and service name
+     *
+     * see enableCoalescing
+     * @return true if enabled, defaults to false
+     */
+    public boolean isCoalescingEnabled() {
+        return coalescingEnabled;
+    }
+
+    /**
+     * The maximum number of queued Passive Checks a
+     * {@link NonBlockingNagiosPassiveCheckSender} sends over one connection
+     *
+     * @return the number of Passive Checks, defaults to 1
+     */
+    public int getMaxBatchSize() {
+        return maxBatchSize;
+    }
+
+    /**
+     * The maximum number of queued Passive Checks a
+     * {@link NonBlockingNagiosPassiveCheckSender} sends over one connection
+     *
+     * @param maxBatchSize
+     *            the number of Passive Checks, defaults to 1
+     */
+    public void setMaxBatchSize(int maxBatchSize) {
+        Validate.isTrue(maxBatchSize > 0, "maxBatchSize must be greater than 0");
+        this.maxBatchSize = maxBatchSize;
+    }
+
+    /**
+     * How long a {@link NonBlockingNagiosPassiveCheckSender} waits for
+     * {@link #getMaxBatchSize()} Passive Checks to be queued before sending
+     * those already queued
+     *
+     * @return the linger in ms, defaults to 0 ms
+     */
+    public int getLinger() {
+        return linger;
+    }
+
+    /**
+     * How long a {@link NonBlockingNagiosPassiveCheckSender} waits for
+     * {@link #getMaxBatchSize()} Passive Checks to be queued before sending
+     * those already queued
+     *
+     * @param linger
+     *            the linger in ms, defaults to 0 ms
+     */
+    public void setLinger(int linger) {
+        Validate.isTrue(linger >= 0, "linger cannot be negative");
+        this.linger = linger;
+    }
+
+    /**
+     * How long the resolved addresses of the NSCA host are used before they
+     * are resolved again in the background
+     *
+     * @return the time to live in ms, defaults to 30000 ms
+     */
+    public int getAddressCacheTimeToLive() {
+        return addressCacheTimeToLive;
+    }
+
+    /**
+     * How long the resolved addresses of the NSCA host are used before they
+     * are resolved again in the background, 0 resolving them for every
+     * connection
+     *
+     * @param addressCacheTimeToLive
+     *            the time to live in ms, defaults to 30000 ms
+     */
+    public void setAddressCacheTimeToLive(int addressCacheTimeToLive) {
+        Validate.isTrue(addressCacheTimeToLive >= 0, "addressCacheTimeToLive cannot be negative");
+        this.addressCacheTimeToLive = addressCacheTimeToLive;
+    }
+
+    /**
+     * The NSCA servers to send to in priority order, each being tried in turn
+     * until one accepts the connection
+     *
+     * @return the destinations, defaults to just nagiosHost and port
+     */
+    public List<NagiosDestination> getDestinations() {
+        if (destinations.isEmpty()) {
+            return Collections.singletonList(new NagiosDestination(nagiosHost, port));
+        }
+        return destinations;
+    }
+
+    /**
+     * The NSCA servers to send to in priority order, which when set take
+     * precedence over nagiosHost and port. A server that fails to accept a
+     * connection is skipped for the failover cool down while other servers
+     * are healthy.
+     *
+     * @param destinations
+     *            the destinations in priority order
+     */
+    public void setDestinations(List<NagiosDestination> destinations) {
+        Validate.notEmpty(destinations, "destinations cannot be null or empty");
+        Validate.noNullElements(destinations, "destinations cannot contain null");
+        this.destinations = Collections.unmodifiableList(new ArrayList<>(destinations));
+    }
+
+    /**
+     * How long an NSCA server that failed to accept a connection is skipped
+     * for while other servers are healthy
+     *
+     * @return the cool down in ms, defaults to 30000 ms
+     */
+    public int getFailoverCoolDown() {
+        return failoverCoolDown;
+    }
+
+    /**
+     * How long an NSCA server that failed to accept a connection is skipped
+     * for while other servers are healthy
+     *
+     * @param failoverCoolDown
+     *            the cool down in ms, defaults to 30000 ms
+     */
+    public void setFailoverCoolDown(int failoverCoolDown) {
+        Validate.isTrue(failoverCoolDown >= 0, "failoverCoolDown cannot be negative");
+        this.failoverCoolDown = failoverCoolDown;
+    }
+
+    /**
+     * The percentage of the last connections to NSCA that must fail for the
+     * circuit breaker to open, after which connecting fails fast
+     *
+     * @return the failure rate threshold in percent, defaults to 0 which
+     *         disables the circuit breaker
+     */
+    public int getCircuitBreakerFailureRateThreshold() {
+        return circuitBreakerFailureRateThreshold;
+    }
+
+    /**
+     * The percentage of the last connections to NSCA that must fail for the
+     * circuit breaker to open, after which connecting fails fast
+     *
+     * @param circuitBreakerFailureRateThreshold
+     *            the failure rate threshold in percent, 0 disabling the circuit breaker
+     */
+    public void setCircuitBreakerFailureRateThreshold(int circuitBreakerFailureRateThreshold) {
+        Validate.isTrue(circuitBreakerFailureRateThreshold >= 0 && circuitBreakerFailureRateThreshold <= 100,
+                "circuitBreakerFailureRateThreshold must be between 0 and 100 inclusive");
+        this.circuitBreakerFailureRateThreshold = circuitBreakerFailureRateThreshold;
+    }
+
+    /**
+     * The number of last connections to NSCA the circuit breaker failure
+     * rate is calculated over
+     *
+     * @return the window size, defaults to 10
+     */
+    public int getCircuitBreakerWindowSize() {
+        return circuitBreakerWindowSize;
+    }
+
+    /**
+     * The number of last connections to NSCA the circuit breaker failure
+     * rate is calculated over, read when the sender is created
+     *
+     * @param circuitBreakerWindowSize
+     *            the window size, defaults to 10
+     */
+    public void setCircuitBreakerWindowSize(int circuitBreakerWindowSize) {
+        Validate.isTrue(circuitBreakerWindowSize > 0, "circuitBreakerWindowSize must be greater than 0");
+        this.circuitBreakerWindowSize = circuitBreakerWindowSize;
+    }
+
+    /**
+     * How long the circuit breaker stays open before letting a single
+     * connection through to test whether NSCA has recovered
+     *
+     * @return the open duration in ms, defaults to 30000 ms
+     */
+    public int getCircuitBreakerOpenDuration() {
+        return circuitBreakerOpenDuration;
+    }
+
+    /**
+     * How long the circuit breaker stays open before letting a single
+     * connection through to test whether NSCA has recovered
+     *
+     * @param circuitBreakerOpenDuration
+     *            the open duration in ms, defaults to 30000 ms
+     */
+    public void setCircuitBreakerOpenDuration(int circuitBreakerOpenDuration) {
+        Validate.isTrue(circuitBreakerOpenDuration >= 0, "circuitBreakerOpenDuration cannot be negative");
+        this.circuitBreakerOpenDuration = circuitBreakerOpenDuration;
+    }
+
+    /**
+     * The directory a {@link NonBlockingNagiosPassiveCheckSender} spools
+     * passive checks to when they fail to send or overflow the queue, to be
+     * replayed once NSCA recovers
+     *
+     * @return the spool directory, defaults to null which disables spooling
+     */
+    public File getSpoolDirectory() {
+        return spoolDirectory;
+    }
+
+    /**
+     * The directory a {@link NonBlockingNagiosPassiveCheckSender} spools
+     * passive checks to when they fail to send or overflow the queue, to be
+     * replayed once NSCA recovers, including after a restart
+     *
+     * @param spoolDirectory
+     *            the spool directory, null disabling spooling
+     */
+    public void setSpoolDirectory(File spoolDirectory) {
+        this.spoolDirectory = spoolDirectory;
+    }
+
+    /**
+     * The size of each memory mapped file of the spool
+     *
+     * @return the segment size in bytes, defaults to 4 MiB
+     */
+    public int getSpoolSegmentSize() {
+        return spoolSegmentSize;
+    }
+
+    /**
+     * The size of each memory mapped file of the spool, which must hold the
+     * largest passive check
+     *
+     * @param spoolSegmentSize
+     *            the segment size in bytes, defaults to 4 MiB
+     */
+    public void setSpoolSegmentSize(int spoolSegmentSize) {
+        Validate.isTrue(spoolSegmentSize >= MIN_SPOOL_SEGMENT_SIZE, "spoolSegmentSize must be at least %s", MIN_SPOOL_SEGMENT_SIZE);
+        this.spoolSegmentSize = spoolSegmentSize;
+    }
+
+    /**
+     * The most disk space the spool uses, the oldest spooled passive checks
+     * being dropped to make room for new ones
+     *
+     * @return the spool capacity in bytes, defaults to 64 MiB
+     */
+    public long getSpoolCapacityInBytes() {
+        return spoolCapacityInBytes;
+    }
+
+    /**
+     * The most disk space the spool uses, the oldest spooled passive checks
+     * being dropped to make room for new ones
+     *
+     * @param spoolCapacityInBytes
+     *            the spool capacity in bytes, defaults to 64 MiB
+     */
+    public void setSpoolCapacityInBytes(long spoolCapacityInBytes) {
+        Validate.isTrue(spoolCapacityInBytes >= MIN_SPOOL_SEGMENT_SIZE, "spoolCapacityInBytes must be at least %s", MIN_SPOOL_SEGMENT_SIZE);
+        this.spoolCapacityInBytes = spoolCapacityInBytes;
+    }
+
+    /**
+     * The most spooled passive checks replayed per second, so a recovering
+     * NSCA isn't flooded
+     *
+     * @return the replay rate, defaults to 100
+     */
+    public int getSpoolReplayRate() {
+        return spoolReplayRate;
+    }
+
+    /**
+     * The most spooled passive checks replayed per second, so a recovering
+     * NSCA isn't flooded
+     *
+     * @param spoolReplayRate
+     *            the replay rate, defaults to 100
+     */
+    public void setSpoolReplayRate(int spoolReplayRate) {
+        Validate.isTrue(spoolReplayRate > 0, "spoolReplayRate must be greater than 0");
+        this.spoolReplayRate = spoolReplayRate;
+    }
+
     @Override
     public int hashCode() {
         return new HashCodeBuilder(19, 55)
@@ -21,6 +21,8 @@ import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Properties;
 
 /**
@@ -40,6 +42,8 @@ import java.util.Properties;
  * nagios.nsca.timeout=20000
  * nagios.nsca.connect.timeout=10000
  * nagios.nsca.encryption=xor
+ * nagios.nsca.hosts=nagios1:5667,nagios2
+ * nagios.nsca.failover.cooldown=30000
  * }
  * </pre>
  *
@@ -78,7 +82,35 @@ public class NagiosSettingsFactory {
         /**
          * key nagios.nsca.encryption, must be either none, xor or triple_des
          */
-        ENCRYPTION("nagios.nsca.encryption");
+        ENCRYPTION("nagios.nsca.encryption"),
+        /**
+         * key nagios.nsca.hosts, comma separated NSCA servers of the form
+         * host or host:port in priority order, the port defaulting to
+         * nagios.nsca.port
+         */
+        HOSTS("nagios.nsca.hosts"),
+        /**
+         * key nagios.nsca.failover.cooldown, must be integer value
+         */
+        FAILOVER_COOL_DOWN("nagios.nsca.failover.cooldown"),
+        /**
+         * key nagios.nsca.circuitbreaker.failurerate, must be integer value
+         * between 0 and 100
+         */
+        CIRCUIT_BREAKER_FAILURE_RATE_THRESHOLD("nagios.nsca.circuitbreaker.failurerate"),
+        /**
+         * key nagios.nsca.circuitbreaker.window, must be integer value
+         */
+        CIRCUIT_BREAKER_WINDOW_SIZE("nagios.nsca.circuitbreaker.window"),
+        /**
+         * key nagios.nsca.circuitbreaker.openduration, must be integer value
+         */
+        CIRCUIT_BREAKER_OPEN_DURATION("nagios.nsca.circuitbreaker.openduration"),
+        /**
+         * key nagios.nsca.spool.directory, the directory to spool passive
+         * checks to while NSCA is unavailable
+         */
+        SPOOL_DIRECTORY("nagios.nsca.spool.directory");
 
         private final String name;
 
@@ -166,6 +198,24 @@ public class NagiosSettingsFactory {
                 case ENCRYPTION:
                     settings.setEncryption(toEncryption(value));
                     break;
+                case HOSTS:
+                    settings.setDestinations(toDestinations(name, value, settings.getPort()));
+                    break;
+                case FAILOVER_COOL_DOWN:
+                    settings.setFailoverCoolDown(toInteger(name, value));
+                    break;
+                case CIRCUIT_BREAKER_FAILURE_RATE_THRESHOLD:
+                    settings.setCircuitBreakerFailureRateThreshold(toInteger(name, value));
+                    break;
+                case CIRCUIT_BREAKER_WINDOW_SIZE:
+                    settings.setCircuitBreakerWindowSize(toInteger(name, value));
+                    break;
+                case CIRCUIT_BREAKER_OPEN_DURATION:
+                    settings.setCircuitBreakerOpenDuration(toInteger(name, value));
+                    break;
+                case SPOOL_DIRECTORY:
+                    settings.setSpoolDirectory(new File(value));
+                    break;
                 }
             }
         }
@@ -187,6 +237,23 @@ public class NagiosSettingsFactory {
         }
     }
 
+    private static List<NagiosDestination> toDestinations(String name, String value, int defaultPort) throws NagiosConfigurationException {
+        List<NagiosDestination> destinations = new ArrayList<>();
+        for (String destination : StringUtils.split(value, ',')) {
+            if (StringUtils.isNotBlank(destination)) {
+                try {
+                    destinations.add(NagiosDestination.parse(destination, defaultPort));
+                } catch (IllegalArgumentException e) {
+                    throw new NagiosConfigurationException("Key [%s] %s, was [%s]", name, e.getMessage(), value);
+                }
+            }
+        }
+        if (destinations.isEmpty()) {
+            throw new NagiosConfigurationException("Key [%s] value cannot be empty or purely whitespace", name);
+        }
+        return destinations;
+    }
+
     private static Encryption toEncryption(String value) throws NagiosConfigurationException {
         try {
             return Encryption.valueOf(Encryption.class, value.toUpperCase());
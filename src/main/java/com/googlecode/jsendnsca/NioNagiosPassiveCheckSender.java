@@ -0,0 +1,536 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.googlecode.jsendnsca;
+
+import com.googlecode.jsendnsca.NonBlockingNagiosPassiveCheckSender.ExceptionHandler;
+import com.googlecode.jsendnsca.encryption.EncryptionContext;
+import org.apache.commons.lang3.Validate;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.SocketTimeoutException;
+import java.net.UnknownHostException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * This sender does not block, instead connecting to the Nagios NSCA add-on,
+ * reading the initialisation vector and writing each Passive Check with
+ * non-blocking channels driven by a single selector thread. Any number of
+ * Passive Checks can be in flight at once and a slow NSCA only delays the
+ * Passive Checks sent to it.
+ * <p>
+ *
+ * The {@link NagiosSettings#getConnectTimeout()} and
+ * {@link NagiosSettings#getTimeout()} apply to each Passive Check. The
+ * {@link NagiosSettings#getDestinations()} are tried in priority order, as
+ * with {@link NagiosPassiveCheckSender}, failing over to the next if connecting
+ * or reading the initialisation vector fails. Each host is resolved through a
+ * {@link DestinationAddressCache} on the resolver thread rather than the
+ * selector thread, so a slow DNS server only delays connecting until its
+ * addresses are cached. Any
+ * exceptions resulting from sending the Passive Check are passed to the
+ * {@link ExceptionHandler}, which is called on the selector thread so must
+ * not block.
+ * <p>
+ *
+ * {@link #sendAsync(MessagePayload)} instead returns a {@link CompletableFuture}
+ * completed by the selector thread once the Passive Check is written, or
+ * exceptionally if it fails rather than passing the exception to the
+ * {@link ExceptionHandler}.
+ * <p>
+ *
+ * Call {@link #shutdown()} to stop the selector thread, any Passive Checks
+ * still in flight are abandoned.
+ *
+ * @see NonBlockingNagiosPassiveCheckSender
+ */
+public class NioNagiosPassiveCheckSender implements PassiveCheckSender {
+
+    private static final int INITIALISATION_VECTOR_SIZE = 128;
+    private static final int HANDSHAKE_SIZE = INITIALISATION_VECTOR_SIZE + 4;
+
+    private final NagiosSettings nagiosSettings;
+    private final ExceptionHandler handler;
+    private final Selector selector;
+    private final Queue<Exchange> pending = new ConcurrentLinkedQueue<>();
+    // only used by the selector thread, ordered by the earliest deadline
+    private final Queue<Deadline> deadlines = new PriorityQueue<>();
+    private final AtomicBoolean wakeupPending = new AtomicBoolean();
+    private final Thread selectorThread;
+    private final PacketSizeStatistics packetSizeStatistics = new PacketSizeStatistics();
+    private final PassiveCheckBytesBuilder encoder;
+    private final ConcurrentMap<NagiosDestination, DestinationHealth> destinationHealth = new ConcurrentHashMap<>();
+    private volatile boolean running = true;
+
+    /**
+     * Construct a new {@link NioNagiosPassiveCheckSender} with the provided
+     * {@link NagiosSettings} and {@link ExceptionHandler}
+     *
+     * @param nagiosSettings the {@link NagiosSettings} to use to send the Passive Check
+     * @param handler the {@link ExceptionHandler} to use while sending the Passive Check
+     */
+    public NioNagiosPassiveCheckSender(NagiosSettings nagiosSettings, ExceptionHandler handler) {
+        Validate.notNull(nagiosSettings, "nagiosSettings cannot be null");
+        Validate.notNull(handler, "handler cannot be null");
+        this.nagiosSettings = nagiosSettings;
+        this.handler = handler;
+        // encoding only happens on the selector thread, so one builder is shared by every exchange
+        this.encoder = new PassiveCheckBytesBuilder(nagiosSettings, packetSizeStatistics);
+        try {
+            this.selector = Selector.open();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        this.selectorThread = new Thread(this::run, "jsendnsca-nio-sender");
+        selectorThread.setDaemon(true);
+        selectorThread.start();
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see
+     * com.googlecode.jsendnsca.sender.INagiosPassiveCheckSender#send(com.googlecode
+     * .jsendnsca.sender.MessagePayload)
+     */
+    @Override
+    public void send(MessagePayload payload) {
+        Validate.notNull(payload, "payload cannot be null");
+        Validate.validState(running, "sender has been shutdown");
+
+        start(new Exchange(payload, null, inFailoverOrder()));
+    }
+
+    /**
+     * Send the Passive Check without blocking, returning a future completed
+     * on the selector thread with the timings of the exchange with NSCA once
+     * the Passive Check is written. Dependent actions that are not async also
+     * run on the selector thread so must not block.
+     *
+     * @param payload
+     *            the Passive Check message payload
+     * @return the future {@link SendResult}, completed exceptionally with a
+     *         {@link NagiosException} if sending fails or the sender is shutdown
+     */
+    public CompletableFuture<SendResult> sendAsync(MessagePayload payload) {
+        Validate.notNull(payload, "payload cannot be null");
+        Validate.validState(running, "sender has been shutdown");
+
+        final CompletableFuture<SendResult> result = new CompletableFuture<>();
+        start(new Exchange(payload, result, inFailoverOrder()));
+        return result;
+    }
+
+    private List<DestinationHealth> inFailoverOrder() {
+        final int coolDown = nagiosSettings.getFailoverCoolDown();
+        final List<DestinationHealth> destinations = new ArrayList<>();
+        final List<DestinationHealth> coolingDown = new ArrayList<>();
+        for (DestinationHealth destination : getDestinationHealth()) {
+            if (destination.isCoolingDown(coolDown)) {
+                coolingDown.add(destination);
+            } else {
+                destinations.add(destination);
+            }
+        }
+        destinations.addAll(coolingDown);
+        return destinations;
+    }
+
+    private void start(Exchange exchange) {
+        final DestinationAddressCache addresses = exchange.destination.getAddresses();
+        final String host = exchange.destination.getDestination().getHost();
+        final InetAddress[] cached = addresses.getCachedAddresses(host);
+        if (cached != null) {
+            exchange.resolved(cached, null);
+            enqueue(exchange);
+        } else {
+            addresses.resolveInBackground(host, (resolved, unresolved) -> {
+                exchange.resolved(resolved, unresolved);
+                enqueue(exchange);
+            });
+        }
+    }
+
+    private void enqueue(Exchange exchange) {
+        pending.add(exchange);
+        if (!running) {
+            // shutdown raced with this send or its resolution, so the selector thread may have already drained pending
+            abandonPending();
+        } else if (wakeupPending.compareAndSet(false, true)) {
+            selector.wakeup();
+        }
+    }
+
+    /**
+     * The health of each of the {@link NagiosSettings#getDestinations()} in
+     * priority order
+     *
+     * @return the health of each destination
+     */
+    public List<DestinationHealth> getDestinationHealth() {
+        final List<NagiosDestination> destinations = nagiosSettings.getDestinations();
+        final List<DestinationHealth> health = new ArrayList<>(destinations.size());
+        for (NagiosDestination destination : destinations) {
+            health.add(destinationHealth.computeIfAbsent(destination,
+                    key -> new DestinationHealth(key, new DestinationAddressCache(nagiosSettings))));
+        }
+        return health;
+    }
+
+    /**
+     * @return the counts of each packet size sent by this sender
+     */
+    public PacketSizeStatistics getPacketSizeStatistics() {
+        return packetSizeStatistics;
+    }
+
+    /**
+     * Stop the selector thread and close any connections still in flight.
+     * <p>
+     * To be used when your application has been shutdown and you want to
+     * cleanup all resources such as if you run in a hot deployment environment.
+     */
+    public void shutdown() {
+        running = false;
+        selector.wakeup();
+    }
+
+    private void run() {
+        try {
+            while (running) {
+                selector.select(untilNextDeadline());
+                wakeupPending.set(false);
+                connectPending();
+                processSelected();
+                expireTimedOut();
+            }
+        } catch (IOException | RuntimeException e) {
+            handle(new NagiosException("Selector failed, no more passive alerts will be sent", e));
+        } finally {
+            running = false;
+            for (SelectionKey key : selector.keys()) {
+                closeQuietly(key.channel());
+                ((Exchange) key.attachment()).abandon();
+            }
+            abandonPending();
+            closeQuietly(selector);
+        }
+    }
+
+    private void handle(NagiosException e) {
+        try {
+            handler.handleException(e);
+        } catch (RuntimeException ignore) {
+            // a failing handler must not stop the selector thread
+        }
+    }
+
+    private void abandonPending() {
+        Exchange exchange;
+        while ((exchange = pending.poll()) != null) {
+            exchange.abandon();
+        }
+    }
+
+    private long untilNextDeadline() {
+        Deadline next;
+        while ((next = deadlines.peek()) != null && next.isSuperseded()) {
+            deadlines.poll();
+        }
+        if (next == null) {
+            return 0L;
+        }
+        return Math.max(1L, TimeUnit.NANOSECONDS.toMillis(next.at - System.nanoTime()) + 1);
+    }
+
+    private void connectPending() {
+        Exchange exchange;
+        while ((exchange = pending.poll()) != null) {
+            try {
+                exchange.connect();
+            } catch (IOException | RuntimeException e) {
+                exchange.failed(new NagiosException("Error occurred while sending passive alert", e));
+            }
+        }
+    }
+
+    private void processSelected() {
+        Iterator<SelectionKey> selected = selector.selectedKeys().iterator();
+        while (selected.hasNext()) {
+            SelectionKey key = selected.next();
+            selected.remove();
+            Exchange exchange = (Exchange) key.attachment();
+            try {
+                if (key.isConnectable()) {
+                    exchange.finishConnect();
+                } else if (key.isReadable()) {
+                    exchange.readHandshake();
+                } else if (key.isWritable()) {
+                    exchange.writePassiveCheck();
+                }
+            } catch (NagiosException e) {
+                exchange.failed(e);
+            } catch (IOException | RuntimeException e) {
+                exchange.failed(new NagiosException("Error occurred while sending passive alert", e));
+            }
+        }
+    }
+
+    private void expireTimedOut() {
+        long now = System.nanoTime();
+        Deadline next;
+        while ((next = deadlines.peek()) != null && (next.isSuperseded() || now - next.at >= 0)) {
+            deadlines.poll();
+            if (!next.isSuperseded()) {
+                next.exchange.failed(next.exchange.timedOut());
+            }
+        }
+    }
+
+    private static void closeQuietly(Closeable closeable) {
+        try {
+            closeable.close();
+        } catch (IOException ignore) {
+        }
+    }
+
+    private final class Exchange {
+
+        private final MessagePayload payload;
+        private final CompletableFuture<SendResult> result;
+        private final Iterator<DestinationHealth> candidates;
+        private final ByteBuffer handshake = ByteBuffer.allocate(HANDSHAKE_SIZE);
+        private ByteBuffer passiveCheck;
+        private DestinationHealth destination;
+        private InetAddress[] resolved;
+        private int address;
+        private UnknownHostException unresolved;
+        private boolean handshakeRead;
+        private SocketChannel channel;
+        private SelectionKey key;
+        private Deadline deadline;
+        private long startedAt;
+        private long connectedAt;
+        private long handshakeReadAt;
+
+        private Exchange(MessagePayload payload, CompletableFuture<SendResult> result, List<DestinationHealth> candidates) {
+            this.payload = payload;
+            this.result = result;
+            this.candidates = candidates.iterator();
+            this.destination = this.candidates.next();
+        }
+
+        private void resolved(InetAddress[] resolved, UnknownHostException unresolved) {
+            this.resolved = resolved;
+            this.unresolved = unresolved;
+            this.address = 0;
+        }
+
+        private void connect() throws IOException {
+            if (unresolved != null) {
+                throw unresolved;
+            }
+            handshake.clear();
+            startedAt = System.nanoTime();
+            channel = SocketChannel.open();
+            channel.configureBlocking(false);
+            if (channel.connect(new InetSocketAddress(resolved[address], destination.getDestination().getPort()))) {
+                connectedAt = System.nanoTime();
+                key = channel.register(selector, SelectionKey.OP_READ, this);
+                expireAfter(nagiosSettings.getTimeout());
+            } else {
+                key = channel.register(selector, SelectionKey.OP_CONNECT, this);
+                expireAfter(nagiosSettings.getConnectTimeout());
+            }
+        }
+
+        /**
+         * A timeout of 0 waits indefinitely, as with a blocking socket
+         */
+        private void expireAfter(int timeout) {
+            deadline = null;
+            if (timeout > 0) {
+                deadline = new Deadline(this, System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeout));
+                deadlines.add(deadline);
+            }
+        }
+
+        private void finishConnect() throws IOException {
+            if (channel.finishConnect()) {
+                connectedAt = System.nanoTime();
+                key.interestOps(SelectionKey.OP_READ);
+                expireAfter(nagiosSettings.getTimeout());
+            }
+        }
+
+        private void readHandshake() throws IOException {
+            try {
+                if (channel.read(handshake) < 0) {
+                    throw new EOFException();
+                }
+            } catch (IOException e) {
+                throw new NagiosException("Can't read initialisation vector", e);
+            }
+            if (!handshake.hasRemaining()) {
+                handshakeReadAt = System.nanoTime();
+                handshakeRead = true;
+                destination.recordSuccess(handshakeReadAt - startedAt);
+                final ByteBuffer encoded = encode();
+                channel.write(encoded);
+                if (!encoded.hasRemaining()) {
+                    complete();
+                    return;
+                }
+                // only copy out of the shared buffer when the socket can't take the whole packet
+                passiveCheck = ByteBuffer.allocate(encoded.remaining()).put(encoded);
+                passiveCheck.flip();
+                key.interestOps(SelectionKey.OP_WRITE);
+            }
+        }
+
+        private ByteBuffer encode() {
+            final byte[] initVector = new byte[INITIALISATION_VECTOR_SIZE];
+            handshake.flip();
+            handshake.get(initVector);
+            EncryptionContext encryptionContext = nagiosSettings.getEncryptor().initialise(initVector, nagiosSettings.getPassword());
+            try {
+                return encoder.reset()
+                        .withTimeStamp(handshake.getInt())
+                        .withLevel(payload.getLevel())
+                        .withHostname(payload.getHostname())
+                        .withServiceName(payload.getServiceName())
+                        .withMessage(payload.getMessage())
+                        .writeCRC()
+                        .encrypt(encryptionContext)
+                        .toByteBuffer();
+            } finally {
+                // only one passive check is sent per exchange
+                encryptionContext.close();
+            }
+        }
+
+        private void writePassiveCheck() throws IOException {
+            channel.write(passiveCheck);
+            if (!passiveCheck.hasRemaining()) {
+                complete();
+            }
+        }
+
+        private void complete() {
+            close();
+            if (result != null) {
+                final long writtenAt = System.nanoTime();
+                result.complete(new SendResult(payload, connectedAt - startedAt, handshakeReadAt - connectedAt, writtenAt - handshakeReadAt));
+            }
+        }
+
+        private NagiosException timedOut() {
+            if (key.interestOps() == SelectionKey.OP_READ) {
+                return new NagiosException("Can't read initialisation vector", new SocketTimeoutException("Read timed out"));
+            }
+            if (key.interestOps() == SelectionKey.OP_CONNECT) {
+                return new NagiosException("Error occurred while sending passive alert", new SocketTimeoutException("Connect timed out"));
+            }
+            return new NagiosException("Error occurred while sending passive alert", new SocketTimeoutException("Write timed out"));
+        }
+
+        /**
+         * Try the next address or destination if the connection was not
+         * established, otherwise fail
+         */
+        private void failed(NagiosException e) {
+            close();
+            if (handshakeRead) {
+                fail(e);
+            } else if (resolved != null && ++address < resolved.length) {
+                enqueue(this);
+            } else {
+                destination.recordFailure();
+                if (candidates.hasNext()) {
+                    destination = candidates.next();
+                    start(this);
+                } else {
+                    fail(e);
+                }
+            }
+        }
+
+        private void fail(NagiosException e) {
+            close();
+            if (result != null) {
+                result.completeExceptionally(e);
+            } else {
+                handle(e);
+            }
+        }
+
+        private void abandon() {
+            if (result != null) {
+                result.completeExceptionally(new NagiosException("Sender shutdown before passive alert was sent"));
+            }
+        }
+
+        private void close() {
+            deadline = null;
+            if (key != null) {
+                key.cancel();
+            }
+            if (channel != null) {
+                closeQuietly(channel);
+            }
+        }
+    }
+
+    /**
+     * When an exchange times out, left in the queue once superseded by a later
+     * deadline or the exchange closing rather than removed from the middle of it
+     */
+    private static final class Deadline implements Comparable<Deadline> {
+
+        private final Exchange exchange;
+        private final long at;
+
+        private Deadline(Exchange exchange, long at) {
+            this.exchange = exchange;
+            this.at = at;
+        }
+
+        private boolean isSuperseded() {
+            return exchange.deadline != this;
+        }
+
+        @Override
+        public int compareTo(Deadline other) {
+            return Long.signum(at - other.at);
+        }
+    }
+}
@@ -13,19 +13,72 @@
  */
 package com.googlecode.jsendnsca;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
 import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * This sender does not block unlike the {@link NagiosPassiveCheckSender}.
- * Instead it internally queues the passive check in an unbounded queue and has
+ * Instead it internally queues the passive check in a bounded queue and has
  * a single worker thread sending from the queue.
  * <p>
  *
+ * The queue holds at most {@link NagiosSettings#getQueueCapacity()} passive
+ * checks with an estimated size of at most
+ * {@link NagiosSettings#getQueueCapacityInBytes()}. Passive checks sent while it
+ * is full are handled according to the {@link NagiosSettings#getOverflowPolicy()},
+ * counted by {@link #getRejectedCount()} and {@link #getDroppedCount()} and
+ * reported to the {@link ExceptionHandler} at most once a second, rather than
+ * being lost silently or flooding the handler while the queue stays full.
+ * <p>
+ *
+ * With {@link NagiosSettings#enableCoalescing()} a queued passive check is
+ * replaced by a newer one for the same hostname and service name, so a backlog
+ * holds at most one passive check per service.
+ * <p>
+ *
+ * With a {@link NagiosSettings#getQueueTimeToLive()} passive checks queued or
+ * spooled for longer are discarded before being sent and counted by {@link #getExpiredCount()},
+ * rather than spending the connection on passive checks NSCA would consider stale.
+ * <p>
+ *
+ * With a {@link NagiosSettings#getMaxBatchSize()} above 1, queued passive
+ * checks are sent in batches over a single connection to NSCA each. A worker
+ * waits up to {@link NagiosSettings#getLinger()} for a full batch before
+ * sending whatever is queued.
+ * <p>
+ *
+ * With {@link NagiosSettings#enableVirtualThreads(int)} passive checks are
+ * instead sent on virtual threads, with at most
+ * {@link NagiosSettings#getMaxConcurrentSends()} being sent at once.
+ * <p>
+ *
+ * With a {@link NagiosSettings#getRingBufferSize()} passive checks are instead
+ * copied into a preallocated ring buffer without locking and sent from by a
+ * single dedicated thread waiting according to the
+ * {@link NagiosSettings#getWaitStrategy()}. Passive checks sent while it is full
+ * are dropped, and neither coalescing, the {@link OverflowPolicy}, the queue
+ * capacity in bytes, concurrent sends nor a custom executor apply.
+ * <p>
+ *
  * Any exceptions resulting from sending the passive check are output to
  * standard error with a stack trace.
  * <p>
  *
+ * With a {@link NagiosSettings#getSpoolDirectory()} passive checks that fail to
+ * send or overflow the queue are instead spooled to disk and replayed in order
+ * once NSCA recovers, including after a restart. Passive checks are still sent
+ * straight away while others are spooled, so replaying never holds them up,
+ * and a spooled passive check superseded by a newer one for the same service
+ * is discarded, counted by {@link #getCoalescedCount()}, rather than replayed
+ * over it. Only exceptions spooling the passive check are passed to the
+ * {@link ExceptionHandler}.
+ * <p>
+ *
  * This sender is useful where you don't want to wait for the passive check to
  * be sent and don't care if the sending fails
  * <p>
@@ -35,10 +88,26 @@ import java.util.concurrent.Executors;
  */
 public class NonBlockingNagiosPassiveCheckSender implements PassiveCheckSender {
 
+    private static final long RING_BUFFER_IDLE_TIMEOUT = TimeUnit.MILLISECONDS.toNanos(100L);
+    private static final long OVERFLOW_REPORT_INTERVAL = TimeUnit.SECONDS.toNanos(1L);
+
     private final PassiveCheckSender sender;
     private final ExceptionHandler handler;
+    private final PassiveCheckQueue queue;
+    private final int maxConcurrentSends;
+    private final int maxBatchSize;
+    private final long lingerInNanos;
+    private final long shutdownTimeoutInMs;
+    private final AtomicInteger activeWorkers = new AtomicInteger();
+    private final AtomicLong unreportedOverflows = new AtomicLong();
+    private final AtomicLong nextOverflowReport = new AtomicLong(System.nanoTime());
+    private final PassiveCheckSpool spool;
+    private final PacketSizeStatistics packetSizeStatistics;
+    private final PassiveCheckRingBuffer ringBuffer;
+    private final Thread ringBufferSender;
 
     private ExecutorService executor;
+    private volatile boolean shuttingDown;
 
     /**
      * Construct a new {@link NonBlockingNagiosPassiveCheckSender} with the
@@ -48,7 +117,7 @@ public class NonBlockingNagiosPassiveCheckSender implements PassiveCheckSender {
      *            the {@link NagiosSettings} to use to send the Passive Check
      */
     public NonBlockingNagiosPassiveCheckSender(NagiosSettings settings) {
-        this(new NagiosPassiveCheckSender(settings), new StandardErrorExceptionHandler());
+        this(settings, new StandardErrorExceptionHandler());
     }
 
     /**
@@ -59,13 +128,43 @@ public class NonBlockingNagiosPassiveCheckSender implements PassiveCheckSender {
      * @param handler the {@link ExceptionHandler} to use while sending the Passive Check
      */
     public NonBlockingNagiosPassiveCheckSender(NagiosSettings settings, ExceptionHandler handler) {
-        this(new NagiosPassiveCheckSender(settings), handler);
+        this(new NagiosPassiveCheckSender(settings), handler, settings);
     }
 
     NonBlockingNagiosPassiveCheckSender(PassiveCheckSender sender, ExceptionHandler handler) {
+        this(sender, handler, new NagiosSettings());
+    }
+
+    NonBlockingNagiosPassiveCheckSender(NagiosPassiveCheckSender sender, ExceptionHandler handler, NagiosSettings settings) {
+        this(sender, handler, settings, sender.getPacketSizeStatistics());
+    }
+
+    NonBlockingNagiosPassiveCheckSender(PassiveCheckSender sender, ExceptionHandler handler, NagiosSettings settings) {
+        this(sender, handler, settings, new PacketSizeStatistics());
+    }
+
+    NonBlockingNagiosPassiveCheckSender(PassiveCheckSender sender, ExceptionHandler handler, NagiosSettings settings,
+            PacketSizeStatistics packetSizeStatistics) {
         this.sender = sender;
         this.handler = handler;
-        this.executor = Executors.newSingleThreadExecutor();
+        this.packetSizeStatistics = packetSizeStatistics;
+        this.spool = settings.getSpoolDirectory() == null ? null : new PassiveCheckSpool(settings, sender);
+        this.maxConcurrentSends = settings.getMaxConcurrentSends();
+        this.maxBatchSize = settings.getMaxBatchSize();
+        this.lingerInNanos = TimeUnit.MILLISECONDS.toNanos(settings.getLinger());
+        this.shutdownTimeoutInMs = (long) settings.getConnectTimeout() + settings.getTimeout();
+        if (settings.getRingBufferSize() > 0) {
+            this.queue = null;
+            this.ringBuffer = new PassiveCheckRingBuffer(settings, this::overflowed);
+            this.ringBufferSender = new Thread(this::sendFromRingBuffer, "jsendnsca-ring-buffer-sender");
+            ringBufferSender.setDaemon(true);
+            ringBufferSender.start();
+        } else {
+            this.queue = new PassiveCheckQueue(settings, this::overflowed);
+            this.executor = SendExecutors.newExecutor(settings);
+            this.ringBuffer = null;
+            this.ringBufferSender = null;
+        }
     }
 
     /*
@@ -77,7 +176,123 @@ public class NonBlockingNagiosPassiveCheckSender implements PassiveCheckSender {
      */
     @Override
     public void send(MessagePayload payload) throws NagiosException {
-        executor.execute(new NonBlockingSender(payload));
+        if (ringBuffer != null) {
+            ringBuffer.offer(payload);
+        } else if (queue.offer(payload)) {
+            startWorkerIfNeeded();
+        }
+    }
+
+    /**
+     * Queue many passive checks. A passive check fails if it was rejected
+     * because the queue was full, or dropped to make room for a later passive
+     * check in the same batch. Success means the passive check was queued when
+     * this returned, so it may still be dropped to make room for passive checks
+     * sent afterwards.
+     *
+     * @param payloads
+     *            the Passive Check message payloads
+     * @return the {@link BatchResult} recording which passive checks were not queued
+     */
+    @Override
+    public BatchResult sendAll(Iterable<MessagePayload> payloads) {
+        if (ringBuffer == null) {
+            BatchResult result = queue.offerAll(payloads);
+            if (!result.getSucceeded().isEmpty()) {
+                startWorkerIfNeeded();
+            }
+            return result;
+        }
+        BatchResult result = new BatchResult();
+        for (MessagePayload payload : payloads) {
+            if (ringBuffer.offer(payload)) {
+                result.succeeded(payload);
+            } else {
+                result.failed(payload, new NagiosException("Passive check not queued as queue is full"));
+            }
+        }
+        return result;
+    }
+
+    /**
+     * The number of passive checks rejected because the queue stayed full for
+     * longer than {@link NagiosSettings#getQueueOfferTimeout()}
+     *
+     * @return the number of rejected passive checks
+     */
+    public long getRejectedCount() {
+        return queue == null ? 0L : queue.getRejectedCount();
+    }
+
+    /**
+     * The number of passive checks dropped by the {@link OverflowPolicy}
+     * because the queue was full
+     *
+     * @return the number of dropped passive checks
+     */
+    public long getDroppedCount() {
+        return ringBuffer != null ? ringBuffer.getDroppedCount() : queue.getDroppedCount();
+    }
+
+    /**
+     * The number of queued passive checks replaced by a newer passive check for
+     * the same hostname and service name, see {@link NagiosSettings#enableCoalescing()},
+     * and of spooled passive checks discarded as a newer one was sent
+     *
+     * @return the number of coalesced passive checks
+     */
+    public long getCoalescedCount() {
+        return (queue == null ? 0L : queue.getCoalescedCount())
+                + (spool == null ? 0L : spool.getSupersededCount());
+    }
+
+    /**
+     * The number of queued or spooled passive checks discarded unsent because
+     * they waited for longer than {@link NagiosSettings#getQueueTimeToLive()}
+     *
+     * @return the number of expired passive checks
+     */
+    public long getExpiredCount() {
+        return (ringBuffer != null ? ringBuffer.getExpiredCount() : queue.getExpiredCount())
+                + (spool == null ? 0L : spool.getExpiredCount());
+    }
+
+    /**
+     * The number of passive checks waiting to be sent
+     *
+     * @return the number of queued passive checks
+     */
+    public int getQueueSize() {
+        return ringBuffer != null ? ringBuffer.size() : queue.size();
+    }
+
+    /**
+     * The number of passive checks spooled to disk waiting to be replayed
+     *
+     * @return the number of spooled passive checks, 0 if spooling is disabled
+     */
+    public int getSpoolSize() {
+        return spool == null ? 0 : spool.size();
+    }
+
+    /**
+     * The number of spooled passive checks dropped because the spool was
+     * larger than {@link NagiosSettings#getSpoolCapacityInBytes()}
+     *
+     * @return the number of dropped spooled passive checks
+     */
+    public long getSpoolDroppedCount() {
+        return spool == null ? 0L : spool.getDroppedCount();
+    }
+
+    /**
+     * The counts of each packet size sent by the underlying sender
+     *
+     * @return the packet size counts, empty if the underlying sender doesn't
+     *         record them
+     */
+    public PacketSizeStatistics getPacketSizeStatistics() {
+        return packetSizeStatistics;
     }
 
     /**
@@ -85,7 +300,8 @@ public class NonBlockingNagiosPassiveCheckSender implements PassiveCheckSender {
      * executor which is a single thread executor.
      * <p>
      * You may want to use a custom executor in environments where you want to
-     * be in control of the used thread pools.
+     * be in control of the used thread pools. It is not used with a
+     * {@link NagiosSettings#getRingBufferSize()}.
      *
      * @param executor
      *            the custom executor to use
@@ -95,13 +311,67 @@ public class NonBlockingNagiosPassiveCheckSender implements PassiveCheckSender {
     }
 
     /**
-     * Shutdown the backing executor.
+     * Shutdown the backing executor or ring buffer thread, once it has sent
+     * the passive checks already queued, and stop replaying any spooled passive
+     * checks, which are replayed once a sender spooling to the same directory
+     * is next created. When spooling, the passive checks still queued are
+     * spooled rather than sent, and this waits up to the connect timeout plus
+     * the timeout for those already being sent, so any that fail are spooled
+     * too.
      * <p>
      * To be used when your application has been shutdown and you want to
      * cleanup all resources such as if you run in a hot deployment environment.
      */
     public void shutdown() {
-        executor.shutdown();
+        shuttingDown = true;
+        if (ringBuffer != null) {
+            ringBuffer.close();
+        } else {
+            executor.shutdown();
+        }
+        if (spool != null) {
+            if (queue != null) {
+                // the ring buffer has a single consumer, which spools what is left itself
+                queue.drain(Integer.MAX_VALUE).forEach(payload -> spool(payload, null));
+            }
+            try {
+                awaitTermination(shutdownTimeoutInMs, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            spool.close();
+        }
+    }
+
+    /**
+     * Remove the passive checks still queued without sending them, such as to
+     * send them elsewhere
+     *
+     * @return the removed passive checks, always empty with a ring buffer as
+     *         only its sending thread may take from it
+     */
+    List<MessagePayload> drainQueue() {
+        return queue == null ? Collections.emptyList() : queue.drain(Integer.MAX_VALUE);
+    }
+
+    /**
+     * Wait after {@link #shutdown()} for the passive checks already queued to
+     * be sent
+     *
+     * @param timeout
+     *            the maximum time to wait
+     * @param unit
+     *            the unit of the timeout
+     * @return true if every queued passive check was sent, false if the timeout passed first
+     * @throws InterruptedException
+     *             if interrupted while waiting
+     */
+    public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+        if (ringBufferSender != null) {
+            unit.timedJoin(ringBufferSender, timeout);
+            return !ringBufferSender.isAlive();
+        }
+        return executor.awaitTermination(timeout, unit);
     }
 
     /**
@@ -121,21 +391,125 @@ public class NonBlockingNagiosPassiveCheckSender implements PassiveCheckSender {
 
     }
 
-    private class NonBlockingSender implements Runnable {
+    private void overflowed(MessagePayload payload) {
+        if (spool != null) {
+            spool(payload, null);
+            return;
+        }
+        unreportedOverflows.incrementAndGet();
+        final long now = System.nanoTime();
+        final long nextReport = nextOverflowReport.get();
+        if (now - nextReport >= 0 && nextOverflowReport.compareAndSet(nextReport, now + OVERFLOW_REPORT_INTERVAL)) {
+            handler.handleException(new NagiosException(unreportedOverflows.getAndSet(0L)
+                    + " passive alert(s) dropped as queue is full since last reported, latest: " + payload));
+        }
+    }
 
-        private final MessagePayload payload;
+    private void failed(MessagePayload payload, Exception e) {
+        if (spool == null) {
+            handler.handleException(e);
+        } else {
+            spool(payload, e);
+        }
+    }
 
-        public NonBlockingSender(MessagePayload payload) {
-            this.payload = payload;
+    private void spool(MessagePayload payload, Exception cause) {
+        try {
+            spool.append(payload);
+        } catch (RuntimeException e) {
+            if (cause != null) {
+                e.addSuppressed(cause);
+            }
+            handler.handleException(new NagiosException("Unable to spool passive alert", e));
         }
+    }
 
-        @Override
-        public void run() {
+    private void startWorkerIfNeeded() {
+        int workers;
+        while ((workers = activeWorkers.get()) < maxConcurrentSends) {
+            if (activeWorkers.compareAndSet(workers, workers + 1)) {
+                try {
+                    executor.execute(new NonBlockingSender());
+                } catch (RuntimeException e) {
+                    activeWorkers.decrementAndGet();
+                    throw e;
+                }
+                return;
+            }
+        }
+    }
+
+    private void sendFromRingBuffer() {
+        final List<MessagePayload> batch = new ArrayList<>(Math.min(maxBatchSize, ringBuffer.capacity()));
+        while (!ringBuffer.isClosed() || !ringBuffer.isEmpty()) {
+            if (!ringBuffer.awaitSize(1, RING_BUFFER_IDLE_TIMEOUT)) {
+                continue;
+            }
+            if (lingerInNanos > 0L) {
+                ringBuffer.awaitSize(maxBatchSize, lingerInNanos);
+            }
+            if (ringBuffer.drainTo(batch, maxBatchSize) > 0) {
+                sendBatch(batch);
+                batch.clear();
+            } else {
+                Thread.onSpinWait();
+            }
+        }
+    }
+
+    private void sendBatch(List<MessagePayload> batch) {
+        if (shuttingDown && spool != null) {
+            batch.forEach(payload -> spool(payload, null));
+            return;
+        }
+        final long spoolMark = spool == null ? -1L : spool.mark();
+        if (batch.size() == 1) {
+            final MessagePayload payload = batch.get(0);
             try {
                 sender.send(payload);
             } catch (Exception e) {
-                handler.handleException(e);
+                failed(payload, e);
+                return;
+            }
+            if (spoolMark >= 0L) {
+                spool.sent(payload, spoolMark);
+            }
+            return;
+        }
+        try {
+            final BatchResult result = sender.sendAll(batch);
+            for (BatchResult.Failure failure : result.getFailures()) {
+                failed(failure.getPayload(), failure.getException());
+            }
+            if (spoolMark >= 0L) {
+                for (MessagePayload payload : result.getSucceeded()) {
+                    spool.sent(payload, spoolMark);
+                }
+            }
+        } catch (Exception e) {
+            handler.handleException(e);
+        }
+    }
+
+    private class NonBlockingSender implements Runnable {
+
+        @Override
+        public void run() {
+            List<MessagePayload> batch;
+            while (!(batch = nextBatch()).isEmpty()) {
+                sendBatch(batch);
+            }
+            activeWorkers.decrementAndGet();
+            if (!queue.isEmpty()) {
+                startWorkerIfNeeded();
+            }
+        }
+
+        private List<MessagePayload> nextBatch() {
+            if (lingerInNanos > 0L) {
+                queue.awaitSize(maxBatchSize, lingerInNanos);
             }
+            return queue.drain(maxBatchSize);
         }
     }
 
@@ -0,0 +1,44 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.googlecode.jsendnsca;
+
+/**
+ * What a {@link NonBlockingNagiosPassiveCheckSender} does with a passive check
+ * sent while its queue is full
+ *
+ * @see NagiosSettings#setOverflowPolicy(OverflowPolicy)
+ */
+public enum OverflowPolicy {
+
+    /**
+     * Wait up to {@link NagiosSettings#getQueueOfferTimeout()} for room in the
+     * queue, rejecting the passive check if there is still none
+     */
+    BLOCK,
+    /**
+     * Drop the passive check being sent
+     */
+    DROP_NEWEST,
+    /**
+     * Drop the passive checks queued longest to make room
+     */
+    DROP_OLDEST,
+    /**
+     * Drop the queued passive checks of the lowest {@link Level} to make room,
+     * oldest first, where OK is lowest followed by UNKNOWN, WARNING then
+     * CRITICAL. The passive check being sent is dropped instead if its level
+     * is lower than any queued.
+     */
+    DROP_LOWEST_LEVEL
+}
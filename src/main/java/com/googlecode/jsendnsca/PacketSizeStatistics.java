@@ -0,0 +1,56 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.googlecode.jsendnsca;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counts of the Passive Check packet sizes sent to NSCA, showing how often
+ * the legacy packet for messages of up to 512 chars is used rather than the
+ * large packet for messages of up to 4096 chars
+ *
+ * @see NagiosSettings#enableAdaptivePacketSize()
+ */
+public class PacketSizeStatistics {
+
+    private final LongAdder legacyPackets = new LongAdder();
+    private final LongAdder largePackets = new LongAdder();
+
+    void recordLegacyPacket() {
+        legacyPackets.increment();
+    }
+
+    void recordLargePacket() {
+        largePackets.increment();
+    }
+
+    /**
+     * @return the number of Passive Checks sent in the legacy packet
+     */
+    public long getLegacyPacketCount() {
+        return legacyPackets.sum();
+    }
+
+    /**
+     * @return the number of Passive Checks sent in the large packet
+     */
+    public long getLargePacketCount() {
+        return largePackets.sum();
+    }
+
+    @Override
+    public String toString() {
+        return "PacketSizeStatistics[legacyPackets=" + getLegacyPacketCount() + ",largePackets=" + getLargePacketCount() + "]";
+    }
+}
@@ -13,8 +13,11 @@
  */
 package com.googlecode.jsendnsca;
 
+import com.googlecode.jsendnsca.encryption.EncryptionContext;
 import com.googlecode.jsendnsca.utils.ByteArrayUtils;
 
+import java.nio.ByteBuffer;
+import java.util.Arrays;
 import java.util.zip.CRC32;
 
 @SuppressWarnings({"NumericCastThatLosesPrecision"})
@@ -24,15 +27,59 @@ class PassiveCheckBytesBuilder {
     private static final int HOST_NAME_SIZE = 64;
     private static final int SERVICE_NAME_SIZE = 128;
 
-    private final byte[] bytes;
-    private int currentOffset;
+    private final byte[] largeBytes;
+    private final byte[] legacyBytes;
+    private final ByteBuffer largeByteBuffer;
+    private final ByteBuffer legacyByteBuffer;
+    private final CRC32 crc = new CRC32();
     private final NagiosSettings nagiosSettings;
+    private final PacketSizeStatistics packetSizeStatistics;
+    private byte[] bytes;
+    private int largeBytesWritten;
+    private int currentOffset;
 
     PassiveCheckBytesBuilder(NagiosSettings nagiosSettings) {
+        this(nagiosSettings, new PacketSizeStatistics());
+    }
+
+    /**
+     * Build passive checks into buffers reused for every passive check, the
+     * legacy size buffer only being used when adaptive packet size is enabled
+     */
+    PassiveCheckBytesBuilder(NagiosSettings nagiosSettings, PacketSizeStatistics packetSizeStatistics) {
         this.nagiosSettings = nagiosSettings;
-        bytes = new byte[16 + HOST_NAME_SIZE + SERVICE_NAME_SIZE + nagiosSettings.getMaxMessageSizeInChars()];
-        ByteArrayUtils.writeShort(bytes, NSCA_VERSION, currentOffset);
-        this.currentOffset += 8;
+        this.packetSizeStatistics = packetSizeStatistics;
+        largeBytes = new byte[packetSize(nagiosSettings)];
+        largeByteBuffer = ByteBuffer.wrap(largeBytes);
+        largeBytesWritten = largeBytes.length;
+        if (nagiosSettings.isAdaptivePacketSizeEnabled()) {
+            legacyBytes = new byte[packetSize(NagiosSettings.SMALL_MAX_MESSAGE_SIZE_IN_CHARS)];
+            legacyByteBuffer = ByteBuffer.wrap(legacyBytes);
+        } else {
+            legacyBytes = null;
+            legacyByteBuffer = null;
+        }
+        reset();
+    }
+
+    /**
+     * Clear the buffer so this builder can encode another passive check without allocating
+     */
+    PassiveCheckBytesBuilder reset() {
+        Arrays.fill(largeBytes, 0, largeBytesWritten, (byte) 0);
+        bytes = largeBytes;
+        largeBytesWritten = largeBytes.length;
+        ByteArrayUtils.writeShort(bytes, NSCA_VERSION, 0);
+        currentOffset = 8;
+        return this;
+    }
+
+    static int packetSize(NagiosSettings nagiosSettings) {
+        return packetSize(nagiosSettings.getMaxMessageSizeInChars());
+    }
+
+    private static int packetSize(int maxMessageSizeInChars) {
+        return 16 + HOST_NAME_SIZE + SERVICE_NAME_SIZE + maxMessageSizeInChars;
     }
 
     public PassiveCheckBytesBuilder withLevel(Level level) {
@@ -60,7 +107,21 @@ class PassiveCheckBytesBuilder {
     }
 
     public PassiveCheckBytesBuilder withMessage(String message) {
-        writeFixedString(message, nagiosSettings.getMaxMessageSizeInChars() - 1);
+        int maxMessageSizeInChars = nagiosSettings.getMaxMessageSizeInChars();
+        if (legacyBytes != null && (message == null || message.length() < NagiosSettings.SMALL_MAX_MESSAGE_SIZE_IN_CHARS)) {
+            // the message fits so move what has been written so far into the legacy packet
+            System.arraycopy(largeBytes, 0, legacyBytes, 0, currentOffset);
+            Arrays.fill(legacyBytes, currentOffset, legacyBytes.length, (byte) 0);
+            largeBytesWritten = currentOffset;
+            bytes = legacyBytes;
+            maxMessageSizeInChars = NagiosSettings.SMALL_MAX_MESSAGE_SIZE_IN_CHARS;
+        }
+        if (maxMessageSizeInChars > NagiosSettings.SMALL_MAX_MESSAGE_SIZE_IN_CHARS) {
+            packetSizeStatistics.recordLargePacket();
+        } else {
+            packetSizeStatistics.recordLegacyPacket();
+        }
+        writeFixedString(message, maxMessageSizeInChars - 1);
         skipOneByte();
         return this;
     }
@@ -71,8 +132,8 @@ class PassiveCheckBytesBuilder {
 
 
     public PassiveCheckBytesBuilder writeCRC() {
-        final CRC32 crc = new CRC32();
-        crc.update(bytes);
+        crc.reset();
+        crc.update(bytes, 0, bytes.length);
         ByteArrayUtils.writeInteger(bytes, (int) crc.getValue(), 4);
         return this;
     }
@@ -81,8 +142,17 @@ class PassiveCheckBytesBuilder {
         return bytes;
     }
 
-    public PassiveCheckBytesBuilder encrypt(byte[] initVector) {
-        nagiosSettings.getEncryptor().encrypt(bytes, initVector, nagiosSettings.getPassword());
+    /**
+     * @return the built passive check wrapped in a {@link ByteBuffer} ready to be written
+     */
+    ByteBuffer toByteBuffer() {
+        final ByteBuffer byteBuffer = bytes == largeBytes ? largeByteBuffer : legacyByteBuffer;
+        byteBuffer.clear();
+        return byteBuffer;
+    }
+
+    public PassiveCheckBytesBuilder encrypt(EncryptionContext encryptionContext) {
+        encryptionContext.encrypt(bytes);
         return this;
     }
 
@@ -0,0 +1,392 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.googlecode.jsendnsca;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+
+/**
+ * The passive checks waiting to be sent by a
+ * {@link NonBlockingNagiosPassiveCheckSender}, bounded by both the number of
+ * passive checks and their estimated size in bytes. What happens to a passive
+ * check offered while the queue is full is decided by the {@link OverflowPolicy}.
+ * <p>
+ * When coalescing, a passive check replaces in place any queued passive check
+ * for the same hostname and service name, so only the latest result of each
+ * service is sent.
+ * <p>
+ * Every passive check refused or dropped because the queue is full is passed
+ * to the overflow consumer, such as to spool it to disk, once the lock is
+ * released so sending never waits on the consumer.
+ * <p>
+ * Each queued passive check records when it was queued, and one queued for
+ * longer than {@link NagiosSettings#getQueueTimeToLive()} is discarded when
+ * drained rather than sent.
+ */
+class PassiveCheckQueue {
+
+    private static final int PAYLOAD_OVERHEAD_IN_BYTES = 64;
+    private static final int STRING_OVERHEAD_IN_BYTES = 40;
+    private static final int[] LEVEL_PRIORITY = new int[Level.values().length];
+
+    static {
+        LEVEL_PRIORITY[Level.OK.ordinal()] = 0;
+        LEVEL_PRIORITY[Level.UNKNOWN.ordinal()] = 1;
+        LEVEL_PRIORITY[Level.WARNING.ordinal()] = 2;
+        LEVEL_PRIORITY[Level.CRITICAL.ordinal()] = 3;
+    }
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition notFull = lock.newCondition();
+    private final Condition grown = lock.newCondition();
+    private final ArrayDeque<Entry> entries = new ArrayDeque<>();
+    private final Map<ServiceKey, Entry> entriesByService = new HashMap<>();
+    private final int[] levelCounts = new int[Level.values().length];
+    private final int capacity;
+    private final long capacityInBytes;
+    private final OverflowPolicy overflowPolicy;
+    private final long offerTimeoutInNanos;
+    private final boolean coalescing;
+    private final long timeToLiveInNanos;
+    private final Consumer<MessagePayload> overflow;
+    private final AtomicLong rejected = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+    private final AtomicLong coalesced = new AtomicLong();
+    private final AtomicLong expired = new AtomicLong();
+    private long sizeInBytes;
+
+    PassiveCheckQueue(NagiosSettings settings) {
+        this(settings, payload -> {
+        });
+    }
+
+    PassiveCheckQueue(NagiosSettings settings, Consumer<MessagePayload> overflow) {
+        this.overflow = overflow;
+        this.capacity = settings.getQueueCapacity();
+        this.capacityInBytes = settings.getQueueCapacityInBytes();
+        this.overflowPolicy = settings.getOverflowPolicy();
+        this.offerTimeoutInNanos = TimeUnit.MILLISECONDS.toNanos(settings.getQueueOfferTimeout());
+        this.coalescing = settings.isCoalescingEnabled();
+        this.timeToLiveInNanos = TimeUnit.MILLISECONDS.toNanos(settings.getQueueTimeToLive());
+    }
+
+    /**
+     * Queue the passive check, applying the overflow policy if the queue is full
+     *
+     * @return true if the passive check was queued
+     */
+    boolean offer(MessagePayload payload) {
+        final List<MessagePayload> overflowed = new ArrayList<>(0);
+        final boolean queued = offer(payload, overflowed);
+        overflowed.forEach(overflow);
+        return queued;
+    }
+
+    /**
+     * Queue each passive check in turn, failing those refused or dropped to
+     * make room for a later one
+     *
+     * @return the {@link BatchResult} recording which passive checks are still queued
+     */
+    BatchResult offerAll(Iterable<MessagePayload> payloads) {
+        final List<MessagePayload> offered = new ArrayList<>();
+        final List<MessagePayload> overflowed = new ArrayList<>(0);
+        for (MessagePayload payload : payloads) {
+            offer(payload, overflowed);
+            offered.add(payload);
+        }
+        final Set<MessagePayload> notQueued = Collections.newSetFromMap(new IdentityHashMap<>());
+        notQueued.addAll(overflowed);
+        final BatchResult result = new BatchResult();
+        for (MessagePayload payload : offered) {
+            if (notQueued.contains(payload)) {
+                result.failed(payload, new NagiosException("Passive check not queued as queue is full"));
+            } else {
+                result.succeeded(payload);
+            }
+        }
+        overflowed.forEach(overflow);
+        return result;
+    }
+
+    private boolean offer(MessagePayload payload, List<MessagePayload> overflowed) {
+        final Entry entry = new Entry(payload);
+        if (entry.sizeInBytes > capacityInBytes) {
+            return refuse(payload, overflowed);
+        }
+        lock.lock();
+        try {
+            if (coalescing && replaceQueued(entry)) {
+                return true;
+            }
+            if (!makeRoomFor(entry, overflowed)) {
+                return refuse(payload, overflowed);
+            }
+            entries.addLast(entry);
+            added(entry);
+            grown.signal();
+            if (coalescing) {
+                entriesByService.put(entry.serviceKey(), entry);
+            }
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Remove up to maxPassiveChecks passive checks, queued longest first,
+     * discarding those that have outlived the time to live
+     *
+     * @return the removed passive checks, empty if the queue is empty or every
+     *         passive check removed had expired
+     */
+    List<MessagePayload> drain(int maxPassiveChecks) {
+        lock.lock();
+        try {
+            List<MessagePayload> payloads = new ArrayList<>(Math.min(maxPassiveChecks, entries.size()));
+            final long now = timeToLiveInNanos > 0L ? System.nanoTime() : 0L;
+            Entry entry;
+            while (payloads.size() < maxPassiveChecks && (entry = entries.pollFirst()) != null) {
+                removed(entry);
+                if (timeToLiveInNanos > 0L && now - entry.queuedAt >= timeToLiveInNanos) {
+                    expired.incrementAndGet();
+                    continue;
+                }
+                payloads.add(entry.payload);
+            }
+            return payloads;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Wait until at least size passive checks are queued or the timeout passes
+     */
+    void awaitSize(int size, long timeoutInNanos) {
+        lock.lock();
+        try {
+            long remaining = timeoutInNanos;
+            while (entries.size() < size && remaining > 0L) {
+                remaining = grown.awaitNanos(remaining);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    boolean isEmpty() {
+        lock.lock();
+        try {
+            return entries.isEmpty();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    int size() {
+        lock.lock();
+        try {
+            return entries.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    long getRejectedCount() {
+        return rejected.get();
+    }
+
+    long getDroppedCount() {
+        return dropped.get();
+    }
+
+    long getCoalescedCount() {
+        return coalesced.get();
+    }
+
+    long getExpiredCount() {
+        return expired.get();
+    }
+
+    static long estimatedSizeInBytes(MessagePayload payload) {
+        return PAYLOAD_OVERHEAD_IN_BYTES
+                + estimatedSizeInBytes(payload.getHostname())
+                + estimatedSizeInBytes(payload.getServiceName())
+                + estimatedSizeInBytes(payload.getMessage());
+    }
+
+    private static long estimatedSizeInBytes(String value) {
+        return value == null ? 0 : STRING_OVERHEAD_IN_BYTES + value.length();
+    }
+
+    private boolean refuse(MessagePayload payload, List<MessagePayload> overflowed) {
+        if (overflowPolicy == OverflowPolicy.BLOCK) {
+            rejected.incrementAndGet();
+        } else {
+            dropped.incrementAndGet();
+        }
+        overflowed.add(payload);
+        return false;
+    }
+
+    private void drop(Entry entry, List<MessagePayload> overflowed) {
+        removed(entry);
+        dropped.incrementAndGet();
+        overflowed.add(entry.payload);
+    }
+
+    private boolean replaceQueued(Entry entry) {
+        Entry queued = entriesByService.get(entry.serviceKey());
+        if (queued == null) {
+            return false;
+        }
+        coalesced.incrementAndGet();
+        if (sizeInBytes - queued.sizeInBytes + entry.sizeInBytes > capacityInBytes) {
+            // too large to replace in place, so remove it and make room as for a new passive check
+            entries.remove(queued);
+            removed(queued);
+            return false;
+        }
+        levelCounts[queued.level.ordinal()]--;
+        sizeInBytes -= queued.sizeInBytes;
+        queued.replaceWith(entry);
+        added(queued);
+        return true;
+    }
+
+    private boolean makeRoomFor(Entry entry, List<MessagePayload> overflowed) {
+        switch (overflowPolicy) {
+        case BLOCK:
+            return awaitRoomFor(entry.sizeInBytes);
+        case DROP_NEWEST:
+            return hasRoomFor(entry.sizeInBytes);
+        case DROP_OLDEST:
+            while (!hasRoomFor(entry.sizeInBytes)) {
+                drop(entries.pollFirst(), overflowed);
+            }
+            return true;
+        case DROP_LOWEST_LEVEL:
+            while (!hasRoomFor(entry.sizeInBytes)) {
+                if (!dropOldestOfLowestLevelBelowOrAt(entry.level, overflowed)) {
+                    return false;
+                }
+            }
+            return true;
+        default:
+            throw new IllegalStateException("Unsupported overflow policy " + overflowPolicy);
+        }
+    }
+
+    private boolean awaitRoomFor(long payloadSize) {
+        long remaining = offerTimeoutInNanos;
+        try {
+            while (!hasRoomFor(payloadSize)) {
+                if (remaining <= 0L) {
+                    return false;
+                }
+                remaining = notFull.awaitNanos(remaining);
+            }
+            return true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    private boolean dropOldestOfLowestLevelBelowOrAt(Level level, List<MessagePayload> overflowed) {
+        Level lowest = null;
+        for (Level queuedLevel : Level.values()) {
+            if (levelCounts[queuedLevel.ordinal()] > 0
+                    && (lowest == null || LEVEL_PRIORITY[queuedLevel.ordinal()] < LEVEL_PRIORITY[lowest.ordinal()])) {
+                lowest = queuedLevel;
+            }
+        }
+        if (lowest == null || LEVEL_PRIORITY[lowest.ordinal()] > LEVEL_PRIORITY[level.ordinal()]) {
+            return false;
+        }
+        Iterator<Entry> iterator = entries.iterator();
+        while (iterator.hasNext()) {
+            Entry queued = iterator.next();
+            if (queued.level == lowest) {
+                iterator.remove();
+                drop(queued, overflowed);
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private boolean hasRoomFor(long payloadSize) {
+        return entries.size() < capacity && sizeInBytes + payloadSize <= capacityInBytes;
+    }
+
+    private void added(Entry entry) {
+        levelCounts[entry.level.ordinal()]++;
+        sizeInBytes += entry.sizeInBytes;
+    }
+
+    private void removed(Entry entry) {
+        levelCounts[entry.level.ordinal()]--;
+        sizeInBytes -= entry.sizeInBytes;
+        if (coalescing) {
+            entriesByService.remove(entry.serviceKey(), entry);
+        }
+        notFull.signal();
+    }
+
+    private static class Entry {
+
+        private MessagePayload payload;
+        private Level level;
+        private long sizeInBytes;
+        private long queuedAt;
+
+        private Entry(MessagePayload payload) {
+            this.payload = payload;
+            this.level = payload.getLevel();
+            this.sizeInBytes = estimatedSizeInBytes(payload);
+            this.queuedAt = System.nanoTime();
+        }
+
+        private ServiceKey serviceKey() {
+            return new ServiceKey(payload.getHostname(), payload.getServiceName());
+        }
+
+        private void replaceWith(Entry newer) {
+            this.payload = newer.payload;
+            this.level = newer.level;
+            this.sizeInBytes = newer.sizeInBytes;
+            this.queuedAt = newer.queuedAt;
+        }
+    }
+
+    private record ServiceKey(String hostname, String serviceName) {
+    }
+}
@@ -0,0 +1,222 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.googlecode.jsendnsca;
+
+import java.util.List;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Consumer;
+
+/**
+ * A preallocated ring of slots the passive checks waiting to be sent by a
+ * {@link NonBlockingNagiosPassiveCheckSender} are copied into, for many
+ * threads sending and a single thread draining.
+ * <p>
+ * Senders claim the next slot by compare and set and copy the fields of the
+ * passive check into it, so sending neither locks nor allocates. A slot is
+ * published by writing its sequence last, which the draining thread waits on
+ * according to the {@link WaitStrategy}.
+ * <p>
+ * A passive check sent while every slot is full is dropped, counted and passed
+ * to the overflow consumer, such as to spool it to disk. One waiting for longer
+ * than {@link NagiosSettings#getQueueTimeToLive()} is discarded when drained
+ * rather than sent.
+ * <p>
+ * Closing sets the top bit of the claimed sequence, so no passive check can be
+ * claimed once the draining thread may have seen the ring empty and stopped.
+ */
+class PassiveCheckRingBuffer {
+
+    private static final int SPINS_BEFORE_YIELD = 100;
+    private static final long CLOSED = Long.MIN_VALUE;
+
+    private final Slot[] slots;
+    private final int mask;
+    private final WaitStrategy waitStrategy;
+    private final long timeToLiveInNanos;
+    private final Consumer<MessagePayload> overflow;
+    private final AtomicLong claimed = new AtomicLong();
+    private final AtomicLong consumed = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+    private final AtomicLong expired = new AtomicLong();
+    private volatile Thread consumer;
+    private volatile boolean consumerParked;
+    private volatile boolean closed;
+    private long next;
+
+    PassiveCheckRingBuffer(NagiosSettings settings) {
+        this(settings, payload -> {
+        });
+    }
+
+    PassiveCheckRingBuffer(NagiosSettings settings, Consumer<MessagePayload> overflow) {
+        this.overflow = overflow;
+        this.slots = new Slot[settings.getRingBufferSize()];
+        for (int i = 0; i < slots.length; i++) {
+            slots[i] = new Slot();
+        }
+        this.mask = slots.length - 1;
+        this.waitStrategy = settings.getWaitStrategy();
+        this.timeToLiveInNanos = TimeUnit.MILLISECONDS.toNanos(settings.getQueueTimeToLive());
+    }
+
+    /**
+     * Copy the passive check into the next free slot, dropping it if there is none
+     *
+     * @return true if the passive check was queued
+     * @throws RejectedExecutionException
+     *             if the ring buffer has been closed
+     */
+    boolean offer(MessagePayload payload) {
+        long sequence;
+        do {
+            sequence = claimed.get();
+            if ((sequence & CLOSED) != 0L) {
+                throw new RejectedExecutionException("Passive check not queued as sender has been shut down");
+            }
+            if (sequence - consumed.get() >= slots.length) {
+                dropped.incrementAndGet();
+                overflow.accept(payload);
+                return false;
+            }
+        } while (!claimed.compareAndSet(sequence, sequence + 1));
+        final Slot slot = slots[(int) sequence & mask];
+        slot.hostname = payload.getHostname();
+        slot.level = payload.getLevel();
+        slot.serviceName = payload.getServiceName();
+        slot.message = payload.getMessage();
+        slot.queuedAt = timeToLiveInNanos > 0L ? System.nanoTime() : 0L;
+        slot.published = sequence;
+        if (consumerParked) {
+            LockSupport.unpark(consumer);
+        }
+        return true;
+    }
+
+    /**
+     * Remove up to maxPassiveChecks published passive checks into the batch,
+     * oldest first, discarding those that have outlived the time to live. Only
+     * to be called by the single draining thread.
+     *
+     * @return the number of passive checks added to the batch
+     */
+    int drainTo(List<MessagePayload> batch, int maxPassiveChecks) {
+        final long now = timeToLiveInNanos > 0L ? System.nanoTime() : 0L;
+        int drained = 0;
+        Slot slot;
+        while (drained < maxPassiveChecks && (slot = slots[(int) next & mask]).published == next) {
+            if (timeToLiveInNanos > 0L && now - slot.queuedAt >= timeToLiveInNanos) {
+                expired.incrementAndGet();
+            } else {
+                batch.add(new MessagePayload(slot.hostname, slot.level, slot.serviceName, slot.message));
+                drained++;
+            }
+            slot.hostname = null;
+            slot.serviceName = null;
+            slot.message = null;
+            consumed.lazySet(++next);
+        }
+        return drained;
+    }
+
+    /**
+     * Wait until at least size passive checks are queued, the timeout passes
+     * or the draining thread is woken up. Only to be called by the single
+     * draining thread.
+     *
+     * @return true if at least size passive checks are queued
+     */
+    boolean awaitSize(int size, long timeoutInNanos) {
+        final long deadline = System.nanoTime() + timeoutInNanos;
+        int spins = 0;
+        while (size() < size) {
+            final long remaining = deadline - System.nanoTime();
+            if (closed || remaining <= 0L) {
+                return false;
+            }
+            switch (waitStrategy) {
+                case BLOCKING:
+                    consumer = Thread.currentThread();
+                    consumerParked = true;
+                    if (size() < size && !closed) {
+                        LockSupport.parkNanos(this, remaining);
+                    }
+                    consumerParked = false;
+                    break;
+                case YIELDING:
+                    if (++spins < SPINS_BEFORE_YIELD) {
+                        Thread.onSpinWait();
+                    } else {
+                        Thread.yield();
+                    }
+                    break;
+                default:
+                    Thread.onSpinWait();
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Stop accepting passive checks and stop the draining thread waiting for
+     * them, those already claimed still being drained
+     */
+    void close() {
+        long sequence;
+        do {
+            sequence = claimed.get();
+        } while ((sequence & CLOSED) == 0L && !claimed.compareAndSet(sequence, sequence | CLOSED));
+        closed = true;
+        final Thread waiting = consumer;
+        if (waiting != null) {
+            LockSupport.unpark(waiting);
+        }
+    }
+
+    boolean isClosed() {
+        return closed;
+    }
+
+    boolean isEmpty() {
+        return size() == 0;
+    }
+
+    int size() {
+        return (int) ((claimed.get() & ~CLOSED) - consumed.get());
+    }
+
+    int capacity() {
+        return slots.length;
+    }
+
+    long getDroppedCount() {
+        return dropped.get();
+    }
+
+    long getExpiredCount() {
+        return expired.get();
+    }
+
+    private static class Slot {
+
+        private volatile long published = -1L;
+        private String hostname;
+        private Level level;
+        private String serviceName;
+        private String message;
+        private long queuedAt;
+    }
+}
@@ -30,4 +30,27 @@ public interface PassiveCheckSender {
      *             thrown if an error occurs while sending the passive check
      */
     void send(MessagePayload payload);
+
+    /**
+     * Send many Passive Checks, carrying on past any which fail.
+     * <p>
+     * The default sends each Passive Check in turn. For senders which do not
+     * block, a Passive Check succeeds once it has been accepted for sending.
+     *
+     * @param payloads
+     *            the Passive Check message payloads
+     * @return the {@link BatchResult} recording which Passive Checks failed
+     */
+    default BatchResult sendAll(Iterable<MessagePayload> payloads) {
+        BatchResult result = new BatchResult();
+        for (MessagePayload payload : payloads) {
+            try {
+                send(payload);
+                result.succeeded(payload);
+            } catch (RuntimeException e) {
+                result.failed(payload, e);
+            }
+        }
+        return result;
+    }
 }
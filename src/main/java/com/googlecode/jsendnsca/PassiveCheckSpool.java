@@ -0,0 +1,518 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.googlecode.jsendnsca;
+
+import org.apache.commons.lang3.Validate;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.CRC32;
+
+/**
+ * An append only spool of the passive checks a
+ * {@link NonBlockingNagiosPassiveCheckSender} could not send, held in memory
+ * mapped segment files in {@link NagiosSettings#getSpoolDirectory()} and
+ * replayed in order by a background thread at no more than
+ * {@link NagiosSettings#getSpoolReplayRate()} per second. A replay that fails
+ * is retried until NSCA recovers, so each spooled passive check is sent at
+ * least once. A passive check spooled for longer than
+ * {@link NagiosSettings#getQueueTimeToLive()} is discarded rather than
+ * replayed, as NSCA would take it for a fresh result. Passive checks sent
+ * while others are spooled bypass the spool, and a spooled passive check is
+ * discarded rather than replayed over a newer one for the same hostname and
+ * service name sent in the meantime.
+ * <p>
+ * Each segment starts with a header of a magic number and the offset of the
+ * next passive check to replay, followed by records of the length and CRC32
+ * of when it was spooled, the level, hostname, service name and message. The length is written
+ * last and on opening each segment is read up to the first record that is
+ * missing or fails its CRC, so a record torn by a crash is never replayed and
+ * the spool carries on where it left off after a restart. Once the segments
+ * would use more than {@link NagiosSettings#getSpoolCapacityInBytes()} the
+ * oldest is dropped.
+ */
+class PassiveCheckSpool implements Closeable {
+
+    private static final String SEGMENT_SUFFIX = ".spool";
+    private static final int MAGIC = 0x4A534E53;
+    private static final int READ_OFFSET_POSITION = 4;
+    private static final int SEGMENT_HEADER_SIZE = 8;
+    private static final int RECORD_HEADER_SIZE = 8;
+    private static final int NULL_STRING = -1;
+    private static final long RETRY_INTERVAL_IN_MS = 1000L;
+
+    private final File directory;
+    private final int segmentSize;
+    private final long maxSegments;
+    private final long replayIntervalInNanos;
+    private final long retryIntervalInMs;
+    private final long timeToLiveInMs;
+    private final PassiveCheckSender sender;
+    private final ArrayDeque<Segment> segments = new ArrayDeque<>();
+    private final CRC32 crc = new CRC32();
+    private final AtomicLong dropped = new AtomicLong();
+    private final AtomicLong expired = new AtomicLong();
+    private final AtomicLong superseded = new AtomicLong();
+    private final Map<String, Long> sentSince = new HashMap<>();
+    private final Thread replayer;
+    private long nextSequence;
+    private int size;
+    // the index of the oldest spooled passive check, counting every one spooled since opening
+    private long head;
+    private volatile boolean closed;
+
+    PassiveCheckSpool(NagiosSettings settings, PassiveCheckSender sender) {
+        this(settings, sender, RETRY_INTERVAL_IN_MS);
+    }
+
+    PassiveCheckSpool(NagiosSettings settings, PassiveCheckSender sender, long retryIntervalInMs) {
+        this.directory = settings.getSpoolDirectory();
+        this.segmentSize = settings.getSpoolSegmentSize();
+        this.maxSegments = Math.max(1L, settings.getSpoolCapacityInBytes() / segmentSize);
+        this.replayIntervalInNanos = TimeUnit.SECONDS.toNanos(1) / settings.getSpoolReplayRate();
+        this.retryIntervalInMs = retryIntervalInMs;
+        this.timeToLiveInMs = settings.getQueueTimeToLive();
+        this.sender = sender;
+        recover();
+        this.replayer = new Thread(this::replay, "jsendnsca-spool-replay");
+        replayer.setDaemon(true);
+        replayer.start();
+    }
+
+    /**
+     * Append the passive check to the newest segment, dropping the oldest
+     * segment if the spool is full
+     */
+    synchronized void append(MessagePayload payload) {
+        Validate.validState(!closed, "spool has been closed");
+        final byte[] record = encode(payload);
+        Validate.isTrue(RECORD_HEADER_SIZE + record.length <= segmentSize - SEGMENT_HEADER_SIZE,
+                "passive check too large to spool in segments of %s bytes", segmentSize);
+        Segment segment = segments.peekLast();
+        if (segment == null || !segment.hasRoomFor(record.length)) {
+            segment = rotate();
+        }
+        crc.reset();
+        crc.update(record, 0, record.length);
+        segment.write(record, (int) crc.getValue());
+        size++;
+        notifyAll();
+    }
+
+    /**
+     * Mark the end of the spool before sending a passive check around it
+     *
+     * @return the mark, or -1 if nothing is spooled
+     */
+    synchronized long mark() {
+        return size == 0 ? -1L : head + size;
+    }
+
+    /**
+     * Record that the passive check was sent around the spool, so the passive
+     * checks for its service spooled before the mark are not replayed over it
+     *
+     * @param payload
+     *            the passive check sent
+     * @param mark
+     *            the {@link #mark()} taken before sending it
+     */
+    synchronized void sent(MessagePayload payload, long mark) {
+        if (mark > head && size > 0) {
+            sentSince.merge(serviceOf(payload), mark, Math::max);
+        }
+    }
+
+    /**
+     * @return the number of passive checks waiting to be replayed
+     */
+    synchronized int size() {
+        return size;
+    }
+
+    /**
+     * @return the number of spooled passive checks dropped as the spool was full
+     */
+    long getDroppedCount() {
+        return dropped.get();
+    }
+
+    /**
+     * @return the number of spooled passive checks discarded as they outlived the time to live
+     */
+    long getExpiredCount() {
+        return expired.get();
+    }
+
+    /**
+     * @return the number of spooled passive checks discarded as a newer one
+     *         for the same service was sent
+     */
+    long getSupersededCount() {
+        return superseded.get();
+    }
+
+    /**
+     * Stop replaying and flush the segments to disk, the passive checks still
+     * spooled being replayed once the spool is next opened
+     */
+    @Override
+    public void close() {
+        closed = true;
+        replayer.interrupt();
+        synchronized (this) {
+            for (Segment segment : segments) {
+                segment.force();
+            }
+            notifyAll();
+        }
+    }
+
+    private void recover() {
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new UncheckedIOException(new IOException("Unable to create spool directory " + directory));
+        }
+        final File[] files = directory.listFiles((dir, name) -> name.endsWith(SEGMENT_SUFFIX));
+        if (files == null) {
+            throw new UncheckedIOException(new IOException("Unable to list spool directory " + directory));
+        }
+        Arrays.sort(files);
+        for (File file : files) {
+            final Segment segment = Segment.open(file, crc);
+            if (segment == null) {
+                delete(file);
+                continue;
+            }
+            segments.addLast(segment);
+            size += segment.unread;
+            nextSequence = Math.max(nextSequence, sequenceOf(file) + 1);
+        }
+        while (segments.size() > 1 && segments.peekFirst().unread == 0) {
+            segments.pollFirst().delete();
+        }
+    }
+
+    private Segment rotate() {
+        final Segment newest = segments.peekLast();
+        if (newest != null) {
+            newest.force();
+        }
+        while (segments.size() >= maxSegments) {
+            final Segment oldest = segments.pollFirst();
+            size -= oldest.unread;
+            head += oldest.unread;
+            dropped.addAndGet(oldest.unread);
+            oldest.delete();
+        }
+        final Segment segment = Segment.create(new File(directory, String.format("%019d%s", nextSequence++, SEGMENT_SUFFIX)), segmentSize);
+        segments.addLast(segment);
+        return segment;
+    }
+
+    private void replay() {
+        try {
+            Record record;
+            while ((record = awaitOldest()) != null) {
+                if (timeToLiveInMs > 0L && System.currentTimeMillis() - record.spooledAt >= timeToLiveInMs) {
+                    expired.incrementAndGet();
+                    replayed(record);
+                    continue;
+                }
+                if (isSuperseded(record)) {
+                    superseded.incrementAndGet();
+                    replayed(record);
+                    continue;
+                }
+                if (closed) {
+                    return;
+                }
+                try {
+                    sender.send(record.payload);
+                } catch (Exception e) {
+                    TimeUnit.MILLISECONDS.sleep(retryIntervalInMs);
+                    continue;
+                }
+                replayed(record);
+                TimeUnit.NANOSECONDS.sleep(replayIntervalInNanos);
+            }
+        } catch (InterruptedException e) {
+            // closed
+        }
+    }
+
+    private synchronized Record awaitOldest() throws InterruptedException {
+        while (!closed) {
+            final Segment oldest = segments.peekFirst();
+            if (oldest != null && oldest.unread > 0) {
+                return oldest.readRecord();
+            }
+            if (oldest != null && oldest != segments.peekLast()) {
+                segments.pollFirst().delete();
+                continue;
+            }
+            wait();
+        }
+        return null;
+    }
+
+    private synchronized boolean isSuperseded(Record record) {
+        final String service = serviceOf(record.payload);
+        final Long mark = sentSince.get(service);
+        if (mark == null) {
+            return false;
+        }
+        if (mark <= head + 1) {
+            // no older passive check for the service is left once this one is replayed
+            sentSince.remove(service);
+        }
+        return mark > head;
+    }
+
+    private synchronized void replayed(Record record) {
+        if (closed) {
+            // replayed again once next opened, being sent at least once
+            return;
+        }
+        final Segment oldest = segments.peekFirst();
+        // the segment may have been dropped to make room while replaying
+        if (oldest == record.segment && oldest.readPosition == record.position) {
+            oldest.advanceTo(record.next);
+            size--;
+            head++;
+            if (size == 0) {
+                sentSince.clear();
+            }
+            if (oldest.unread == 0 && oldest != segments.peekLast()) {
+                segments.pollFirst().delete();
+            }
+        }
+    }
+
+    private static String serviceOf(MessagePayload payload) {
+        return payload.getHostname() + '\n' + payload.getServiceName();
+    }
+
+    private static byte[] encode(MessagePayload payload) {
+        final byte[] hostname = bytes(payload.getHostname());
+        final byte[] serviceName = bytes(payload.getServiceName());
+        final byte[] message = bytes(payload.getMessage());
+        final ByteBuffer record = ByteBuffer.allocate(8 + 1 + sizeOf(hostname) + sizeOf(serviceName) + sizeOf(message));
+        record.putLong(System.currentTimeMillis());
+        record.put((byte) payload.getLevel().ordinal());
+        put(record, hostname);
+        put(record, serviceName);
+        put(record, message);
+        return record.array();
+    }
+
+    private static MessagePayload decode(ByteBuffer record) {
+        record.position(8);
+        final Level level = Level.values()[record.get()];
+        final String hostname = get(record);
+        final String serviceName = get(record);
+        final String message = get(record);
+        return new MessagePayload(hostname, level, serviceName, message);
+    }
+
+    private static byte[] bytes(String value) {
+        return value == null ? null : value.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static int sizeOf(byte[] value) {
+        return 4 + (value == null ? 0 : value.length);
+    }
+
+    private static void put(ByteBuffer record, byte[] value) {
+        if (value == null) {
+            record.putInt(NULL_STRING);
+        } else {
+            record.putInt(value.length).put(value);
+        }
+    }
+
+    private static String get(ByteBuffer record) {
+        final int length = record.getInt();
+        if (length == NULL_STRING) {
+            return null;
+        }
+        final String value = new String(record.array(), record.position(), length, StandardCharsets.UTF_8);
+        record.position(record.position() + length);
+        return value;
+    }
+
+    private static long sequenceOf(File file) {
+        final String name = file.getName();
+        try {
+            return Long.parseLong(name.substring(0, name.length() - SEGMENT_SUFFIX.length()));
+        } catch (NumberFormatException e) {
+            return 0L;
+        }
+    }
+
+    private static void delete(File file) {
+        if (!file.delete()) {
+            file.deleteOnExit();
+        }
+    }
+
+    private static MappedByteBuffer map(File file, long size) throws IOException {
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE)) {
+            return channel.map(FileChannel.MapMode.READ_WRITE, 0, size < 0 ? channel.size() : size);
+        }
+    }
+
+    private static final class Record {
+
+        private final Segment segment;
+        private final int position;
+        private final int next;
+        private final long spooledAt;
+        private final MessagePayload payload;
+
+        private Record(Segment segment, int position, int next, long spooledAt, MessagePayload payload) {
+            this.segment = segment;
+            this.position = position;
+            this.next = next;
+            this.spooledAt = spooledAt;
+            this.payload = payload;
+        }
+    }
+
+    private static final class Segment {
+
+        private final File file;
+        private final MappedByteBuffer buffer;
+        private int readPosition;
+        private int writePosition;
+        private int unread;
+
+        private Segment(File file, MappedByteBuffer buffer, int readPosition, int writePosition, int unread) {
+            this.file = file;
+            this.buffer = buffer;
+            this.readPosition = readPosition;
+            this.writePosition = writePosition;
+            this.unread = unread;
+        }
+
+        private static Segment create(File file, int segmentSize) {
+            try {
+                final MappedByteBuffer buffer = map(file, segmentSize);
+                buffer.putInt(READ_OFFSET_POSITION, SEGMENT_HEADER_SIZE);
+                buffer.putInt(0, MAGIC);
+                return new Segment(file, buffer, SEGMENT_HEADER_SIZE, SEGMENT_HEADER_SIZE, 0);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        /**
+         * Open a segment written before a restart, reading up to the first
+         * missing or torn record
+         *
+         * @return the segment or null if it is not a spool segment
+         */
+        private static Segment open(File file, CRC32 crc) {
+            final MappedByteBuffer buffer;
+            try {
+                if (file.length() < SEGMENT_HEADER_SIZE || file.length() > Integer.MAX_VALUE) {
+                    return null;
+                }
+                buffer = map(file, -1L);
+            } catch (IOException e) {
+                return null;
+            }
+            if (buffer.getInt(0) != MAGIC) {
+                return null;
+            }
+            int readPosition = buffer.getInt(READ_OFFSET_POSITION);
+            int position = SEGMENT_HEADER_SIZE;
+            int unread = 0;
+            int length;
+            while ((length = validRecordLength(buffer, position, crc)) > 0) {
+                if (position >= readPosition) {
+                    unread++;
+                }
+                position += RECORD_HEADER_SIZE + length;
+            }
+            if (readPosition < SEGMENT_HEADER_SIZE || readPosition > position) {
+                readPosition = position;
+            }
+            return new Segment(file, buffer, readPosition, position, unread);
+        }
+
+        private static int validRecordLength(MappedByteBuffer buffer, int position, CRC32 crc) {
+            if (position + RECORD_HEADER_SIZE > buffer.capacity()) {
+                return 0;
+            }
+            final int length = buffer.getInt(position);
+            if (length <= 0 || length > buffer.capacity() - position - RECORD_HEADER_SIZE) {
+                return 0;
+            }
+            final byte[] record = new byte[length];
+            buffer.get(position + RECORD_HEADER_SIZE, record);
+            crc.reset();
+            crc.update(record, 0, length);
+            return buffer.getInt(position + 4) == (int) crc.getValue() ? length : 0;
+        }
+
+        private boolean hasRoomFor(int recordLength) {
+            return writePosition + RECORD_HEADER_SIZE + recordLength <= buffer.capacity();
+        }
+
+        private void write(byte[] record, int checksum) {
+            buffer.put(writePosition + RECORD_HEADER_SIZE, record);
+            buffer.putInt(writePosition + 4, checksum);
+            // written last so a record torn by a crash has no length
+            buffer.putInt(writePosition, record.length);
+            writePosition += RECORD_HEADER_SIZE + record.length;
+            unread++;
+        }
+
+        private Record readRecord() {
+            final int length = buffer.getInt(readPosition);
+            final byte[] record = new byte[length];
+            buffer.get(readPosition + RECORD_HEADER_SIZE, record);
+            final ByteBuffer body = ByteBuffer.wrap(record);
+            return new Record(this, readPosition, readPosition + RECORD_HEADER_SIZE + length, body.getLong(0), decode(body));
+        }
+
+        private void advanceTo(int next) {
+            readPosition = next;
+            buffer.putInt(READ_OFFSET_POSITION, next);
+            unread--;
+        }
+
+        private void force() {
+            buffer.force();
+        }
+
+        private void delete() {
+            PassiveCheckSpool.delete(file);
+        }
+    }
+}
@@ -0,0 +1,213 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.googlecode.jsendnsca;
+
+import org.apache.commons.lang3.Validate;
+
+import java.util.concurrent.BlockingDeque;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * This sender keeps a pool of connections to the Nagios NSCA add-on open, with
+ * the initialisation vector and timestamp already read, so sending a Passive
+ * Check only has to encode, encrypt and write it.
+ * <p>
+ *
+ * A background thread keeps {@link NagiosSettings#getConnectionPoolSize()}
+ * connections ready and closes those older than
+ * {@link NagiosSettings#getMaxConnectionAge()}, as NSCA rejects Passive Checks
+ * whose timestamp is older than its max_packet_age. If no pooled connection
+ * is available when sending, a new one is opened.
+ * <p>
+ *
+ * This sender is thread safe. Call {@link #shutdown()} to close the pooled
+ * connections, after which NSCA processes the Passive Checks sent over them.
+ *
+ * @see NagiosPassiveCheckSession
+ */
+public class PooledNagiosPassiveCheckSender implements PassiveCheckSender {
+
+    private final NagiosPassiveCheckSender sender;
+    private final int connectionPoolSize;
+    private final long maxConnectionAgeInNanos;
+    private final BlockingDeque<PooledSession> idleSessions;
+    private final ScheduledExecutorService maintainer;
+    private final AtomicBoolean replenishing = new AtomicBoolean();
+
+    /**
+     * Construct a new {@link PooledNagiosPassiveCheckSender} with the provided
+     * {@link NagiosSettings}
+     *
+     * @param nagiosSettings the {@link NagiosSettings} to use to send the Passive Check
+     */
+    public PooledNagiosPassiveCheckSender(NagiosSettings nagiosSettings) {
+        Validate.notNull(nagiosSettings, "nagiosSettings cannot be null");
+        this.sender = new NagiosPassiveCheckSender(nagiosSettings);
+        this.connectionPoolSize = nagiosSettings.getConnectionPoolSize();
+        this.maxConnectionAgeInNanos = TimeUnit.MILLISECONDS.toNanos(nagiosSettings.getMaxConnectionAge());
+        this.idleSessions = new LinkedBlockingDeque<>(connectionPoolSize);
+        this.maintainer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "jsendnsca-connection-pool");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long period = Math.max(1L, nagiosSettings.getMaxConnectionAge() / 4);
+        maintainer.scheduleWithFixedDelay(this::maintain, 0L, period, TimeUnit.MILLISECONDS);
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see
+     * com.googlecode.jsendnsca.sender.INagiosPassiveCheckSender#send(com.googlecode
+     * .jsendnsca.sender.MessagePayload)
+     */
+    @Override
+    public void send(MessagePayload payload) {
+        Validate.notNull(payload, "payload cannot be null");
+
+        final PooledSession pooledSession;
+        try {
+            pooledSession = borrow();
+        } catch (CircuitBreakerOpenException e) {
+            sender.divert(payload, e);
+            return;
+        }
+        try {
+            pooledSession.session.send(payload);
+        } catch (RuntimeException e) {
+            pooledSession.closeQuietly();
+            replenish();
+            throw e;
+        }
+        release(pooledSession);
+    }
+
+    /**
+     * @return the counts of each packet size sent by this sender
+     */
+    public PacketSizeStatistics getPacketSizeStatistics() {
+        return sender.getPacketSizeStatistics();
+    }
+
+    /**
+     * @return the {@link CircuitBreaker} guarding connections to NSCA
+     */
+    public CircuitBreaker getCircuitBreaker() {
+        return sender.getCircuitBreaker();
+    }
+
+    /**
+     * Send Passive Checks to the supplied fallback while the
+     * {@link CircuitBreaker} is open and no pooled connection is available,
+     * rather than failing fast
+     *
+     * @param circuitBreakerFallback
+     *            the fallback, or null to fail fast
+     */
+    public void setCircuitBreakerFallback(PassiveCheckSender circuitBreakerFallback) {
+        sender.setCircuitBreakerFallback(circuitBreakerFallback);
+    }
+
+    /**
+     * Stop maintaining the pool and close the pooled connections.
+     * <p>
+     * To be used when your application has been shutdown and you want to
+     * cleanup all resources such as if you run in a hot deployment environment.
+     */
+    public void shutdown() {
+        maintainer.shutdownNow();
+        PooledSession pooledSession;
+        while ((pooledSession = idleSessions.pollFirst()) != null) {
+            pooledSession.closeQuietly();
+        }
+    }
+
+    private PooledSession borrow() {
+        PooledSession pooledSession;
+        while ((pooledSession = idleSessions.pollFirst()) != null) {
+            if (!pooledSession.isExpired()) {
+                return pooledSession;
+            }
+            pooledSession.closeQuietly();
+        }
+        replenish();
+        return open();
+    }
+
+    private void release(PooledSession pooledSession) {
+        if (pooledSession.isExpired() || maintainer.isShutdown() || !idleSessions.offerFirst(pooledSession)) {
+            pooledSession.closeQuietly();
+        }
+    }
+
+    private PooledSession open() {
+        return new PooledSession(sender.openSession(), System.nanoTime() + maxConnectionAgeInNanos);
+    }
+
+    private void replenish() {
+        if (!maintainer.isShutdown() && replenishing.compareAndSet(false, true)) {
+            try {
+                maintainer.execute(this::maintain);
+            } catch (RuntimeException ignore) {
+                // shutdown concurrently
+            }
+        }
+    }
+
+    private void maintain() {
+        replenishing.set(false);
+        for (PooledSession pooledSession : idleSessions) {
+            if (pooledSession.isExpired() && idleSessions.remove(pooledSession)) {
+                pooledSession.closeQuietly();
+            }
+        }
+        try {
+            while (idleSessions.size() < connectionPoolSize && !maintainer.isShutdown()) {
+                PooledSession pooledSession = open();
+                if (!idleSessions.offerLast(pooledSession)) {
+                    pooledSession.closeQuietly();
+                }
+            }
+        } catch (RuntimeException ignore) {
+            // NSCA unavailable, try again on the next run
+        }
+    }
+
+    private static class PooledSession {
+
+        private final NagiosPassiveCheckSession session;
+        private final long expiresAt;
+
+        private PooledSession(NagiosPassiveCheckSession session, long expiresAt) {
+            this.session = session;
+            this.expiresAt = expiresAt;
+        }
+
+        private boolean isExpired() {
+            return System.nanoTime() - expiresAt >= 0;
+        }
+
+        private void closeQuietly() {
+            try {
+                session.close();
+            } catch (NagiosException ignore) {
+            }
+        }
+    }
+}
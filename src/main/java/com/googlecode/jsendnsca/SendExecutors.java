@@ -0,0 +1,62 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.googlecode.jsendnsca;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Creates the {@link ExecutorService} a {@link NonBlockingNagiosPassiveCheckSender}
+ * sends Passive Checks on.
+ * <p>
+ * Virtual threads are looked up reflectively so the library still runs on
+ * Java 17.
+ */
+final class SendExecutors {
+
+    private static final MethodHandle NEW_VIRTUAL_THREAD_PER_TASK_EXECUTOR = virtualThreadPerTaskExecutor();
+
+    private SendExecutors() {
+        // private constructor as only supports static methods
+    }
+
+    static ExecutorService newExecutor(NagiosSettings settings) {
+        if (settings.isVirtualThreadsEnabled() && virtualThreadsSupported()) {
+            try {
+                return (ExecutorService) NEW_VIRTUAL_THREAD_PER_TASK_EXECUTOR.invoke();
+            } catch (Throwable e) {
+                throw new IllegalStateException("Unable to create virtual thread executor", e);
+            }
+        }
+        if (settings.getMaxConcurrentSends() == 1) {
+            return Executors.newSingleThreadExecutor();
+        }
+        return Executors.newFixedThreadPool(settings.getMaxConcurrentSends());
+    }
+
+    static boolean virtualThreadsSupported() {
+        return NEW_VIRTUAL_THREAD_PER_TASK_EXECUTOR != null;
+    }
+
+    private static MethodHandle virtualThreadPerTaskExecutor() {
+        try {
+            return MethodHandles.publicLookup().findStatic(Executors.class, "newVirtualThreadPerTaskExecutor", MethodType.methodType(ExecutorService.class));
+        } catch (NoSuchMethodException | IllegalAccessException e) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,106 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.googlecode.jsendnsca;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The outcome of a Passive Check sent with
+ * {@link NioNagiosPassiveCheckSender#sendAsync(MessagePayload)}, timing each
+ * stage of the exchange with NSCA, or as published by a
+ * {@link NagiosPassiveCheckProcessor} the exception it failed with
+ */
+public final class SendResult {
+
+    private final MessagePayload payload;
+    private final long connectTimeInNanos;
+    private final long handshakeTimeInNanos;
+    private final long writeTimeInNanos;
+    private final NagiosException exception;
+
+    SendResult(MessagePayload payload, long connectTimeInNanos, long handshakeTimeInNanos, long writeTimeInNanos) {
+        this.payload = payload;
+        this.connectTimeInNanos = connectTimeInNanos;
+        this.handshakeTimeInNanos = handshakeTimeInNanos;
+        this.writeTimeInNanos = writeTimeInNanos;
+        this.exception = null;
+    }
+
+    SendResult(MessagePayload payload, NagiosException exception) {
+        this.payload = payload;
+        this.connectTimeInNanos = 0L;
+        this.handshakeTimeInNanos = 0L;
+        this.writeTimeInNanos = 0L;
+        this.exception = exception;
+    }
+
+    /**
+     * @return the Passive Check sent
+     */
+    public MessagePayload getPayload() {
+        return payload;
+    }
+
+    /**
+     * @return true if the Passive Check was sent
+     */
+    public boolean isSuccessful() {
+        return exception == null;
+    }
+
+    /**
+     * @return the exception sending failed with, or null if the Passive Check was sent
+     */
+    public NagiosException getException() {
+        return exception;
+    }
+
+    /**
+     * @return how long connecting to NSCA took in ns
+     */
+    public long getConnectTimeInNanos() {
+        return connectTimeInNanos;
+    }
+
+    /**
+     * @return how long reading the initialisation vector and timestamp took in ns
+     */
+    public long getHandshakeTimeInNanos() {
+        return handshakeTimeInNanos;
+    }
+
+    /**
+     * @return how long encoding, encrypting and writing the Passive Check took in ns
+     */
+    public long getWriteTimeInNanos() {
+        return writeTimeInNanos;
+    }
+
+    /**
+     * @return how long sending the Passive Check took in ns
+     */
+    public long getTotalTimeInNanos() {
+        return connectTimeInNanos + handshakeTimeInNanos + writeTimeInNanos;
+    }
+
+    @Override
+    public String toString() {
+        if (exception != null) {
+            return "SendResult[failed=" + exception.getMessage() + "]";
+        }
+        return "SendResult[connect=" + TimeUnit.NANOSECONDS.toMicros(connectTimeInNanos) + "us,handshake="
+                + TimeUnit.NANOSECONDS.toMicros(handshakeTimeInNanos) + "us,write="
+                + TimeUnit.NANOSECONDS.toMicros(writeTimeInNanos) + "us]";
+    }
+}
@@ -0,0 +1,280 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.googlecode.jsendnsca;
+
+import com.googlecode.jsendnsca.NonBlockingNagiosPassiveCheckSender.ExceptionHandler;
+import org.apache.commons.lang3.Validate;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Sends each Passive Check to one of several NSCA servers, chosen by the
+ * hostname of the Passive Check on a consistent hash ring with virtual nodes,
+ * so all checks for a host go to the same server and adding or removing a
+ * server only moves the hosts that server gains or loses.
+ * <p>
+ * Each server, identified by its {@link NagiosSettings#getDestinations()},
+ * has its own queue and connection pool, sending as a
+ * {@link NonBlockingNagiosPassiveCheckSender} over a
+ * {@link PooledNagiosPassiveCheckSender}, so a slow server only delays the
+ * hosts mapped to it.
+ */
+public class ShardedNagiosPassiveCheckSender implements PassiveCheckSender {
+
+    /**
+     * The number of points each server has on the hash ring by default
+     */
+    public static final int DEFAULT_VIRTUAL_NODES = 160;
+
+    private final ExceptionHandler handler;
+    private final int virtualNodes;
+    private final Map<String, Shard> shards = new LinkedHashMap<>();
+    private volatile NavigableMap<Long, Shard> ring = new TreeMap<>();
+    private PassiveCheckSender circuitBreakerFallback;
+
+    /**
+     * Construct a new {@link ShardedNagiosPassiveCheckSender} sending to the
+     * NSCA servers of the provided {@link NagiosSettings}, printing the stack
+     * trace of any exception while sending
+     *
+     * @param shardSettings the {@link NagiosSettings} of each NSCA server
+     */
+    public ShardedNagiosPassiveCheckSender(Collection<NagiosSettings> shardSettings) {
+        this(shardSettings, Exception::printStackTrace);
+    }
+
+    /**
+     * Construct a new {@link ShardedNagiosPassiveCheckSender} sending to the
+     * NSCA servers of the provided {@link NagiosSettings}
+     *
+     * @param shardSettings the {@link NagiosSettings} of each NSCA server
+     * @param handler the {@link ExceptionHandler} to use while sending the Passive Check
+     */
+    public ShardedNagiosPassiveCheckSender(Collection<NagiosSettings> shardSettings, ExceptionHandler handler) {
+        this(shardSettings, handler, DEFAULT_VIRTUAL_NODES);
+    }
+
+    /**
+     * Construct a new {@link ShardedNagiosPassiveCheckSender} sending to the
+     * NSCA servers of the provided {@link NagiosSettings}
+     *
+     * @param shardSettings the {@link NagiosSettings} of each NSCA server
+     * @param handler the {@link ExceptionHandler} to use while sending the Passive Check
+     * @param virtualNodes the number of points each server has on the hash ring
+     */
+    public ShardedNagiosPassiveCheckSender(Collection<NagiosSettings> shardSettings, ExceptionHandler handler, int virtualNodes) {
+        Validate.notEmpty(shardSettings, "shardSettings cannot be null or empty");
+        Validate.notNull(handler, "handler cannot be null");
+        Validate.isTrue(virtualNodes > 0, "virtualNodes must be greater than 0");
+        this.handler = handler;
+        this.virtualNodes = virtualNodes;
+        for (NagiosSettings settings : shardSettings) {
+            addShard(settings);
+        }
+    }
+
+    /**
+     * Queue the Passive Check to be sent to the NSCA server its hostname maps to
+     *
+     * @param payload
+     *            the Passive Check message payload
+     */
+    @Override
+    public void send(MessagePayload payload) {
+        Validate.notNull(payload, "payload cannot be null");
+        while (true) {
+            final Shard shard = shardFor(payload.getHostname());
+            try {
+                shard.sender.send(payload);
+                return;
+            } catch (RejectedExecutionException e) {
+                if (!shard.removed) {
+                    throw e;
+                }
+                // read the ring before the shard was removed, so send to its replacement
+            }
+        }
+    }
+
+    /**
+     * Add an NSCA server, taking over the hosts that now map to it
+     *
+     * @param settings
+     *            the {@link NagiosSettings} of the NSCA server
+     */
+    public synchronized void addShard(NagiosSettings settings) {
+        Validate.notNull(settings, "settings cannot be null");
+        final String key = keyOf(settings);
+        Validate.isTrue(!shards.containsKey(key), "shard for %s already added", key);
+        final Shard shard = new Shard(key, settings, handler);
+        shard.pool.setCircuitBreakerFallback(circuitBreakerFallback);
+        shards.put(key, shard);
+        rebuildRing();
+    }
+
+    /**
+     * Remove an NSCA server, its hosts moving to the other servers. Passive
+     * Checks still queued for the server are sent to the servers their hosts
+     * now map to, waiting at most the connect timeout plus the timeout of the
+     * server for those it is already being sent.
+     *
+     * @param settings
+     *            the {@link NagiosSettings} of the NSCA server
+     */
+    public void removeShard(NagiosSettings settings) {
+        Validate.notNull(settings, "settings cannot be null");
+        final Shard removed;
+        synchronized (this) {
+            final String key = keyOf(settings);
+            Validate.isTrue(shards.size() > 1 || !shards.containsKey(key), "cannot remove the only shard");
+            removed = shards.remove(key);
+            if (removed == null) {
+                return;
+            }
+            rebuildRing();
+        }
+        for (MessagePayload payload : removed.remove()) {
+            send(payload);
+        }
+    }
+
+    /**
+     * The NSCA server Passive Checks for the hostname are sent to
+     *
+     * @param hostname
+     *            the hostname of the Passive Check
+     * @return the {@link NagiosSettings} of the NSCA server
+     */
+    public NagiosSettings getShard(String hostname) {
+        return shardFor(hostname).settings;
+    }
+
+    /**
+     * Send Passive Checks to the supplied fallback while the
+     * {@link CircuitBreaker} of their NSCA server is open, rather than failing
+     * fast. Applies to servers added later too.
+     *
+     * @param circuitBreakerFallback
+     *            the fallback, or null to fail fast
+     */
+    public synchronized void setCircuitBreakerFallback(PassiveCheckSender circuitBreakerFallback) {
+        this.circuitBreakerFallback = circuitBreakerFallback;
+        for (Shard shard : shards.values()) {
+            shard.pool.setCircuitBreakerFallback(circuitBreakerFallback);
+        }
+    }
+
+    /**
+     * Stop sending and close the connections of every NSCA server, once the
+     * Passive Checks already queued have been sent
+     */
+    public synchronized void shutdown() {
+        for (Shard shard : shards.values()) {
+            shard.shutdown();
+        }
+    }
+
+    private Shard shardFor(String hostname) {
+        final NavigableMap<Long, Shard> current = ring;
+        final Map.Entry<Long, Shard> entry = current.ceilingEntry(hash(hostname));
+        return entry != null ? entry.getValue() : current.firstEntry().getValue();
+    }
+
+    private void rebuildRing() {
+        final NavigableMap<Long, Shard> rebuilt = new TreeMap<>();
+        for (Shard shard : shards.values()) {
+            for (int node = 0; node < virtualNodes; node++) {
+                rebuilt.put(hash(shard.key + "#" + node), shard);
+            }
+        }
+        ring = rebuilt;
+    }
+
+    private static String keyOf(NagiosSettings settings) {
+        return settings.getDestinations().toString();
+    }
+
+    /**
+     * 64 bit FNV-1a over the chars followed by the SplitMix64 finaliser,
+     * spreading similar hostnames evenly around the ring without allocating
+     */
+    static long hash(String value) {
+        long hash = 0xcbf29ce484222325L;
+        for (int i = 0; i < value.length(); i++) {
+            hash ^= value.charAt(i);
+            hash *= 0x100000001b3L;
+        }
+        hash = (hash ^ (hash >>> 30)) * 0xbf58476d1ce4e5b9L;
+        hash = (hash ^ (hash >>> 27)) * 0x94d049bb133111ebL;
+        return hash ^ (hash >>> 31);
+    }
+
+    private static final class Shard {
+
+        private final String key;
+        private final NagiosSettings settings;
+        private final PooledNagiosPassiveCheckSender pool;
+        private final NonBlockingNagiosPassiveCheckSender sender;
+        private volatile boolean removed;
+
+        private Shard(String key, NagiosSettings settings, ExceptionHandler handler) {
+            this.key = key;
+            this.settings = settings;
+            this.pool = new PooledNagiosPassiveCheckSender(settings);
+            this.sender = new NonBlockingNagiosPassiveCheckSender(pool, handler, settings, pool.getPacketSizeStatistics());
+        }
+
+        /**
+         * Stop queueing, wait for the passive checks already queued to be sent
+         * and only then close the pooled connections
+         */
+        private void shutdown() {
+            sender.shutdown();
+            try {
+                sender.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            pool.shutdown();
+        }
+
+        /**
+         * Stop queueing and return the passive checks still queued, waiting a
+         * bounded time for those being sent before closing the pooled
+         * connections
+         */
+        private List<MessagePayload> remove() {
+            removed = true;
+            final List<MessagePayload> queued = new ArrayList<>(sender.drainQueue());
+            sender.shutdown();
+            try {
+                sender.awaitTermination((long) settings.getConnectTimeout() + settings.getTimeout(), TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            // queued by sends racing the removal while the workers were finishing
+            queued.addAll(sender.drainQueue());
+            pool.shutdown();
+            return queued;
+        }
+    }
+}
@@ -0,0 +1,37 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.googlecode.jsendnsca;
+
+/**
+ * How the thread sending from the ring buffer of a
+ * {@link NonBlockingNagiosPassiveCheckSender} waits for passive checks, trading
+ * CPU for latency
+ *
+ * @see NagiosSettings#setRingBufferSize(int)
+ */
+public enum WaitStrategy {
+
+    /**
+     * Park the thread until a passive check is sent, using no CPU while idle
+     */
+    BLOCKING,
+    /**
+     * Spin briefly then yield the thread between checks for passive checks
+     */
+    YIELDING,
+    /**
+     * Spin on a CPU checking for passive checks, for the lowest latency
+     */
+    BUSY_SPIN
+}
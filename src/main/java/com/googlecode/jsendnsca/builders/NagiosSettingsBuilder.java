@@ -13,10 +13,16 @@
  */
 package com.googlecode.jsendnsca.builders;
 
+import com.googlecode.jsendnsca.NagiosDestination;
 import com.googlecode.jsendnsca.NagiosSettings;
+import com.googlecode.jsendnsca.OverflowPolicy;
+import com.googlecode.jsendnsca.WaitStrategy;
 import com.googlecode.jsendnsca.encryption.Encryption;
 import com.googlecode.jsendnsca.encryption.Encryptor;
 
+import java.io.File;
+import java.util.Arrays;
+
 import static org.apache.commons.lang3.StringUtils.EMPTY;
 
 /**
@@ -165,4 +171,289 @@ public class NagiosSettingsBuilder {
         nagiosSettings.enableLargeMessageSupport();
         return this;
     }
+
+    /**
+     * The next {@link NagiosSettings} created will send each message in the smallest packet it fits in,
+     * see {@link com.googlecode.jsendnsca.NagiosSettings#enableAdaptivePacketSize()}.
+     *
+     * @return the {@link NagiosSettingsBuilder} instance
+     */
+    public NagiosSettingsBuilder withAdaptivePacketSize() {
+        nagiosSettings.enableAdaptivePacketSize();
+        return this;
+    }
+
+    /**
+     * The next {@link NagiosSettings} created will use the supplied number of
+     * pooled connections
+     *
+     * @param connectionPoolSize
+     *            the number of connections a
+     *            {@link com.googlecode.jsendnsca.PooledNagiosPassiveCheckSender}
+     *            keeps open
+     * @return the {@link NagiosSettingsBuilder} instance
+     */
+    public NagiosSettingsBuilder withConnectionPoolSize(int connectionPoolSize) {
+        nagiosSettings.setConnectionPoolSize(connectionPoolSize);
+        return this;
+    }
+
+    /**
+     * The next {@link NagiosSettings} created will use the supplied maximum
+     * age of pooled connections
+     *
+     * @param maxConnectionAge
+     *            the age in ms after which a pooled connection is no longer used
+     * @return the {@link NagiosSettingsBuilder} instance
+     */
+    public NagiosSettingsBuilder withMaxConnectionAge(int maxConnectionAge) {
+        nagiosSettings.setMaxConnectionAge(maxConnectionAge);
+        return this;
+    }
+
+    /**
+     * The next {@link NagiosSettings} created will have virtual threads enabled,
+     * see {@link com.googlecode.jsendnsca.NagiosSettings#enableVirtualThreads(int)}.
+     *
+     * @param maxConcurrentSends
+     *            the maximum number of Passive Checks being sent at once
+     * @return the {@link NagiosSettingsBuilder} instance
+     */
+    public NagiosSettingsBuilder withVirtualThreads(int maxConcurrentSends) {
+        nagiosSettings.enableVirtualThreads(maxConcurrentSends);
+        return this;
+    }
+
+    /**
+     * The next {@link NagiosSettings} created will use the supplied maximum
+     * number of Passive Checks sent at once
+     *
+     * @param maxConcurrentSends
+     *            the maximum number of Passive Checks being sent at once
+     * @return the {@link NagiosSettingsBuilder} instance
+     */
+    public NagiosSettingsBuilder withMaxConcurrentSends(int maxConcurrentSends) {
+        nagiosSettings.setMaxConcurrentSends(maxConcurrentSends);
+        return this;
+    }
+
+    /**
+     * The next {@link NagiosSettings} created will use the supplied maximum
+     * number of Passive Checks a
+     * {@link com.googlecode.jsendnsca.BroadcastNagiosPassiveCheckSender} sends
+     * to the NSCA server at once
+     *
+     * @param broadcastConcurrency
+     *            the maximum number of Passive Checks being sent at once
+     * @return the {@link NagiosSettingsBuilder} instance
+     */
+    public NagiosSettingsBuilder withBroadcastConcurrency(int broadcastConcurrency) {
+        nagiosSettings.setBroadcastConcurrency(broadcastConcurrency);
+        return this;
+    }
+
+    /**
+     * The next {@link NagiosSettings} created will bound the queue of a
+     * {@link com.googlecode.jsendnsca.NonBlockingNagiosPassiveCheckSender}
+     * by the supplied capacities
+     *
+     * @param queueCapacity
+     *            the maximum number of Passive Checks queued
+     * @param queueCapacityInBytes
+     *            the maximum estimated size in bytes of the Passive Checks queued
+     * @return the {@link NagiosSettingsBuilder} instance
+     */
+    public NagiosSettingsBuilder withQueueCapacity(int queueCapacity, long queueCapacityInBytes) {
+        nagiosSettings.setQueueCapacity(queueCapacity);
+        nagiosSettings.setQueueCapacityInBytes(queueCapacityInBytes);
+        return this;
+    }
+
+    /**
+     * The next {@link NagiosSettings} created will use the specified
+     * {@link OverflowPolicy} when the queue is full
+     *
+     * @param overflowPolicy
+     *            the {@link OverflowPolicy} to use
+     * @return the {@link NagiosSettingsBuilder} instance
+     */
+    public NagiosSettingsBuilder withOverflowPolicy(OverflowPolicy overflowPolicy) {
+        nagiosSettings.setOverflowPolicy(overflowPolicy);
+        return this;
+    }
+
+    /**
+     * The next {@link NagiosSettings} created will block for up to the supplied
+     * timeout when the queue is full, see {@link OverflowPolicy#BLOCK}
+     *
+     * @param queueOfferTimeout
+     *            the timeout in ms
+     * @return the {@link NagiosSettingsBuilder} instance
+     */
+    public NagiosSettingsBuilder withBlockingOverflowPolicy(int queueOfferTimeout) {
+        nagiosSettings.setOverflowPolicy(OverflowPolicy.BLOCK);
+        nagiosSettings.setQueueOfferTimeout(queueOfferTimeout);
+        return this;
+    }
+
+    /**
+     * The next {@link NagiosSettings} created will discard Passive Checks
+     * queued for longer than the supplied time without sending them
+     *
+     * @param queueTimeToLive
+     *            the time to live in ms
+     * @return the {@link NagiosSettingsBuilder} instance
+     */
+    public NagiosSettingsBuilder withQueueTimeToLive(int queueTimeToLive) {
+        nagiosSettings.setQueueTimeToLive(queueTimeToLive);
+        return this;
+    }
+
+    /**
+     * The next {@link NagiosSettings} created will queue Passive Checks in a
+     * preallocated ring buffer sent from by a single thread
+     *
+     * @param ringBufferSize
+     *            the number of slots as a power of 2
+     * @param waitStrategy
+     *            how the sending thread waits for Passive Checks
+     * @return the {@link NagiosSettingsBuilder} instance
+     */
+    public NagiosSettingsBuilder withRingBuffer(int ringBufferSize, WaitStrategy waitStrategy) {
+        nagiosSettings.setRingBufferSize(ringBufferSize);
+        nagiosSettings.setWaitStrategy(waitStrategy);
+        return this;
+    }
+
+    /**
+     * The next {@link NagiosSettings} created will have coalescing of queued
+     * Passive Checks enabled, see {@link com.googlecode.jsendnsca.NagiosSettings#enableCoalescing()}.
+     *
+     * @return the {@link NagiosSettingsBuilder} instance
+     */
+    public NagiosSettingsBuilder withCoalescingEnabled() {
+        nagiosSettings.enableCoalescing();
+        return this;
+    }
+
+    /**
+     * The next {@link NagiosSettings} created will send queued Passive Checks
+     * in batches of up to maxBatchSize over one connection, waiting up to
+     * linger for a full batch
+     *
+     * @param maxBatchSize
+     *            the maximum number of Passive Checks sent over one connection
+     * @param linger
+     *            the time in ms to wait for a full batch
+     * @return the {@link NagiosSettingsBuilder} instance
+     */
+    public NagiosSettingsBuilder withBatching(int maxBatchSize, int linger) {
+        nagiosSettings.setMaxBatchSize(maxBatchSize);
+        nagiosSettings.setLinger(linger);
+        return this;
+    }
+
+    /**
+     * The next {@link NagiosSettings} created will cache the resolved
+     * addresses of the NSCA host for the supplied time
+     *
+     * @param addressCacheTimeToLive
+     *            the time to live in ms, 0 to resolve for every connection
+     * @return the {@link NagiosSettingsBuilder} instance
+     */
+    public NagiosSettingsBuilder withAddressCacheTimeToLive(int addressCacheTimeToLive) {
+        nagiosSettings.setAddressCacheTimeToLive(addressCacheTimeToLive);
+        return this;
+    }
+
+    /**
+     * The next {@link NagiosSettings} created will send to the supplied NSCA
+     * servers in priority order, failing over to the next when one doesn't
+     * accept the connection
+     *
+     * @param destinations
+     *            the destinations in priority order
+     * @return the {@link NagiosSettingsBuilder} instance
+     */
+    public NagiosSettingsBuilder withDestinations(NagiosDestination... destinations) {
+        nagiosSettings.setDestinations(Arrays.asList(destinations));
+        return this;
+    }
+
+    /**
+     * The next {@link NagiosSettings} created will skip an NSCA server that
+     * failed to accept a connection for the supplied time
+     *
+     * @param failoverCoolDown
+     *            the cool down in ms
+     * @return the {@link NagiosSettingsBuilder} instance
+     */
+    public NagiosSettingsBuilder withFailoverCoolDown(int failoverCoolDown) {
+        nagiosSettings.setFailoverCoolDown(failoverCoolDown);
+        return this;
+    }
+
+    /**
+     * The next {@link NagiosSettings} created will stop connecting to NSCA
+     * for the supplied open duration once the supplied percentage of the
+     * last connections have failed
+     *
+     * @param failureRateThreshold
+     *            the failure rate threshold in percent
+     * @param windowSize
+     *            the number of last connections the failure rate is calculated over
+     * @param openDuration
+     *            the time in ms to fail fast before trying NSCA again
+     * @return the {@link NagiosSettingsBuilder} instance
+     */
+    public NagiosSettingsBuilder withCircuitBreaker(int failureRateThreshold, int windowSize, int openDuration) {
+        nagiosSettings.setCircuitBreakerFailureRateThreshold(failureRateThreshold);
+        nagiosSettings.setCircuitBreakerWindowSize(windowSize);
+        nagiosSettings.setCircuitBreakerOpenDuration(openDuration);
+        return this;
+    }
+
+    /**
+     * The next {@link NagiosSettings} created will spool passive checks that
+     * fail to send or overflow the queue of a
+     * {@link com.googlecode.jsendnsca.NonBlockingNagiosPassiveCheckSender} to
+     * the supplied directory, replaying them once NSCA recovers
+     *
+     * @param spoolDirectory
+     *            the directory to spool to
+     * @return the {@link NagiosSettingsBuilder} instance
+     */
+    public NagiosSettingsBuilder withSpool(File spoolDirectory) {
+        nagiosSettings.setSpoolDirectory(spoolDirectory);
+        return this;
+    }
+
+    /**
+     * The next {@link NagiosSettings} created will spool to memory mapped
+     * files of the supplied size, using at most the supplied disk space
+     *
+     * @param segmentSize
+     *            the size of each spool file in bytes
+     * @param capacityInBytes
+     *            the most disk space to use in bytes
+     * @return the {@link NagiosSettingsBuilder} instance
+     */
+    public NagiosSettingsBuilder withSpoolCapacity(int segmentSize, long capacityInBytes) {
+        nagiosSettings.setSpoolSegmentSize(segmentSize);
+        nagiosSettings.setSpoolCapacityInBytes(capacityInBytes);
+        return this;
+    }
+
+    /**
+     * The next {@link NagiosSettings} created will replay at most the
+     * supplied number of spooled passive checks per second
+     *
+     * @param replayRate
+     *            the passive checks per second
+     * @return the {@link NagiosSettingsBuilder} instance
+     */
+    public NagiosSettingsBuilder withSpoolReplayRate(int replayRate) {
+        nagiosSettings.setSpoolReplayRate(replayRate);
+        return this;
+    }
 }
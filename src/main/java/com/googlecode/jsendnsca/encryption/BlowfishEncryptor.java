@@ -13,14 +13,13 @@
  */
 package com.googlecode.jsendnsca.encryption;
 
+import org.bouncycastle.crypto.BlockCipher;
 import org.bouncycastle.crypto.engines.BlowfishEngine;
-import org.bouncycastle.crypto.modes.CFBBlockCipher;
-import org.bouncycastle.crypto.paddings.PaddedBufferedBlockCipher;
-import org.bouncycastle.crypto.paddings.ZeroBytePadding;
 import org.bouncycastle.crypto.params.KeyParameter;
-import org.bouncycastle.crypto.params.ParametersWithIV;
 
 import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 /**
  * A Blowfish based {@link Encryptor} implementation.
@@ -30,34 +29,39 @@ public class BlowfishEncryptor implements Encryptor {
 
     private static final int KEY_BYTES_LENGTH = 56;
 
+    private final ConcurrentMap<String, KeyedCipherPool> keyedCiphers = new ConcurrentHashMap<>();
+
     @Override
     public void encrypt(final byte[] passiveCheckBytes, final byte[] initVector, final String password) {
+        initialise(initVector, password).encrypt(passiveCheckBytes);
+    }
+
+    @Override
+    public EncryptionContext initialise(final byte[] initVector, final String password) {
+        return new Cfb8EncryptionContext(keyedCiphers(password), initVector);
+    }
 
-        final BlowfishEngine engine = new BlowfishEngine();
-        PaddedBufferedBlockCipher cipher = new PaddedBufferedBlockCipher(new CFBBlockCipher(engine, 8), new ZeroBytePadding());
+    private KeyedCipherPool keyedCiphers(final String password) {
+        return keyedCiphers.computeIfAbsent(password, key -> {
+            assertValidPasswordBytesLength(key.getBytes(StandardCharsets.US_ASCII));
+            return new KeyedCipherPool(() -> keyedCipher(key));
+        });
+    }
+
+    private BlockCipher keyedCipher(final String password) {
+        final BlockCipher cipher = new BlowfishEngine();
 
         try {
             final byte[] passwordBytes = password.getBytes(StandardCharsets.US_ASCII);
 
-            assertValidPasswordBytesLength(passwordBytes);
-
             final byte[] sessionKey = new byte[KEY_BYTES_LENGTH];
             System.arraycopy(passwordBytes, 0, sessionKey, 0, Math.min(KEY_BYTES_LENGTH, passwordBytes.length));
 
-            final byte[] iv = new byte[KEY_BYTES_LENGTH];
-            System.arraycopy(initVector, 0, iv, 0, Math.min(KEY_BYTES_LENGTH, initVector.length));
-
-            cipher.init(true, new ParametersWithIV(new KeyParameter(sessionKey), iv));
-
-            final byte[] cipherText = new byte[cipher.getOutputSize(passiveCheckBytes.length)];
-            int cipherLength = cipher.processBytes(passiveCheckBytes, 0, passiveCheckBytes.length, cipherText, 0);
-            cipherLength = cipherLength + cipher.doFinal(cipherText, cipherLength);
-
-            final int bytesToCopy = Math.min(passiveCheckBytes.length, cipherLength);
-            System.arraycopy(cipherText, 0, passiveCheckBytes, 0, bytesToCopy);
+            cipher.init(true, new KeyParameter(sessionKey));
         } catch (Exception e) {
             throw new RuntimeException(e);
         }
+        return cipher;
     }
 
     private void assertValidPasswordBytesLength(final byte[] passwordBytes) {
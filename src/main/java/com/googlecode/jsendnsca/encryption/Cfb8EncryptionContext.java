@@ -0,0 +1,54 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.googlecode.jsendnsca.encryption;
+
+import org.bouncycastle.crypto.BlockCipher;
+
+/**
+ * 8 bit cipher feedback mode over a {@link KeyedCipherPool}, producing the
+ * same output as a BouncyCastle {@code CFBBlockCipher(cipher, 8)} initialised
+ * with the same key and initialisation vector. Only the feedback register is
+ * held per connection and each passive check is encrypted in place
+ */
+final class Cfb8EncryptionContext implements EncryptionContext {
+
+    private final KeyedCipherPool keyedCiphers;
+    private final byte[] register;
+    private final byte[] keyStream;
+
+    Cfb8EncryptionContext(KeyedCipherPool keyedCiphers, byte[] initVector) {
+        this.keyedCiphers = keyedCiphers;
+        final int blockSize = keyedCiphers.getBlockSize();
+        this.register = new byte[blockSize];
+        this.keyStream = new byte[blockSize];
+        System.arraycopy(initVector, 0, register, 0, Math.min(blockSize, initVector.length));
+    }
+
+    @Override
+    public void encrypt(byte[] passiveCheckBytes) {
+        final BlockCipher cipher = keyedCiphers.borrow();
+        try {
+            final int last = register.length - 1;
+            for (int i = 0; i < passiveCheckBytes.length; i++) {
+                cipher.processBlock(register, 0, keyStream, 0);
+                final byte encrypted = (byte) (passiveCheckBytes[i] ^ keyStream[0]);
+                System.arraycopy(register, 1, register, 0, last);
+                register[last] = encrypted;
+                passiveCheckBytes[i] = encrypted;
+            }
+        } finally {
+            keyedCiphers.release(cipher);
+        }
+    }
+}
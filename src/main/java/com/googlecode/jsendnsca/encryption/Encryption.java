@@ -39,7 +39,7 @@ public enum Encryption {
     /**
      * Rijndael 128 encryption
      */
-    RIJNDAEL128(new AESEncryptor(16)),
+    RIJNDAEL128(new JceAESEncryptor()),
     /**
      * Rijndael 192 encryption
      */
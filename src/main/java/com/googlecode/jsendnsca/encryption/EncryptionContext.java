@@ -0,0 +1,40 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.googlecode.jsendnsca.encryption;
+
+/**
+ * Encrypts the passive checks sent over a single connection to the NSCA
+ * daemon. Any cipher state is carried on from one passive check to the next,
+ * as the NSCA daemon expects when several passive checks share a connection.
+ *
+ * @see Encryptor#initialise(byte[], String)
+ */
+@FunctionalInterface
+public interface EncryptionContext {
+
+    /**
+     * Encrypt the next passive check sent over the connection in place
+     *
+     * @param passiveCheckBytes
+     *            the passive check bytes
+     */
+    void encrypt(byte[] passiveCheckBytes);
+
+    /**
+     * Release anything held for the connection, such as a cipher, once no
+     * more passive checks will be encrypted with this context
+     */
+    default void close() {
+    }
+}
@@ -33,4 +33,22 @@ public interface Encryptor {
      *            the NSCA daemon password
      */
     void encrypt(byte[] passiveCheckBytes, byte[] initVector, String password);
-}
\ No newline at end of file
+
+    /**
+     * Initialise an {@link EncryptionContext} for the passive checks sent over
+     * one connection to the NSCA daemon.
+     * <p>
+     * The default encrypts every passive check independently of the ones before
+     * it, which is correct for encryptors without state between passive checks
+     * such as XOR. Stream cipher modes must override this.
+     *
+     * @param initVector
+     *            the init vector as sent by NSCA addon upon connection
+     * @param password
+     *            the NSCA daemon password
+     * @return the {@link EncryptionContext} for the connection
+     */
+    default EncryptionContext initialise(byte[] initVector, String password) {
+        return passiveCheckBytes -> encrypt(passiveCheckBytes, initVector, password);
+    }
+}
@@ -0,0 +1,44 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.googlecode.jsendnsca.encryption;
+
+/**
+ * 128 bit Rijndael encryption using the JCE AES implementation, which on most
+ * JVMs is intrinsified to use the processor's AES instructions. Produces the
+ * same output as {@link AESEncryptor} with a 16 byte key, as AES is Rijndael
+ * with a 128 bit block. The larger Rijndael variants used by NSCA also widen
+ * the block so are not AES and stay on {@link AESEncryptor}
+ */
+public class JceAESEncryptor extends JceEncryptor {
+
+    private static final String AES_ALGORITHM = "AES";
+    private static final String AES_TRANSFORMATION = "AES/CFB8/NoPadding";
+
+    /**
+     * AES encryption using the most preferred JCE provider
+     */
+    public JceAESEncryptor() {
+        this(null);
+    }
+
+    /**
+     * AES encryption using a specific JCE provider
+     *
+     * @param provider
+     *            the name of the JCE provider
+     */
+    public JceAESEncryptor(String provider) {
+        super(AES_ALGORITHM, AES_TRANSFORMATION, provider, 16, 16);
+    }
+}
@@ -0,0 +1,153 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.googlecode.jsendnsca.encryption;
+
+import static javax.crypto.Cipher.ENCRYPT_MODE;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+import javax.crypto.Cipher;
+import javax.crypto.SecretKey;
+import javax.crypto.spec.IvParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
+
+/**
+ * Base for {@link Encryptor} implementations backed by a JCE 8 bit cipher
+ * feedback {@link Cipher}, optionally from a named provider. The key derived
+ * from the password is cached and each {@link Cipher} is borrowed from a pool
+ * for one connection, being returned once its {@link EncryptionContext} is
+ * closed, so the provider lookup is only paid once per concurrent connection
+ */
+abstract class JceEncryptor implements Encryptor {
+
+    private final String algorithm;
+    private final String transformation;
+    private final String provider;
+    private final int keyByteLength;
+    private final int initVectorByteLength;
+    private final Queue<Cipher> idleCiphers = new ConcurrentLinkedQueue<>();
+    private volatile PasswordKey passwordKey;
+
+    JceEncryptor(String algorithm, String transformation, String provider, int keyByteLength, int initVectorByteLength) {
+        this.algorithm = algorithm;
+        this.transformation = transformation;
+        this.provider = provider;
+        this.keyByteLength = keyByteLength;
+        this.initVectorByteLength = initVectorByteLength;
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see com.googlecode.jsendnsca.encryption.Encryptor#encrypt(byte[],
+     * byte[], java.lang.String)
+     */
+    @Override
+    public void encrypt(byte[] passiveCheckBytes, byte[] initVector, String password) {
+        final EncryptionContext context = initialise(initVector, password);
+        try {
+            context.encrypt(passiveCheckBytes);
+        } finally {
+            context.close();
+        }
+    }
+
+    @Override
+    public EncryptionContext initialise(byte[] initVector, String password) {
+        // cipher feedback state carries across the passive checks of a connection so it owns its cipher until closed
+        final Cipher cipher = borrow();
+        try {
+            init(cipher, initVector, password);
+        } catch (RuntimeException e) {
+            idleCiphers.offer(cipher);
+            throw e;
+        }
+        return new CipherContext(cipher);
+    }
+
+    private Cipher borrow() {
+        final Cipher cipher = idleCiphers.poll();
+        return cipher != null ? cipher : newCipher();
+    }
+
+    private Cipher newCipher() {
+        try {
+            return provider == null ? Cipher.getInstance(transformation) : Cipher.getInstance(transformation, provider);
+        } catch (Exception e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private void init(Cipher cipher, byte[] initVector, String password) {
+        try {
+            cipher.init(ENCRYPT_MODE, keyFor(password), new IvParameterSpec(Arrays.copyOf(initVector, initVectorByteLength)));
+        } catch (Exception e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private static void update(Cipher cipher, byte[] passiveCheckBytes) {
+        try {
+            cipher.update(passiveCheckBytes, 0, passiveCheckBytes.length, passiveCheckBytes, 0);
+        } catch (Exception e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private SecretKey keyFor(String password) {
+        PasswordKey key = passwordKey;
+        if (key == null || !key.password.equals(password)) {
+            final byte[] keyBytes = Arrays.copyOf(password.getBytes(StandardCharsets.US_ASCII), keyByteLength);
+            key = new PasswordKey(password, new SecretKeySpec(keyBytes, algorithm));
+            passwordKey = key;
+        }
+        return key.secretKey;
+    }
+
+    private final class CipherContext implements EncryptionContext {
+
+        private Cipher cipher;
+
+        private CipherContext(Cipher cipher) {
+            this.cipher = cipher;
+        }
+
+        @Override
+        public void encrypt(byte[] passiveCheckBytes) {
+            update(cipher, passiveCheckBytes);
+        }
+
+        @Override
+        public void close() {
+            if (cipher != null) {
+                idleCiphers.offer(cipher);
+                cipher = null;
+            }
+        }
+    }
+
+    private static final class PasswordKey {
+
+        private final String password;
+        private final SecretKey secretKey;
+
+        private PasswordKey(String password, SecretKey secretKey) {
+            this.password = password;
+            this.secretKey = secretKey;
+        }
+    }
+}
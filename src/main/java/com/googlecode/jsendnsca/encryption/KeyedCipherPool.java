@@ -0,0 +1,56 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.googlecode.jsendnsca.encryption;
+
+import org.bouncycastle.crypto.BlockCipher;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.function.Supplier;
+
+/**
+ * Block ciphers already keyed from one password, shared by every connection
+ * encrypting with that password. BouncyCastle engines hold per block working
+ * state so a cipher is borrowed for the duration of each encryption, meaning
+ * the key schedule is only expanded once per concurrently encrypting thread
+ * rather than once per connection. Encryptors keep a pool per password so
+ * senders with different passwords don't discard each other's keyed ciphers
+ */
+final class KeyedCipherPool {
+
+    private final Supplier<BlockCipher> keyedCipherFactory;
+    private final Queue<BlockCipher> idleCiphers = new ConcurrentLinkedQueue<>();
+
+    KeyedCipherPool(Supplier<BlockCipher> keyedCipherFactory) {
+        this.keyedCipherFactory = keyedCipherFactory;
+    }
+
+    int getBlockSize() {
+        final BlockCipher cipher = borrow();
+        try {
+            return cipher.getBlockSize();
+        } finally {
+            release(cipher);
+        }
+    }
+
+    BlockCipher borrow() {
+        final BlockCipher cipher = idleCiphers.poll();
+        return cipher != null ? cipher : keyedCipherFactory.get();
+    }
+
+    void release(BlockCipher cipher) {
+        idleCiphers.offer(cipher);
+    }
+}
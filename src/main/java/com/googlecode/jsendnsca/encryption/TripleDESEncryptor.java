@@ -13,60 +13,30 @@
  */
 package com.googlecode.jsendnsca.encryption;
 
-import static javax.crypto.Cipher.*;
-
-import java.nio.charset.StandardCharsets;
-
-import javax.crypto.Cipher;
-import javax.crypto.SecretKey;
-import javax.crypto.spec.IvParameterSpec;
-import javax.crypto.spec.SecretKeySpec;
-
 /**
  * Triple DES encryption
  *
  * @author krisajenkins
  */
-public class TripleDESEncryptor implements Encryptor {
+public class TripleDESEncryptor extends JceEncryptor {
 
     private static final String DES_ALGORITHM = "DESede";
-    private static final String DES_TRANSFORMATION = "DESede/CFB8/PKCS5Padding";
+    private static final String DES_TRANSFORMATION = "DESede/CFB8/NoPadding";
 
-    /*
-     * (non-Javadoc)
-     *
-     * @see com.googlecode.jsendnsca.encryption.Encryptor#encrypt(byte[],
-     * byte[], java.lang.String)
+    /**
+     * Triple DES encryption using the most preferred JCE provider
      */
-    public void encrypt(byte[] passiveCheckBytes, byte[] initVector, String password) {
-        try {
-            final byte[] keyBytes = toFixedSizeByteArray(password.getBytes(StandardCharsets.US_ASCII), 24);
-            final byte[] initVectorBytes = toFixedSizeByteArray(initVector, 8);
-
-            final SecretKey key = new SecretKeySpec(keyBytes, DES_ALGORITHM);
-            final IvParameterSpec iv = new IvParameterSpec(initVectorBytes);
-
-            final Cipher cipher = Cipher.getInstance(DES_TRANSFORMATION);
-            cipher.init(ENCRYPT_MODE, key, iv);
-            final byte[] cipherText = cipher.doFinal(passiveCheckBytes);
-
-            System.arraycopy(cipherText, 0, passiveCheckBytes, 0, passiveCheckBytes.length);
-        } catch (Exception e) {
-            throw new RuntimeException(e);
-        }
+    public TripleDESEncryptor() {
+        this(null);
     }
 
-    private byte[] toFixedSizeByteArray(byte[] source, int fixedLength) {
-        byte[] result = new byte[fixedLength];
-
-        for (int i = 0; i < fixedLength && i < source.length; i++) {
-            if (i < source.length) {
-                result[i] = source[i];
-            } else {
-                result[i] = 0;
-            }
-        }
-
-        return result;
+    /**
+     * Triple DES encryption using a specific JCE provider
+     *
+     * @param provider
+     *            the name of the JCE provider
+     */
+    public TripleDESEncryptor(String provider) {
+        super(DES_ALGORITHM, DES_TRANSFORMATION, provider, 24, 8);
     }
 }
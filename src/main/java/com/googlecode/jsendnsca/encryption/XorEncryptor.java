@@ -13,18 +13,30 @@
  */
 package com.googlecode.jsendnsca.encryption;
 
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteOrder;
 import java.nio.charset.StandardCharsets;
 
 import static org.apache.commons.lang3.StringUtils.*;
 
 /**
  * XOR "Encryption"
+ * <p>
+ * Each byte of a passive check is XORed with the initialisation vector and the
+ * password, both repeated from the start of each passive check. The two are
+ * applied together in a single pass eight bytes at a time, the repeated
+ * password being cached and a connection sending more than one passive check
+ * precomputing their combined key stream
  * 
  * @author Raj Patel
  */
 public class XorEncryptor implements Encryptor {
 
     private static final int INITIALISATION_VECTOR_SIZE = 128;
+    private static final VarHandle LONGS = MethodHandles.byteArrayViewVarHandle(long[].class, ByteOrder.nativeOrder());
+
+    private volatile PasswordStream passwordStream;
 
     /*
      * (non-Javadoc)
@@ -33,25 +45,93 @@ public class XorEncryptor implements Encryptor {
      * byte[], java.lang.String)
      */
     public void encrypt(byte[] passiveCheckBytes, byte[] initVector, String password) {
-        for (int y = 0, x = 0; y < passiveCheckBytes.length; y++, x++) {
-            if (x >= INITIALISATION_VECTOR_SIZE) {
-                x = 0;
+        xor(passiveCheckBytes, initVector, passwordStream(password, passiveCheckBytes.length));
+    }
+
+    @Override
+    public EncryptionContext initialise(byte[] initVector, String password) {
+        return new EncryptionContext() {
+
+            private byte[] keyStream;
+            private boolean encrypted;
+
+            @Override
+            public void encrypt(byte[] passiveCheckBytes) {
+                if (!encrypted) {
+                    // most connections send a single passive check, so don't pay for a key stream
+                    encrypted = true;
+                    XorEncryptor.this.encrypt(passiveCheckBytes, initVector, password);
+                    return;
+                }
+                // every further passive check on a connection is XORed with the same key stream
+                if (keyStream == null || keyStream.length != passiveCheckBytes.length) {
+                    keyStream = new byte[passiveCheckBytes.length];
+                    xor(keyStream, initVector, passwordStream(password, keyStream.length));
+                }
+                xor(passiveCheckBytes, keyStream);
+            }
+        };
+    }
+
+    private static void xor(byte[] passiveCheckBytes, byte[] initVector, byte[] passwordStream) {
+        final int words = passiveCheckBytes.length & ~7;
+        int y = 0;
+        if (passwordStream == null) {
+            for (; y < words; y += 8) {
+                LONGS.set(passiveCheckBytes, y, (long) LONGS.get(passiveCheckBytes, y) ^ (long) LONGS.get(initVector, y % INITIALISATION_VECTOR_SIZE));
+            }
+            for (; y < passiveCheckBytes.length; y++) {
+                passiveCheckBytes[y] ^= initVector[y % INITIALISATION_VECTOR_SIZE];
+            }
+        } else {
+            for (; y < words; y += 8) {
+                final long key = (long) LONGS.get(initVector, y % INITIALISATION_VECTOR_SIZE) ^ (long) LONGS.get(passwordStream, y);
+                LONGS.set(passiveCheckBytes, y, (long) LONGS.get(passiveCheckBytes, y) ^ key);
+            }
+            for (; y < passiveCheckBytes.length; y++) {
+                passiveCheckBytes[y] ^= initVector[y % INITIALISATION_VECTOR_SIZE] ^ passwordStream[y];
             }
-            passiveCheckBytes[y] ^= initVector[x];
         }
+    }
 
-        if (isNotBlank(password)) {
-            try {
-                final byte[] passwordBytes = password.getBytes(StandardCharsets.US_ASCII);
+    private static void xor(byte[] passiveCheckBytes, byte[] keyStream) {
+        final int words = passiveCheckBytes.length & ~7;
+        int y = 0;
+        for (; y < words; y += 8) {
+            LONGS.set(passiveCheckBytes, y, (long) LONGS.get(passiveCheckBytes, y) ^ (long) LONGS.get(keyStream, y));
+        }
+        for (; y < passiveCheckBytes.length; y++) {
+            passiveCheckBytes[y] ^= keyStream[y];
+        }
+    }
 
-                for (int y = 0, x = 0; y < passiveCheckBytes.length; y++, x++) {
-                    if (x >= passwordBytes.length) {
-                        x = 0;
-                    }
-                    passiveCheckBytes[y] ^= passwordBytes[x];
-                }
-            } catch (Exception e) {
-                throw new RuntimeException(e);
+    /**
+     * @return the password bytes repeated to at least the given length, or
+     *         null if there is no password
+     */
+    private byte[] passwordStream(String password, int length) {
+        if (isBlank(password)) {
+            return null;
+        }
+        PasswordStream stream = passwordStream;
+        if (stream == null || !stream.password.equals(password) || stream.bytes.length < length) {
+            stream = new PasswordStream(password, length);
+            passwordStream = stream;
+        }
+        return stream.bytes;
+    }
+
+    private static final class PasswordStream {
+
+        private final String password;
+        private final byte[] bytes;
+
+        private PasswordStream(String password, int length) {
+            this.password = password;
+            final byte[] passwordBytes = password.getBytes(StandardCharsets.US_ASCII);
+            this.bytes = new byte[length];
+            for (int y = 0; y < length; y++) {
+                bytes[y] = passwordBytes[y % passwordBytes.length];
             }
         }
     }
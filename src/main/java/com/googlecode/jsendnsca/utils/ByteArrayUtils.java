@@ -15,7 +15,7 @@ package com.googlecode.jsendnsca.utils;
 
 import org.apache.commons.lang3.StringUtils;
 
-import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
 
 /**
  * Utility methods for writing to a byte array
@@ -25,13 +25,17 @@ import java.nio.charset.StandardCharsets;
  */
 public class ByteArrayUtils {
 
+    private static final byte UNMAPPABLE = (byte) '?';
+
     private ByteArrayUtils() {
         // private constructor as only supports static methods
     }
 
     /**
-     * Creates a fixed size byte array, populates it with contents of a String
-     * and writes this to a destination byte array
+     * Writes the contents of a String as US-ASCII into a fixed size region of a
+     * destination byte array without allocating. If the {@link String} is
+     * longer than the region it is truncated, any remainder of the region is
+     * zeroed and a blank {@link String} is written as all zeroes
      * 
      * @param dest
      *            the destination byte array
@@ -40,10 +44,21 @@ public class ByteArrayUtils {
      * @param offset
      *            the offset to write to in the destination array
      * @param fixedSize
-     *            the size of the byte array to place the {@link String} into
+     *            the size of the region to place the {@link String} into
      */
     public static void writeFixedString(byte[] dest, String value, int offset, int fixedSize) {
-        System.arraycopy(getFixedSizeBytes(fixedSize, value), 0, dest, offset, fixedSize);
+        int written = 0;
+        if (!StringUtils.isBlank(value)) {
+            final int length = Math.min(value.length(), fixedSize);
+            for (int i = 0; i < length; i++) {
+                final char c = value.charAt(i);
+                if (Character.isHighSurrogate(c) && i + 1 < length && Character.isLowSurrogate(value.charAt(i + 1))) {
+                    i++;
+                }
+                dest[offset + written++] = c < 0x80 ? (byte) c : UNMAPPABLE;
+            }
+        }
+        Arrays.fill(dest, offset + written, offset + fixedSize, (byte) 0);
     }
 
     /**
@@ -57,7 +72,8 @@ public class ByteArrayUtils {
      *            the offset to write to in the destination array
      */
     public static void writeShort(byte[] dest, short value, int offset) {
-        System.arraycopy(ByteArrayUtils.shortToByteArray(value), 0, dest, offset, 2);
+        dest[offset] = (byte) (value >>> 8);
+        dest[offset + 1] = (byte) value;
     }
 
     /**
@@ -71,7 +87,10 @@ public class ByteArrayUtils {
      *            the offset to write to in the destination array
      */
     public static void writeInteger(byte[] dest, int value, int offset) {
-        System.arraycopy(ByteArrayUtils.intToByteArray(value), 0, dest, offset, 4);
+        dest[offset] = (byte) (value >>> 24);
+        dest[offset + 1] = (byte) (value >>> 16);
+        dest[offset + 2] = (byte) (value >>> 8);
+        dest[offset + 3] = (byte) value;
     }
 
     /**
@@ -88,56 +107,9 @@ public class ByteArrayUtils {
     public static byte[] getFixedSizeBytes(int fixedSize, String value) {
         if (value == null)
             return null;
-        if (StringUtils.isBlank(value))
-            return new byte[fixedSize];
 
         final byte[] myBytes = new byte[fixedSize];
-
-        if (value.length() > fixedSize) {
-            value = value.substring(0, fixedSize);
-        }
-
-        try {
-            System.arraycopy(value.getBytes(StandardCharsets.US_ASCII), 0, myBytes, 0, value.getBytes(StandardCharsets.US_ASCII).length);
-        } catch (Exception e) {
-            throw new RuntimeException(e);
-        }
+        writeFixedString(myBytes, value, 0, fixedSize);
         return myBytes;
     }
-
-    /**
-     * Creates a byte array of 4 elements populated with an integer
-     * 
-     * @param value
-     *            the integer value
-     * @return the byte array
-     */
-    private static byte[] intToByteArray(int value) {
-        final byte[] data = new byte[4];
-
-        for (int i = 0; i < data.length; i++) {
-            int offset = (data.length - 1 - i) * 8;
-            data[i] = (byte) ((value >>> offset) & 0xFF);
-        }
-
-        return data;
-    }
-
-    /**
-     * Creates a byte array of 2 elements populated with an short
-     * 
-     * @param value
-     *            the short value
-     * @return the byte array
-     */
-    private static byte[] shortToByteArray(short value) {
-        final byte[] data = new byte[2];
-
-        for (int i = 0; i < data.length; i++) {
-            int offset = (data.length - 1 - i) * 8;
-            data[i] = (byte) ((value >>> offset) & 0xFF);
-        }
-
-        return data;
-    }
 }
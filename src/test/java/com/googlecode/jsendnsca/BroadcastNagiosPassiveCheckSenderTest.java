@@ -0,0 +1,229 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.googlecode.jsendnsca;
+
+import com.googlecode.jsendnsca.BroadcastNagiosPassiveCheckSender.Completion;
+import com.googlecode.jsendnsca.builders.MessagePayloadBuilder;
+import com.googlecode.jsendnsca.builders.NagiosSettingsBuilder;
+import com.googlecode.jsendnsca.mocks.NagiosNscaStub;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.RegisterExtension;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static com.googlecode.jsendnsca.encryption.Encryption.XOR;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.arrayWithSize;
+import static org.hamcrest.Matchers.endsWith;
+import static org.hamcrest.Matchers.greaterThanOrEqualTo;
+import static org.hamcrest.Matchers.hasItem;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.lessThan;
+import static org.hamcrest.Matchers.notNullValue;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class BroadcastNagiosPassiveCheckSenderTest {
+
+    private static final String PASSWORD = "password";
+    @RegisterExtension
+    private static final NagiosNscaStub firstStub = NagiosNscaStub.listeningOnAnyFreePort(PASSWORD);
+    @RegisterExtension
+    private static final NagiosNscaStub secondStub = NagiosNscaStub.listeningOnAnyFreePort(PASSWORD);
+
+    private BroadcastNagiosPassiveCheckSender sender;
+
+    @AfterEach
+    public void shutdownSender() {
+        if (sender != null) {
+            sender.shutdown();
+        }
+    }
+
+    @Test
+    public void shouldSendPassiveCheckToEveryServer() throws Exception {
+        sender = new BroadcastNagiosPassiveCheckSender(Arrays.asList(settings(firstStub), settings(secondStub)), Completion.ALL);
+
+        MessagePayload payload = payload();
+        sender.send(payload);
+        Thread.sleep(100L);
+
+        assertThat(firstStub.getMessagePayloadList(), hasItem(payload));
+        assertThat(secondStub.getMessagePayloadList(), hasItem(payload));
+        for (DestinationStatistics statistics : sender.getDestinationStatistics()) {
+            assertThat(statistics.getSentCount(), is(1L));
+            assertThat(statistics.getLastLatency(), greaterThanOrEqualTo(0L));
+        }
+    }
+
+    @Test
+    public void shouldSendToServersConcurrently() {
+        List<NagiosSettings> settings = Arrays.asList(settings(firstStub), settings(secondStub));
+        PassiveCheckSender slow = payload -> sleep(300L);
+        sender = new BroadcastNagiosPassiveCheckSender(Arrays.asList(slow, slow), settings, Completion.ALL);
+
+        long start = System.nanoTime();
+        sender.send(payload());
+
+        assertThat(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start), lessThan(500L));
+    }
+
+    @Test
+    public void shouldSendConcurrentCallersPassiveChecksToServerConcurrently() throws Exception {
+        List<NagiosSettings> settings = Collections.singletonList(settings(firstStub));
+        PassiveCheckSender slow = payload -> sleep(300L);
+        sender = new BroadcastNagiosPassiveCheckSender(Collections.singletonList(slow), settings, Completion.ALL);
+        ExecutorService callers = Executors.newFixedThreadPool(4);
+
+        try {
+            long start = System.nanoTime();
+            List<Future<?>> sends = new ArrayList<>();
+            for (int i = 0; i < 4; i++) {
+                sends.add(callers.submit(() -> sender.send(payload())));
+            }
+            for (Future<?> send : sends) {
+                send.get();
+            }
+
+            assertThat(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start), lessThan(900L));
+        } finally {
+            callers.shutdown();
+        }
+    }
+
+    @Test
+    public void shouldReturnOnceSentToAnyServer() throws Exception {
+        List<NagiosSettings> settings = Arrays.asList(settings(firstStub), settings(secondStub));
+        CountDownLatch release = new CountDownLatch(1);
+        PassiveCheckSender blocked = payload -> {
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        };
+        sender = new BroadcastNagiosPassiveCheckSender(Arrays.asList(payload -> { }, blocked), settings, Completion.ANY);
+
+        sender.send(payload());
+        release.countDown();
+    }
+
+    @Test
+    public void shouldCountPassiveCheckAsFailedWhenServerQueueIsFull() {
+        NagiosSettings bounded = new NagiosSettingsBuilder()
+                .withNagiosHost("localhost")
+                .withPort(secondStub.getPort())
+                .withBroadcastConcurrency(1)
+                .withQueueCapacity(1, 1024L)
+                .create();
+        List<NagiosSettings> settings = Arrays.asList(settings(firstStub), bounded);
+        CountDownLatch release = new CountDownLatch(1);
+        PassiveCheckSender blocked = payload -> {
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        };
+        sender = new BroadcastNagiosPassiveCheckSender(Arrays.asList(payload -> { }, blocked), settings, Completion.ANY);
+
+        try {
+            sender.send(payload());
+            sender.send(payload());
+            sender.send(payload());
+        } finally {
+            release.countDown();
+        }
+
+        DestinationStatistics full = sender.getDestinationStatistics().get(1);
+        assertThat(full.getFailureCount(), is(1L));
+        assertThat(full.getLastFailure().getMessage(), is("Passive alert dropped as queue is full"));
+    }
+
+    @Test
+    public void shouldSucceedWithQuorumWhenOneServerDown() throws Exception {
+        sender = new BroadcastNagiosPassiveCheckSender(Arrays.asList(settings(firstStub), settings(secondStub), unavailable()), Completion.QUORUM);
+
+        MessagePayload payload = payload();
+        sender.send(payload);
+        Thread.sleep(100L);
+
+        assertThat(firstStub.getMessagePayloadList(), hasItem(payload));
+        assertThat(secondStub.getMessagePayloadList(), hasItem(payload));
+    }
+
+    @Test
+    public void shouldFailWhenAnyServerDownWithAll() {
+        sender = new BroadcastNagiosPassiveCheckSender(Arrays.asList(settings(firstStub), unavailable()), Completion.ALL);
+
+        NagiosException e = assertThrows(NagiosException.class, () -> sender.send(payload()));
+
+        assertThat(e.getMessage(), endsWith(" of 2 NSCA servers but 2 required"));
+        assertThat(e.getCause(), notNullValue());
+        DestinationStatistics down = sender.getDestinationStatistics().get(1);
+        assertThat(down.getFailureCount(), is(1L));
+        assertThat(down.getLastFailure(), is(e.getCause()));
+    }
+
+    @Test
+    public void shouldSuppressFailureOfEachServerAfterFirst() {
+        sender = new BroadcastNagiosPassiveCheckSender(Arrays.asList(unavailable(), unavailable()), Completion.ANY);
+
+        NagiosException e = assertThrows(NagiosException.class, () -> sender.send(payload()));
+
+        assertThat(e.getSuppressed(), arrayWithSize(1));
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static NagiosSettings settings(NagiosNscaStub stub) {
+        return new NagiosSettingsBuilder()
+                .withNagiosHost("localhost")
+                .withPort(stub.getPort())
+                .withPassword(PASSWORD)
+                .withEncryption(XOR)
+                .create();
+    }
+
+    private static NagiosSettings unavailable() {
+        return new NagiosSettingsBuilder()
+                .withNagiosHost("127.0.0.1")
+                .withPort(1)
+                .withConnectionTimeout(1000)
+                .create();
+    }
+
+    private static MessagePayload payload() {
+        return new MessagePayloadBuilder()
+                .withHostname("localhost")
+                .withLevel(Level.OK)
+                .withServiceName("Test Service Name")
+                .withMessage("broadcast")
+                .create();
+    }
+}
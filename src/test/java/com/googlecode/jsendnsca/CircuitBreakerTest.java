@@ -0,0 +1,104 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.googlecode.jsendnsca;
+
+import com.googlecode.jsendnsca.CircuitBreaker.State;
+import com.googlecode.jsendnsca.builders.NagiosSettingsBuilder;
+import org.junit.jupiter.api.Test;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+
+public class CircuitBreakerTest {
+
+    @Test
+    public void shouldStayClosedWhileDisabled() {
+        CircuitBreaker breaker = new CircuitBreaker(new NagiosSettingsBuilder().create());
+
+        for (int i = 0; i < 20; i++) {
+            assertThat(breaker.tryAcquire(), is(true));
+            breaker.recordFailure();
+        }
+
+        assertThat(breaker.getState(), is(State.CLOSED));
+        assertThat(breaker.getFailureRate(), is(100));
+    }
+
+    @Test
+    public void shouldOpenOnceFailureRateOfFullWindowReachesThreshold() {
+        CircuitBreaker breaker = new CircuitBreaker(new NagiosSettingsBuilder().withCircuitBreaker(50, 4, 60000).create());
+
+        breaker.recordSuccess();
+        breaker.recordFailure();
+        breaker.recordSuccess();
+        assertThat(breaker.getState(), is(State.CLOSED));
+
+        breaker.recordFailure();
+
+        assertThat(breaker.getState(), is(State.OPEN));
+        assertThat(breaker.tryAcquire(), is(false));
+        assertThat(breaker.getRejectedCount(), is(1L));
+    }
+
+    @Test
+    public void shouldOnlyCountLastWindowOfConnections() {
+        CircuitBreaker breaker = new CircuitBreaker(new NagiosSettingsBuilder().withCircuitBreaker(75, 4, 60000).create());
+
+        breaker.recordFailure();
+        breaker.recordFailure();
+        breaker.recordSuccess();
+        breaker.recordSuccess();
+        breaker.recordSuccess();
+        breaker.recordFailure();
+
+        assertThat(breaker.getFailureRate(), is(25));
+        assertThat(breaker.getState(), is(State.CLOSED));
+    }
+
+    @Test
+    public void shouldLetSingleConnectionThroughOnceOpenDurationElapsed() {
+        CircuitBreaker breaker = new CircuitBreaker(new NagiosSettingsBuilder().withCircuitBreaker(100, 1, 0).create());
+        breaker.recordFailure();
+
+        assertThat(breaker.tryAcquire(), is(true));
+        assertThat(breaker.getState(), is(State.HALF_OPEN));
+        assertThat(breaker.tryAcquire(), is(false));
+    }
+
+    @Test
+    public void shouldCloseWhenHalfOpenConnectionSucceeds() {
+        CircuitBreaker breaker = new CircuitBreaker(new NagiosSettingsBuilder().withCircuitBreaker(100, 1, 0).create());
+        breaker.recordFailure();
+        breaker.tryAcquire();
+
+        breaker.recordSuccess();
+
+        assertThat(breaker.getState(), is(State.CLOSED));
+        assertThat(breaker.getFailureRate(), is(0));
+    }
+
+    @Test
+    public void shouldOpenAgainWhenHalfOpenConnectionFails() {
+        NagiosSettings settings = new NagiosSettingsBuilder().withCircuitBreaker(100, 1, 0).create();
+        CircuitBreaker breaker = new CircuitBreaker(settings);
+        breaker.recordFailure();
+        breaker.tryAcquire();
+        settings.setCircuitBreakerOpenDuration(60000);
+
+        breaker.recordFailure();
+
+        assertThat(breaker.getState(), is(State.OPEN));
+        assertThat(breaker.tryAcquire(), is(false));
+    }
+}
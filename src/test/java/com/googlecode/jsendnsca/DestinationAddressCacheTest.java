@@ -0,0 +1,144 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.googlecode.jsendnsca;
+
+import com.googlecode.jsendnsca.builders.NagiosSettingsBuilder;
+import org.junit.jupiter.api.Test;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.nullValue;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class DestinationAddressCacheTest {
+
+    private final AtomicInteger lookups = new AtomicInteger();
+    private final List<Runnable> refreshes = new ArrayList<>();
+
+    @Test
+    public void shouldResolveOnceWithinTimeToLive() throws Exception {
+        NagiosSettings settings = new NagiosSettingsBuilder().withNagiosHost("nagios").create();
+        DestinationAddressCache cache = new DestinationAddressCache(settings, this::lookUp, refreshes::add);
+
+        assertThat(cache.getAddresses(settings.getNagiosHost())[0], is(address(1)));
+        assertThat(cache.getAddresses(settings.getNagiosHost())[0], is(address(1)));
+        assertThat(lookups.get(), is(1));
+    }
+
+    @Test
+    public void shouldUseCachedAddressesWhileRefreshingInBackgroundOnceExpired() throws Exception {
+        NagiosSettings settings = new NagiosSettingsBuilder().withNagiosHost("nagios").withAddressCacheTimeToLive(1).create();
+        DestinationAddressCache cache = new DestinationAddressCache(settings, this::lookUp, refreshes::add);
+
+        cache.getAddresses(settings.getNagiosHost());
+        Thread.sleep(5);
+
+        assertThat(cache.getAddresses(settings.getNagiosHost())[0], is(address(1)));
+        assertThat(cache.getAddresses(settings.getNagiosHost())[0], is(address(1)));
+        assertThat(refreshes.size(), is(1));
+
+        refreshes.get(0).run();
+
+        assertThat(cache.getAddresses(settings.getNagiosHost())[0], is(address(2)));
+    }
+
+    @Test
+    public void shouldOnlyReturnCachedAddressesOnceResolved() throws Exception {
+        NagiosSettings settings = new NagiosSettingsBuilder().withNagiosHost("nagios").create();
+        DestinationAddressCache cache = new DestinationAddressCache(settings, this::lookUp, refreshes::add);
+        List<InetAddress[]> resolved = new ArrayList<>();
+
+        assertThat(cache.getCachedAddresses(settings.getNagiosHost()), is(nullValue()));
+
+        cache.resolveInBackground(settings.getNagiosHost(), (addresses, unresolved) -> resolved.add(addresses));
+        assertThat(lookups.get(), is(0));
+        refreshes.get(0).run();
+
+        assertThat(resolved.get(0)[0], is(address(1)));
+        assertThat(cache.getCachedAddresses(settings.getNagiosHost())[0], is(address(1)));
+        assertThat(lookups.get(), is(1));
+    }
+
+    @Test
+    public void shouldShareLookupPendingForHostWithZeroTimeToLive() throws Exception {
+        NagiosSettings settings = new NagiosSettingsBuilder().withNagiosHost("nagios").withAddressCacheTimeToLive(0).create();
+        DestinationAddressCache cache = new DestinationAddressCache(settings, this::lookUp, refreshes::add);
+        List<InetAddress[]> resolved = new ArrayList<>();
+
+        for (int i = 0; i < 3; i++) {
+            cache.resolveInBackground(settings.getNagiosHost(), (addresses, unresolved) -> resolved.add(addresses));
+        }
+        assertThat(refreshes.size(), is(1));
+        refreshes.get(0).run();
+
+        assertThat(lookups.get(), is(1));
+        assertThat(resolved.size(), is(3));
+        for (InetAddress[] addresses : resolved) {
+            assertThat(addresses[0], is(address(1)));
+        }
+
+        cache.resolveInBackground(settings.getNagiosHost(), (addresses, unresolved) -> resolved.add(addresses));
+        refreshes.get(1).run();
+
+        assertThat(resolved.get(3)[0], is(address(2)));
+    }
+
+    @Test
+    public void shouldResolveForEveryConnectionWithZeroTimeToLive() throws Exception {
+        NagiosSettings settings = new NagiosSettingsBuilder().withNagiosHost("nagios").withAddressCacheTimeToLive(0).create();
+        DestinationAddressCache cache = new DestinationAddressCache(settings, this::lookUp, refreshes::add);
+
+        cache.getAddresses(settings.getNagiosHost());
+        cache.getAddresses(settings.getNagiosHost());
+
+        assertThat(lookups.get(), is(2));
+    }
+
+    @Test
+    public void shouldResolveAgainWhenHostChanges() throws Exception {
+        NagiosSettings settings = new NagiosSettingsBuilder().withNagiosHost("nagios").create();
+        DestinationAddressCache cache = new DestinationAddressCache(settings, this::lookUp, refreshes::add);
+
+        cache.getAddresses(settings.getNagiosHost());
+        settings.setNagiosHost("other");
+
+        assertThat(cache.getAddresses(settings.getNagiosHost())[0], is(address(2)));
+    }
+
+    @Test
+    public void shouldThrowUnknownHostExceptionNamingHostWhenNeverResolved() {
+        NagiosSettings settings = new NagiosSettingsBuilder().withNagiosHost("foobar").create();
+        DestinationAddressCache cache = new DestinationAddressCache(settings, host -> {
+            throw new UnknownHostException(host + ": Name or service not known");
+        }, refreshes::add);
+
+        UnknownHostException e = assertThrows(UnknownHostException.class, () -> cache.getAddresses("foobar"));
+
+        assertThat(e.getMessage(), is("foobar"));
+    }
+
+    private InetAddress[] lookUp(String host) throws UnknownHostException {
+        return new InetAddress[] { address(lookups.incrementAndGet()) };
+    }
+
+    private static InetAddress address(int lastOctet) throws UnknownHostException {
+        return InetAddress.getByAddress(new byte[] { 10, 0, 0, (byte) lastOctet });
+    }
+}
@@ -0,0 +1,129 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.googlecode.jsendnsca;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.net.ConnectException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.time.Duration;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.lessThan;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTimeoutPreemptively;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+public class HappyEyeballsConnectorTest {
+
+    private static final int CONNECT_TIMEOUT = 5000;
+
+    private ServerSocket server;
+
+    @BeforeEach
+    public void setUp() throws IOException {
+        server = new ServerSocket();
+        server.bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+    }
+
+    @AfterEach
+    public void tearDown() throws IOException {
+        server.close();
+    }
+
+    @Test
+    public void shouldConnectToNextAddressWhenFirstRefusesConnection() throws Exception {
+        InetAddress refusing = InetAddress.getByName("127.0.0.2");
+
+        try (Socket socket = HappyEyeballsConnector.connect(new InetAddress[] { refusing, InetAddress.getLoopbackAddress() },
+                server.getLocalPort(), CONNECT_TIMEOUT)) {
+            assertThat(socket.getInetAddress(), is(InetAddress.getLoopbackAddress()));
+        }
+    }
+
+    @Test
+    public void shouldNotWaitForConnectTimeoutOfUnreachableAddress() throws Exception {
+        InetAddress unreachable = InetAddress.getByName("10.255.255.1");
+        assumeTrue(isBlackHole(unreachable), "10.255.255.1 is routable from this network");
+        long start = System.currentTimeMillis();
+
+        try (Socket socket = HappyEyeballsConnector.connect(new InetAddress[] { unreachable, InetAddress.getLoopbackAddress() },
+                server.getLocalPort(), CONNECT_TIMEOUT)) {
+            assertThat(socket.getInetAddress(), is(InetAddress.getLoopbackAddress()));
+        }
+        assertThat(System.currentTimeMillis() - start, lessThan((long) CONNECT_TIMEOUT));
+    }
+
+    private boolean isBlackHole(InetAddress address) {
+        try (Socket socket = new Socket()) {
+            socket.connect(new InetSocketAddress(address, server.getLocalPort()), HappyEyeballsConnector.ATTEMPT_DELAY_IN_MS * 2);
+            return false;
+        } catch (SocketTimeoutException e) {
+            return true;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    @Test
+    public void shouldNotTimeOutWithoutConnectTimeout() throws Exception {
+        try (Socket socket = HappyEyeballsConnector.connect(new InetAddress[] { InetAddress.getByName("127.0.0.2"), InetAddress.getLoopbackAddress() },
+                server.getLocalPort(), 0)) {
+            assertThat(socket.getInetAddress(), is(InetAddress.getLoopbackAddress()));
+        }
+    }
+
+    @Test
+    public void shouldReturnBlockingSocketUsableWithTimeouts() throws Exception {
+        try (Socket socket = HappyEyeballsConnector.connect(new InetAddress[] { InetAddress.getByName("127.0.0.2"), InetAddress.getLoopbackAddress() },
+                server.getLocalPort(), CONNECT_TIMEOUT);
+             Socket accepted = server.accept()) {
+            socket.setSoTimeout(1000);
+            accepted.getOutputStream().write(42);
+
+            assertThat(socket.getInputStream().read(), is(42));
+        }
+    }
+
+    @Test
+    public void shouldThrowLastFailureWhenNoAddressAcceptsConnection() throws Exception {
+        int port = server.getLocalPort();
+        server.close();
+
+        assertThrows(ConnectException.class, () -> HappyEyeballsConnector.connect(
+                new InetAddress[] { InetAddress.getByName("127.0.0.2"), InetAddress.getLoopbackAddress() }, port, CONNECT_TIMEOUT));
+    }
+
+    @Test
+    public void shouldFailAsSoonAsEveryAddressRefusesConnection() throws Exception {
+        int port = server.getLocalPort();
+        server.close();
+        InetAddress[] refusing = { InetAddress.getByName("127.0.0.1"), InetAddress.getByName("127.0.0.2") };
+        long start = System.currentTimeMillis();
+
+        assertThrows(ConnectException.class, () -> HappyEyeballsConnector.connect(refusing, port, CONNECT_TIMEOUT));
+        assertThat(System.currentTimeMillis() - start, lessThan(2000L));
+
+        assertTimeoutPreemptively(Duration.ofSeconds(2), () ->
+                assertThrows(ConnectException.class, () -> HappyEyeballsConnector.connect(refusing, port, 0)));
+    }
+}
@@ -0,0 +1,99 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.googlecode.jsendnsca;
+
+import com.googlecode.jsendnsca.MessagePayload.UnknownHostRuntimeException;
+import org.junit.jupiter.api.Test;
+
+import java.net.UnknownHostException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class LocalHostnameResolverTest {
+
+    private final AtomicInteger lookups = new AtomicInteger();
+    private final List<Runnable> refreshes = new ArrayList<>();
+
+    @Test
+    public void shouldResolveOnceWithinTimeToLive() {
+        LocalHostnameResolver resolver = new LocalHostnameResolver(canonical -> "host" + lookups.incrementAndGet(), refreshes::add);
+
+        assertThat(resolver.getHostname(), is("host1"));
+        assertThat(resolver.getHostname(), is("host1"));
+        assertThat(lookups.get(), is(1));
+        assertThat(refreshes.isEmpty(), is(true));
+    }
+
+    @Test
+    public void shouldCacheShortAndCanonicalHostnamesSeparately() {
+        LocalHostnameResolver resolver = new LocalHostnameResolver(canonical -> canonical ? "host.example.com" : "host", refreshes::add);
+
+        assertThat(resolver.getHostname(), is("host"));
+        assertThat(resolver.getCanonicalHostname(), is("host.example.com"));
+    }
+
+    @Test
+    public void shouldReturnCachedHostnameWhileRefreshingInBackgroundOnceExpired() {
+        LocalHostnameResolver resolver = new LocalHostnameResolver(canonical -> "host" + lookups.incrementAndGet(), refreshes::add);
+        resolver.setTimeToLive(0);
+
+        assertThat(resolver.getHostname(), is("host1"));
+        assertThat(resolver.getHostname(), is("host1"));
+        assertThat(resolver.getHostname(), is("host1"));
+        assertThat(refreshes.size(), is(1));
+
+        refreshes.get(0).run();
+
+        assertThat(resolver.getHostname(), is("host2"));
+    }
+
+    @Test
+    public void shouldKeepCachedHostnameIfRefreshFails() {
+        LocalHostnameResolver resolver = new LocalHostnameResolver(canonical -> {
+            if (lookups.incrementAndGet() > 1) {
+                throw new UnknownHostException("broken dns");
+            }
+            return "host";
+        }, refreshes::add);
+        resolver.setTimeToLive(0);
+
+        resolver.getHostname();
+        resolver.getHostname();
+        refreshes.get(0).run();
+
+        assertThat(resolver.getHostname(), is("host"));
+    }
+
+    @Test
+    public void shouldThrowIfHostnameCannotBeResolvedTheFirstTime() {
+        LocalHostnameResolver resolver = new LocalHostnameResolver(canonical -> {
+            throw new UnknownHostException("broken dns");
+        }, refreshes::add);
+
+        assertThrows(UnknownHostRuntimeException.class, resolver::getHostname);
+    }
+
+    @Test
+    public void shouldNotAllowNegativeTimeToLive() {
+        IllegalArgumentException ex = assertThrows(IllegalArgumentException.class,
+                () -> LocalHostnameResolver.getInstance().setTimeToLive(-1));
+
+        assertThat(ex.getMessage(), is("timeToLive cannot be negative"));
+    }
+}
@@ -0,0 +1,52 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.googlecode.jsendnsca;
+
+import org.junit.jupiter.api.Test;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class NagiosDestinationTest {
+
+    @Test
+    public void shouldParseHostWithPort() {
+        assertThat(NagiosDestination.parse("nagios:5668", 5667), is(new NagiosDestination("nagios", 5668)));
+    }
+
+    @Test
+    public void shouldUseDefaultPortWhenNoneGiven() {
+        assertThat(NagiosDestination.parse(" nagios ", 5667), is(new NagiosDestination("nagios", 5667)));
+    }
+
+    @Test
+    public void shouldParseIpv6Addresses() {
+        assertThat(NagiosDestination.parse("[::1]:5668", 5667), is(new NagiosDestination("::1", 5668)));
+        assertThat(NagiosDestination.parse("[::1]", 5667), is(new NagiosDestination("::1", 5667)));
+        assertThat(NagiosDestination.parse("fe80::1", 5667), is(new NagiosDestination("fe80::1", 5667)));
+    }
+
+    @Test
+    public void shouldThrowIllegalArgumentExceptionForInvalidPort() {
+        IllegalArgumentException ex = assertThrows(IllegalArgumentException.class, () -> NagiosDestination.parse("nagios:65536", 5667));
+
+        assertThat(ex.getMessage(), is("port must be between 1 and 65535 inclusive"));
+    }
+
+    @Test
+    public void shouldFormatIpv6AddressInBrackets() {
+        assertThat(new NagiosDestination("::1", 5667).toString(), is("[::1]:5667"));
+    }
+}
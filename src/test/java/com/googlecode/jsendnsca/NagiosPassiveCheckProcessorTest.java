@@ -0,0 +1,186 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.googlecode.jsendnsca;
+
+import com.googlecode.jsendnsca.builders.MessagePayloadBuilder;
+import com.googlecode.jsendnsca.builders.NagiosSettingsBuilder;
+import com.googlecode.jsendnsca.mocks.NagiosNscaStub;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.RegisterExtension;
+
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Flow;
+import java.util.concurrent.SubmissionPublisher;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static com.googlecode.jsendnsca.encryption.Encryption.XOR;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.hasItems;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.notNullValue;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class NagiosPassiveCheckProcessorTest {
+
+    private static final String HOSTNAME = "localhost";
+    private static final String PASSWORD = "password";
+    @RegisterExtension
+    private static final NagiosNscaStub stub = NagiosNscaStub.listeningOnAnyFreePort(PASSWORD);
+
+    private NioNagiosPassiveCheckSender sender;
+
+    @AfterEach
+    public void shutdownSender() {
+        sender.shutdown();
+    }
+
+    @Test
+    public void shouldSendEveryPassiveCheckAndPublishOutcomes() throws Exception {
+        sender = new NioNagiosPassiveCheckSender(nagiosSettings().withPort(stub.getPort()).create(), Exception::printStackTrace);
+        NagiosPassiveCheckProcessor processor = new NagiosPassiveCheckProcessor(sender, 4);
+        CollectingSubscriber outcomes = new CollectingSubscriber(Long.MAX_VALUE);
+        processor.subscribe(outcomes);
+
+        List<MessagePayload> payloads = new ArrayList<>();
+        try (SubmissionPublisher<MessagePayload> publisher = new SubmissionPublisher<>()) {
+            publisher.subscribe(processor);
+            for (int i = 0; i < 20; i++) {
+                MessagePayload payload = payload("message " + i);
+                payloads.add(payload);
+                publisher.submit(payload);
+            }
+        }
+
+        assertTrue(outcomes.completed.await(10, TimeUnit.SECONDS), "timed out waiting for outcomes");
+        Thread.sleep(100L);
+        assertThat(outcomes.results.size(), is(20));
+        for (SendResult result : outcomes.results) {
+            assertThat(result.isSuccessful(), is(true));
+        }
+        assertThat(stub.getMessagePayloadList(), hasItems(payloads.toArray(new MessagePayload[0])));
+    }
+
+    @Test
+    public void shouldOnlyRequestUpstreamAsOutcomesAreDelivered() throws Exception {
+        sender = new NioNagiosPassiveCheckSender(nagiosSettings().withPort(stub.getPort()).create(), Exception::printStackTrace);
+        NagiosPassiveCheckProcessor processor = new NagiosPassiveCheckProcessor(sender, 2);
+        CollectingSubscriber outcomes = new CollectingSubscriber(0L);
+        processor.subscribe(outcomes);
+        AtomicLong requested = new AtomicLong();
+        processor.onSubscribe(new Flow.Subscription() {
+            @Override
+            public void request(long n) {
+                requested.addAndGet(n);
+            }
+
+            @Override
+            public void cancel() {
+            }
+        });
+        assertThat(requested.get(), is(2L));
+
+        processor.onNext(payload("first"));
+        processor.onNext(payload("second"));
+        Thread.sleep(500L);
+        assertThat(requested.get(), is(2L));
+
+        outcomes.subscription.request(1);
+
+        assertThat(outcomes.results.size(), is(1));
+        assertThat(requested.get(), is(3L));
+    }
+
+    @Test
+    public void shouldPublishFailedOutcomeAndCarryOn() throws Exception {
+        sender = new NioNagiosPassiveCheckSender(nagiosSettings().withPort(closedPort()).create(), Exception::printStackTrace);
+        NagiosPassiveCheckProcessor processor = new NagiosPassiveCheckProcessor(sender, 1);
+        CollectingSubscriber outcomes = new CollectingSubscriber(Long.MAX_VALUE);
+        processor.subscribe(outcomes);
+
+        try (SubmissionPublisher<MessagePayload> publisher = new SubmissionPublisher<>()) {
+            publisher.subscribe(processor);
+            publisher.submit(payload("first"));
+            publisher.submit(payload("second"));
+        }
+
+        assertTrue(outcomes.completed.await(10, TimeUnit.SECONDS), "timed out waiting for outcomes");
+        assertThat(outcomes.results.size(), is(2));
+        assertThat(outcomes.results.get(0).isSuccessful(), is(false));
+        assertThat(outcomes.results.get(0).getException(), notNullValue());
+    }
+
+    private static int closedPort() throws IOException {
+        try (ServerSocket serverSocket = new ServerSocket(0)) {
+            return serverSocket.getLocalPort();
+        }
+    }
+
+    private static NagiosSettingsBuilder nagiosSettings() {
+        return new NagiosSettingsBuilder()
+                .withNagiosHost(HOSTNAME)
+                .withPassword(PASSWORD)
+                .withEncryption(XOR);
+    }
+
+    private static MessagePayload payload(String message) {
+        return new MessagePayloadBuilder()
+                .withHostname(HOSTNAME)
+                .withLevel(Level.OK)
+                .withServiceName("Test Service Name")
+                .withMessage(message)
+                .create();
+    }
+
+    private static class CollectingSubscriber implements Flow.Subscriber<SendResult> {
+
+        private final long initialRequest;
+        private final List<SendResult> results = new CopyOnWriteArrayList<>();
+        private final CountDownLatch completed = new CountDownLatch(1);
+        private Flow.Subscription subscription;
+
+        private CollectingSubscriber(long initialRequest) {
+            this.initialRequest = initialRequest;
+        }
+
+        @Override
+        public void onSubscribe(Flow.Subscription subscription) {
+            this.subscription = subscription;
+            if (initialRequest > 0) {
+                subscription.request(initialRequest);
+            }
+        }
+
+        @Override
+        public void onNext(SendResult item) {
+            results.add(item);
+        }
+
+        @Override
+        public void onError(Throwable throwable) {
+            throwable.printStackTrace();
+        }
+
+        @Override
+        public void onComplete() {
+            completed.countDown();
+        }
+    }
+}
@@ -23,8 +23,10 @@ import org.junit.jupiter.api.extension.RegisterExtension;
 
 import java.io.IOException;
 import java.io.UncheckedIOException;
+import java.net.ServerSocket;
 import java.net.SocketTimeoutException;
 import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
 import java.util.Objects;
@@ -33,6 +35,7 @@ import static com.googlecode.jsendnsca.Level.CRITICAL;
 import static com.googlecode.jsendnsca.encryption.Encryption.XOR;
 import static org.hamcrest.MatcherAssert.assertThat;
 import static org.hamcrest.Matchers.hasItem;
+import static org.hamcrest.Matchers.hasItems;
 import static org.hamcrest.Matchers.is;
 import static org.hamcrest.Matchers.isA;
 import static org.junit.jupiter.api.Assertions.assertAll;
@@ -129,6 +132,146 @@ public class NagiosPassiveCheckSenderTest {
         assertThat(passiveChecksList, hasItem(payload));
     }
 
+    @Test
+    public void shouldSendEachPassiveCheckInSmallestPacketWithAdaptivePacketSize() throws Exception {
+        stub.turnOnLargeMessageSupportAsInNsca291();
+
+        final NagiosSettings nagiosSettings = new NagiosSettingsBuilder()
+                .withPort(stub.getPort())
+                .withAdaptivePacketSize()
+                .withNagiosHost(HOSTNAME)
+                .withPassword(PASSWORD)
+                .withEncryption(XOR)
+                .create();
+
+        final NagiosPassiveCheckSender passiveAlerter = new NagiosPassiveCheckSender(nagiosSettings);
+
+        final MessagePayload small = new MessagePayloadBuilder()
+                .withHostname(HOSTNAME)
+                .withLevel(CRITICAL)
+                .withServiceName(SERVICE_NAME)
+                .withMessage("disk full")
+                .create();
+        final MessagePayload large = new MessagePayloadBuilder()
+                .withHostname(HOSTNAME)
+                .withLevel(CRITICAL)
+                .withServiceName(SERVICE_NAME)
+                .withMessage(large())
+                .create();
+
+        final BatchResult result = passiveAlerter.sendAll(Arrays.asList(small, large, small));
+
+        waitForStub();
+
+        assertThat(result.isSuccessful(), is(true));
+        assertThat(stub.getMessagePayloadList(), hasItems(small, large));
+        assertThat(passiveAlerter.getPacketSizeStatistics().getLegacyPacketCount(), is(2L));
+        assertThat(passiveAlerter.getPacketSizeStatistics().getLargePacketCount(), is(1L));
+    }
+
+    @Test
+    public void shouldFailOverToNextDestinationAndSkipFailedDestinationDuringCoolDown() throws Exception {
+        final int closedPort = closedPort();
+        final NagiosSettings nagiosSettings = new NagiosSettingsBuilder()
+                .withDestinations(new NagiosDestination(HOSTNAME, closedPort), new NagiosDestination(HOSTNAME, stub.getPort()))
+                .withFailoverCoolDown(60000)
+                .withPassword(PASSWORD)
+                .withEncryption(XOR)
+                .create();
+
+        final NagiosPassiveCheckSender passiveAlerter = new NagiosPassiveCheckSender(nagiosSettings);
+
+        final MessagePayload payload = new MessagePayloadBuilder()
+                .withHostname(HOSTNAME)
+                .withLevel(CRITICAL)
+                .withServiceName(SERVICE_NAME)
+                .withMessage(MESSAGE)
+                .create();
+
+        passiveAlerter.send(payload);
+        passiveAlerter.send(payload);
+
+        waitForStub();
+
+        List<DestinationHealth> health = passiveAlerter.getDestinationHealth();
+        assertThat(stub.getMessagePayloadList().size(), is(2));
+        assertThat(health.get(0).getConsecutiveFailures(), is(1));
+        assertThat(health.get(1).getConsecutiveFailures(), is(0));
+        assertThat(health.get(1).getLastConnectLatency() >= 0, is(true));
+    }
+
+    @Test
+    public void shouldFailFastOnceCircuitBreakerOpensThenDivertToFallback() throws Exception {
+        final NagiosSettings nagiosSettings = new NagiosSettingsBuilder()
+                .withNagiosHost(HOSTNAME)
+                .withPort(closedPort())
+                .withCircuitBreaker(50, 2, 60000)
+                .create();
+        final NagiosPassiveCheckSender passiveAlerter = new NagiosPassiveCheckSender(nagiosSettings);
+        final MessagePayload payload = new MessagePayloadBuilder()
+                .withHostname(HOSTNAME)
+                .withLevel(CRITICAL)
+                .withServiceName(SERVICE_NAME)
+                .withMessage(MESSAGE)
+                .create();
+
+        assertThrows(UncheckedIOException.class, () -> passiveAlerter.send(payload));
+        assertThrows(UncheckedIOException.class, () -> passiveAlerter.send(payload));
+        assertThat(passiveAlerter.getCircuitBreaker().getState(), is(CircuitBreaker.State.OPEN));
+        assertThrows(CircuitBreakerOpenException.class, () -> passiveAlerter.send(payload));
+
+        final List<MessagePayload> diverted = new ArrayList<>();
+        passiveAlerter.setCircuitBreakerFallback(diverted::add);
+        passiveAlerter.send(payload);
+
+        assertThat(diverted, hasItem(payload));
+        assertThat(passiveAlerter.getCircuitBreaker().getRejectedCount(), is(2L));
+    }
+
+    private static int closedPort() throws IOException {
+        try (ServerSocket serverSocket = new ServerSocket(0)) {
+            return serverSocket.getLocalPort();
+        }
+    }
+
+    @Test
+    public void shouldSendAllPassiveChecksOverOneConnection() throws Exception {
+        final NagiosSettings nagiosSettings = new NagiosSettingsBuilder()
+                .withPort(stub.getPort())
+                .withNagiosHost(HOSTNAME)
+                .withPassword(PASSWORD)
+                .withEncryption(XOR)
+                .create();
+        final NagiosPassiveCheckSender passiveAlerter = new NagiosPassiveCheckSender(nagiosSettings);
+        final List<MessagePayload> payloads = Arrays.asList(
+                new MessagePayload(HOSTNAME, Level.OK, SERVICE_NAME, "first"),
+                new MessagePayload(HOSTNAME, Level.WARNING, SERVICE_NAME, "second"),
+                new MessagePayload(HOSTNAME, CRITICAL, SERVICE_NAME, "third"));
+        final int connectionsBefore = stub.getConnectionCount();
+
+        BatchResult result = passiveAlerter.sendAll(payloads);
+
+        waitForStub();
+
+        assertThat(result.isSuccessful(), is(true));
+        assertThat(result.getSucceeded(), is(payloads));
+        assertThat(stub.getConnectionCount() - connectionsBefore, is(1));
+        assertThat(stub.getMessagePayloadList(), hasItems(payloads.toArray(new MessagePayload[0])));
+    }
+
+    @Test
+    public void shouldFailAllPassiveChecksIfConnectionCannotBeOpened() {
+        NagiosSettings nagiosSettings = new NagiosSettings();
+        nagiosSettings.setNagiosHost("foobar");
+        final NagiosPassiveCheckSender sender = new NagiosPassiveCheckSender(nagiosSettings);
+
+        BatchResult result = sender.sendAll(Arrays.asList(new MessagePayload(), new MessagePayload()));
+
+        assertThat(result.getSucceeded().size(), is(0));
+        assertThat(result.getFailures().size(), is(2));
+        assertThat(result.getFailures().get(1).getException(), isA(UncheckedIOException.class));
+    }
+
     /*
      * I've confirmed externally that the NagiosStub would allow the too long
      * hostname, servicename and message lengths so the trimming must be done by
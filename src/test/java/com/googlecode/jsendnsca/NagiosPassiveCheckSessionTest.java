@@ -0,0 +1,109 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.googlecode.jsendnsca;
+
+import com.googlecode.jsendnsca.builders.MessagePayloadBuilder;
+import com.googlecode.jsendnsca.builders.NagiosSettingsBuilder;
+import com.googlecode.jsendnsca.mocks.NagiosNscaStub;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.RegisterExtension;
+
+import static com.googlecode.jsendnsca.encryption.Encryption.XOR;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.hasItems;
+import static org.hamcrest.Matchers.is;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class NagiosPassiveCheckSessionTest {
+
+    private static final String HOSTNAME = "localhost";
+    private static final String PASSWORD = "password";
+    @RegisterExtension
+    private static final NagiosNscaStub stub = NagiosNscaStub.listeningOnAnyFreePort(PASSWORD);
+
+    @Test
+    public void shouldSendManyPassiveChecksOverOneConnection() throws Exception {
+        final NagiosPassiveCheckSender sender = new NagiosPassiveCheckSender(nagiosSettings());
+        final MessagePayload first = payload("first");
+        final MessagePayload second = payload("second");
+        final MessagePayload third = payload("third");
+        final int connectionsBefore = stub.getConnectionCount();
+
+        try (NagiosPassiveCheckSession session = sender.openSession()) {
+            session.send(first);
+            session.send(second);
+            session.send(third);
+        }
+
+        Thread.sleep(50L);
+
+        assertThat(stub.getConnectionCount() - connectionsBefore, is(1));
+        assertThat(stub.getMessagePayloadList(), hasItems(first, second, third));
+    }
+
+    @Test
+    public void shouldNPEOnSendingWithNullMessagePayload() {
+        final NagiosPassiveCheckSender sender = new NagiosPassiveCheckSender(nagiosSettings());
+
+        try (NagiosPassiveCheckSession session = sender.openSession()) {
+            NullPointerException npe = assertThrows(NullPointerException.class, () -> session.send(null));
+            assertThat(npe.getMessage(), is("payload cannot be null"));
+        }
+    }
+
+    @Test
+    public void shouldSendIntactPassiveChecksOverSessionsOpenedOneAfterAnother() throws Exception {
+        final NagiosPassiveCheckSender sender = new NagiosPassiveCheckSender(nagiosSettings());
+        final MessagePayload longer = payload("a longer message sent over the first session");
+        final MessagePayload shorter = payload("short");
+
+        try (NagiosPassiveCheckSession session = sender.openSession()) {
+            session.send(longer);
+        }
+        try (NagiosPassiveCheckSession session = sender.openSession()) {
+            session.send(shorter);
+        }
+
+        Thread.sleep(50L);
+
+        assertThat(stub.getMessagePayloadList(), hasItems(longer, shorter));
+    }
+
+    @Test
+    public void shouldFailToSendOverClosedSession() {
+        final NagiosPassiveCheckSender sender = new NagiosPassiveCheckSender(nagiosSettings());
+        final NagiosPassiveCheckSession session = sender.openSession();
+        session.close();
+
+        assertThrows(NagiosException.class, () -> session.send(payload("closed")));
+    }
+
+    private static NagiosSettings nagiosSettings() {
+        return new NagiosSettingsBuilder()
+                .withPort(stub.getPort())
+                .withNagiosHost(HOSTNAME)
+                .withPassword(PASSWORD)
+                .withEncryption(XOR)
+                .create();
+    }
+
+    private static MessagePayload payload(String message) {
+        return new MessagePayloadBuilder()
+                .withHostname(HOSTNAME)
+                .withLevel(Level.OK)
+                .withServiceName("Test Service Name")
+                .withMessage(message)
+                .create();
+    }
+}
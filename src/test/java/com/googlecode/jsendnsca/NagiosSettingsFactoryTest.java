@@ -17,6 +17,7 @@ import org.apache.commons.lang3.StringUtils;
 import org.junit.jupiter.api.Test;
 
 import java.io.File;
+import java.util.Arrays;
 import java.util.Properties;
 
 import static com.googlecode.jsendnsca.NagiosSettingsFactory.createSettings;
@@ -89,6 +90,44 @@ public class NagiosSettingsFactoryTest {
         assertEquals(expectedSettings, settings);
     }
 
+    @Test
+    public void shouldCreateDestinationsInPriorityOrderFromHosts() throws Exception {
+        Properties hosts = new Properties();
+        hosts.setProperty("nagios.nsca.port", "7665");
+        hosts.setProperty("nagios.nsca.hosts", "nagios1:5667, nagios2,[::1]:5668");
+        hosts.setProperty("nagios.nsca.failover.cooldown", "1000");
+
+        NagiosSettings settings = createSettings(hosts);
+
+        assertEquals(Arrays.asList(new NagiosDestination("nagios1", 5667), new NagiosDestination("nagios2", 7665),
+                new NagiosDestination("::1", 5668)), settings.getDestinations());
+        assertEquals(1000, settings.getFailoverCoolDown());
+    }
+
+    @Test
+    public void shouldCreateCircuitBreakerSettings() throws Exception {
+        Properties circuitBreaker = new Properties();
+        circuitBreaker.setProperty("nagios.nsca.circuitbreaker.failurerate", "50");
+        circuitBreaker.setProperty("nagios.nsca.circuitbreaker.window", "20");
+        circuitBreaker.setProperty("nagios.nsca.circuitbreaker.openduration", "5000");
+
+        NagiosSettings settings = createSettings(circuitBreaker);
+
+        assertEquals(50, settings.getCircuitBreakerFailureRateThreshold());
+        assertEquals(20, settings.getCircuitBreakerWindowSize());
+        assertEquals(5000, settings.getCircuitBreakerOpenDuration());
+    }
+
+    @Test
+    public void shouldThrowNagiosConfigurationExceptionForInvalidHostPort() {
+        Properties hosts = new Properties();
+        hosts.setProperty("nagios.nsca.hosts", "nagios1:notAPort");
+
+        NagiosConfigurationException e = assertThrows(NagiosConfigurationException.class, () -> createSettings(hosts));
+
+        assertThat(e.getMessage(), is("Key [nagios.nsca.hosts] destination [nagios1:notAPort] port must be an integer, was [nagios1:notAPort]"));
+    }
+
     @Test
     public void shouldThrowNagiosConfigurationExceptionForEmptyPropertyValue() {
         Properties emptyPropertyValue = new Properties();
@@ -51,6 +51,22 @@ public class NagiosSettingsTest {
         assertThat(ex.getMessage(), is("port must be between 1 and 65535 inclusive"));
     }
 
+    @Test
+    public void shouldThrowIllegalArgumentExceptionForNegativeQueueOfferTimeout() {
+        IllegalArgumentException ex = assertThrows(IllegalArgumentException.class, () ->
+                nagiosSettings.setQueueOfferTimeout(-1)
+        );
+        assertThat(ex.getMessage(), is("queueOfferTimeout cannot be negative"));
+    }
+
+    @Test
+    public void shouldThrowIllegalArgumentExceptionForRingBufferSizeNotPowerOfTwo() {
+        IllegalArgumentException ex = assertThrows(IllegalArgumentException.class, () ->
+                nagiosSettings.setRingBufferSize(1000)
+        );
+        assertThat(ex.getMessage(), is("ringBufferSize must be 0 or a power of 2"));
+    }
+
     @Test
     public void shouldSetEncryptionUsingEnum() {
         nagiosSettings.setEncryption(Encryption.TRIPLE_DES);
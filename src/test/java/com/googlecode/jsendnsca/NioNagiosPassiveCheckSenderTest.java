@@ -0,0 +1,244 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.googlecode.jsendnsca;
+
+import com.googlecode.jsendnsca.builders.MessagePayloadBuilder;
+import com.googlecode.jsendnsca.builders.NagiosSettingsBuilder;
+import com.googlecode.jsendnsca.mocks.NagiosNscaStub;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.RegisterExtension;
+
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.net.SocketTimeoutException;
+import java.net.UnknownHostException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static com.googlecode.jsendnsca.encryption.Encryption.XOR;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.greaterThan;
+import static org.hamcrest.Matchers.greaterThanOrEqualTo;
+import static org.hamcrest.Matchers.hasItems;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.isA;
+import static org.hamcrest.Matchers.nullValue;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class NioNagiosPassiveCheckSenderTest {
+
+    private static final String HOSTNAME = "localhost";
+    private static final String PASSWORD = "password";
+    @RegisterExtension
+    private static final NagiosNscaStub stub = NagiosNscaStub.listeningOnAnyFreePort(PASSWORD);
+
+    private final BlockingQueue<Exception> exceptions = new LinkedBlockingQueue<>();
+    private NioNagiosPassiveCheckSender sender;
+
+    @AfterEach
+    public void shutdownSender() {
+        sender.shutdown();
+        stub.setSimulateTimeoutInMs(0);
+    }
+
+    @Test
+    public void shouldSendManyPassiveChecksConcurrently() throws Exception {
+        sender = new NioNagiosPassiveCheckSender(nagiosSettings().create(), exceptions::add);
+
+        List<MessagePayload> payloads = new ArrayList<>();
+        for (int i = 0; i < 50; i++) {
+            MessagePayload payload = payload("message " + i);
+            payloads.add(payload);
+            sender.send(payload);
+        }
+        Thread.sleep(500L);
+
+        assertThat(exceptions.poll(), is(nullValue()));
+        assertThat(stub.getMessagePayloadList(), hasItems(payloads.toArray(new MessagePayload[0])));
+    }
+
+    @Test
+    public void shouldPassTimeoutToExceptionHandler() throws Exception {
+        stub.setSimulateTimeoutInMs(1500);
+        sender = new NioNagiosPassiveCheckSender(nagiosSettings().withResponseTimeout(500).create(), exceptions::add);
+
+        sender.send(payload("timeout"));
+
+        Exception exception = exceptions.poll(5, TimeUnit.SECONDS);
+        assertThat(exception.getMessage(), is("Can't read initialisation vector"));
+        assertThat(exception.getCause(), isA(SocketTimeoutException.class));
+    }
+
+    @Test
+    public void shouldTimeOutEveryPassiveCheckInFlight() throws Exception {
+        stub.setSimulateTimeoutInMs(1500);
+        sender = new NioNagiosPassiveCheckSender(nagiosSettings().withResponseTimeout(500).create(), exceptions::add);
+
+        for (int i = 0; i < 20; i++) {
+            sender.send(payload("timeout " + i));
+        }
+
+        for (int i = 0; i < 20; i++) {
+            Exception exception = exceptions.poll(5, TimeUnit.SECONDS);
+            assertThat(exception.getCause(), isA(SocketTimeoutException.class));
+        }
+    }
+
+    @Test
+    public void shouldWaitIndefinitelyWithZeroTimeouts() throws Exception {
+        stub.setSimulateTimeoutInMs(300);
+        sender = new NioNagiosPassiveCheckSender(nagiosSettings().withConnectionTimeout(0).withResponseTimeout(0).create(), exceptions::add);
+
+        SendResult result = sender.sendAsync(payload("no timeout")).get(5, TimeUnit.SECONDS);
+
+        assertThat(result.getHandshakeTimeInNanos(), greaterThan(0L));
+    }
+
+    @Test
+    public void shouldKeepSelectorThreadRunningWhenExceptionHandlerThrows() throws Exception {
+        BlockingQueue<Exception> handled = new LinkedBlockingQueue<>();
+        sender = new NioNagiosPassiveCheckSender(nagiosSettings().withNagiosHost("unknown.invalid").create(), e -> {
+            handled.add(e);
+            throw new IllegalStateException("handler failed");
+        });
+
+        sender.send(payload("unresolved"));
+        assertThat(handled.poll(5, TimeUnit.SECONDS), isA(NagiosException.class));
+
+        ExecutionException e = assertThrows(ExecutionException.class, () -> sender.sendAsync(payload("unresolved")).get(5, TimeUnit.SECONDS));
+        assertThat(e.getCause().getCause(), isA(UnknownHostException.class));
+    }
+
+    @Test
+    public void shouldCompleteFutureWithTimingsOnSelectorThread() throws Exception {
+        sender = new NioNagiosPassiveCheckSender(nagiosSettings().create(), exceptions::add);
+        MessagePayload payload = payload("async");
+
+        CompletableFuture<String> completingThread = sender.sendAsync(payload).thenApply(result -> Thread.currentThread().getName());
+        SendResult result = sender.sendAsync(payload).get(5, TimeUnit.SECONDS);
+
+        assertThat(completingThread.get(5, TimeUnit.SECONDS), is("jsendnsca-nio-sender"));
+        assertThat(result.getPayload(), is(payload));
+        assertThat(result.getConnectTimeInNanos(), greaterThanOrEqualTo(0L));
+        assertThat(result.getHandshakeTimeInNanos(), greaterThanOrEqualTo(0L));
+        assertThat(result.getWriteTimeInNanos(), greaterThanOrEqualTo(0L));
+        assertThat(result.getTotalTimeInNanos(), greaterThan(0L));
+    }
+
+    @Test
+    public void shouldCompleteFutureExceptionallyInsteadOfCallingExceptionHandler() throws Exception {
+        stub.setSimulateTimeoutInMs(1500);
+        sender = new NioNagiosPassiveCheckSender(nagiosSettings().withResponseTimeout(500).create(), exceptions::add);
+
+        ExecutionException e = assertThrows(ExecutionException.class, () -> sender.sendAsync(payload("timeout")).get(5, TimeUnit.SECONDS));
+
+        assertThat(e.getCause().getMessage(), is("Can't read initialisation vector"));
+        assertThat(e.getCause().getCause(), isA(SocketTimeoutException.class));
+        assertThat(exceptions.poll(), is(nullValue()));
+    }
+
+    @Test
+    public void shouldCompleteFutureExceptionallyWhenHostCannotBeResolved() {
+        sender = new NioNagiosPassiveCheckSender(nagiosSettings().withNagiosHost("unknown.invalid").create(), exceptions::add);
+
+        ExecutionException e = assertThrows(ExecutionException.class, () -> sender.sendAsync(payload("unresolved")).get(5, TimeUnit.SECONDS));
+
+        assertThat(e.getCause().getCause(), isA(UnknownHostException.class));
+    }
+
+    @Test
+    public void shouldFailOverToNextDestinationAndSkipFailedDestinationDuringCoolDown() throws Exception {
+        sender = new NioNagiosPassiveCheckSender(nagiosSettings()
+                .withDestinations(new NagiosDestination(HOSTNAME, closedPort()), new NagiosDestination(HOSTNAME, stub.getPort()))
+                .withFailoverCoolDown(60000)
+                .create(), exceptions::add);
+
+        sender.sendAsync(payload("failover")).get(5, TimeUnit.SECONDS);
+        sender.sendAsync(payload("cool down")).get(5, TimeUnit.SECONDS);
+
+        List<DestinationHealth> health = sender.getDestinationHealth();
+        assertThat(health.get(0).getConsecutiveFailures(), is(1));
+        assertThat(health.get(1).getConsecutiveFailures(), is(0));
+        assertThat(health.get(1).getLastConnectLatency(), greaterThanOrEqualTo(0L));
+    }
+
+    @Test
+    public void shouldCompleteFutureExceptionallyOnShutdown() {
+        stub.setSimulateTimeoutInMs(1500);
+        sender = new NioNagiosPassiveCheckSender(nagiosSettings().create(), exceptions::add);
+
+        CompletableFuture<SendResult> result = sender.sendAsync(payload("abandoned"));
+        sender.shutdown();
+
+        ExecutionException e = assertThrows(ExecutionException.class, () -> result.get(5, TimeUnit.SECONDS));
+        assertThat(e.getCause(), isA(NagiosException.class));
+    }
+
+    @Test
+    public void shouldCompleteEveryFutureWhenSendsRaceShutdown() throws Exception {
+        sender = new NioNagiosPassiveCheckSender(nagiosSettings().create(), exceptions::add);
+        List<CompletableFuture<SendResult>> results = new ArrayList<>();
+        Thread sending = new Thread(() -> {
+            try {
+                while (true) {
+                    results.add(sender.sendAsync(payload("racing")));
+                }
+            } catch (IllegalStateException shutdown) {
+                // sender has been shutdown
+            }
+        });
+
+        sending.start();
+        Thread.sleep(50L);
+        sender.shutdown();
+        sending.join(5000L);
+
+        for (CompletableFuture<SendResult> result : results) {
+            try {
+                result.get(5, TimeUnit.SECONDS);
+            } catch (ExecutionException abandoned) {
+                assertThat(abandoned.getCause(), isA(NagiosException.class));
+            }
+        }
+    }
+
+    private static int closedPort() throws IOException {
+        try (ServerSocket serverSocket = new ServerSocket(0)) {
+            return serverSocket.getLocalPort();
+        }
+    }
+
+    private static NagiosSettingsBuilder nagiosSettings() {
+        return new NagiosSettingsBuilder()
+                .withPort(stub.getPort())
+                .withNagiosHost(HOSTNAME)
+                .withPassword(PASSWORD)
+                .withEncryption(XOR);
+    }
+
+    private static MessagePayload payload(String message) {
+        return new MessagePayloadBuilder()
+                .withHostname(HOSTNAME)
+                .withLevel(Level.OK)
+                .withServiceName("Test Service Name")
+                .withMessage(message)
+                .create();
+    }
+}
@@ -14,19 +14,33 @@
 package com.googlecode.jsendnsca;
 
 import com.googlecode.jsendnsca.NonBlockingNagiosPassiveCheckSender.ExceptionHandler;
+import com.googlecode.jsendnsca.builders.NagiosSettingsBuilder;
 import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
 
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.Date;
 import java.util.List;
 import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.greaterThan;
+import static org.hamcrest.Matchers.is;
 import static org.hamcrest.Matchers.lessThan;
+import static org.hamcrest.Matchers.sameInstance;
+import static org.hamcrest.Matchers.startsWith;
+import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
 public class NonBlockingNagiosPassiveCheckSenderTest {
@@ -64,6 +78,340 @@ public class NonBlockingNagiosPassiveCheckSenderTest {
         assertTrue(latch.await(10, TimeUnit.SECONDS), "timed out waiting for message to be sent");
     }
 
+    @Test
+    public void shouldSendConcurrentlyWithVirtualThreadsEnabled() throws Exception {
+        NagiosSettings settings = new NagiosSettingsBuilder().withVirtualThreads(4).create();
+        CountDownLatch latch = new CountDownLatch(4);
+        sender = new NonBlockingNagiosPassiveCheckSender(payload -> {
+            new SlowNagiosPassiveCheckSender().send(payload);
+            latch.countDown();
+        }, new TestExceptionHandler(), settings);
+
+        for (int i = 0; i < 4; i++) {
+            sender.send(new MessagePayload());
+        }
+
+        assertTrue(latch.await(300, TimeUnit.MILLISECONDS), "passive checks were not sent concurrently");
+    }
+
+    @Test
+    public void shouldExposePacketSizeStatisticsOfUnderlyingSender() {
+        NagiosPassiveCheckSender underlying = new NagiosPassiveCheckSender(new NagiosSettings());
+        sender = new NonBlockingNagiosPassiveCheckSender(underlying, new TestExceptionHandler(), new NagiosSettings());
+
+        assertThat(sender.getPacketSizeStatistics(), is(sameInstance(underlying.getPacketSizeStatistics())));
+
+        sender.shutdown();
+        sender = new NonBlockingNagiosPassiveCheckSender(new SlowNagiosPassiveCheckSender(), new TestExceptionHandler());
+
+        assertThat(sender.getPacketSizeStatistics().getLegacyPacketCount(), is(0L));
+    }
+
+    @Test
+    public void shouldCountPassiveChecksDroppedWhenQueueFull() {
+        NagiosSettings settings = new NagiosSettingsBuilder()
+                .withQueueCapacity(2, Long.MAX_VALUE)
+                .withOverflowPolicy(OverflowPolicy.DROP_NEWEST)
+                .create();
+        List<Exception> handled = new CopyOnWriteArrayList<>();
+        sender = new NonBlockingNagiosPassiveCheckSender(new SlowNagiosPassiveCheckSender(), handled::add, settings);
+        sender.setExecutor(new CurrentThreadExecutorService(new CountDownLatch(1)));
+
+        for (int i = 0; i < 5; i++) {
+            sender.send(new MessagePayload());
+        }
+
+        assertThat(sender.getQueueSize(), is(2));
+        assertThat(sender.getDroppedCount(), is(3L));
+        assertThat(sender.getRejectedCount(), is(0L));
+        assertThat(handled.size(), is(1));
+        assertThat(handled.get(0).getMessage(), startsWith("1 passive alert(s) dropped as queue is full"));
+    }
+
+    @Test
+    public void shouldFailPassiveChecksNotQueuedWhenSendingAll() {
+        NagiosSettings settings = new NagiosSettingsBuilder()
+                .withQueueCapacity(2, Long.MAX_VALUE)
+                .withOverflowPolicy(OverflowPolicy.DROP_NEWEST)
+                .create();
+        sender = new NonBlockingNagiosPassiveCheckSender(new SlowNagiosPassiveCheckSender(), new TestExceptionHandler(), settings);
+        sender.setExecutor(new CurrentThreadExecutorService(new CountDownLatch(1)));
+
+        BatchResult result = sender.sendAll(Arrays.asList(new MessagePayload(), new MessagePayload(), new MessagePayload()));
+
+        assertThat(result.getSucceeded().size(), is(2));
+        assertThat(result.getFailures().size(), is(1));
+    }
+
+    @Test
+    public void shouldFailPassiveChecksDroppedForLaterOnesWhenSendingAll() {
+        NagiosSettings settings = new NagiosSettingsBuilder()
+                .withQueueCapacity(2, Long.MAX_VALUE)
+                .withOverflowPolicy(OverflowPolicy.DROP_OLDEST)
+                .create();
+        sender = new NonBlockingNagiosPassiveCheckSender(new SlowNagiosPassiveCheckSender(), new TestExceptionHandler(), settings);
+        sender.setExecutor(new CurrentThreadExecutorService(new CountDownLatch(1)));
+        MessagePayload first = new MessagePayload("localhost", Level.OK, "service", "first");
+        MessagePayload second = new MessagePayload("localhost", Level.OK, "service", "second");
+        MessagePayload third = new MessagePayload("localhost", Level.OK, "service", "third");
+
+        BatchResult result = sender.sendAll(Arrays.asList(first, second, third));
+
+        assertThat(result.getSucceeded(), contains(second, third));
+        assertThat(result.getFailures().size(), is(1));
+        assertThat(result.getFailures().get(0).getPayload(), is(first));
+    }
+
+    @Test
+    public void shouldSendQueuedPassiveChecksInBatchesAfterLinger() throws Exception {
+        NagiosSettings settings = new NagiosSettingsBuilder().withBatching(5, 200).create();
+        List<Integer> batchSizes = new CopyOnWriteArrayList<>();
+        CountDownLatch latch = new CountDownLatch(2);
+        sender = new NonBlockingNagiosPassiveCheckSender(new PassiveCheckSender() {
+            @Override
+            public void send(MessagePayload payload) {
+                batchSizes.add(1);
+                latch.countDown();
+            }
+
+            @Override
+            public BatchResult sendAll(Iterable<MessagePayload> payloads) {
+                int size = 0;
+                for (MessagePayload ignored : payloads) {
+                    size++;
+                }
+                batchSizes.add(size);
+                latch.countDown();
+                return new BatchResult();
+            }
+        }, new TestExceptionHandler(), settings);
+
+        for (int i = 0; i < 7; i++) {
+            sender.send(new MessagePayload());
+        }
+
+        assertTrue(latch.await(5, TimeUnit.SECONDS), "timed out waiting for batches to be sent");
+        assertThat(batchSizes, contains(5, 2));
+    }
+
+    @Test
+    public void shouldSendFromRingBufferWithEachWaitStrategy() throws Exception {
+        for (WaitStrategy waitStrategy : WaitStrategy.values()) {
+            NagiosSettings settings = new NagiosSettingsBuilder().withRingBuffer(16, waitStrategy).create();
+            List<MessagePayload> sent = new CopyOnWriteArrayList<>();
+            CountDownLatch latch = new CountDownLatch(3);
+            sender.shutdown();
+            sender = new NonBlockingNagiosPassiveCheckSender(payload -> {
+                sent.add(payload);
+                latch.countDown();
+            }, new TestExceptionHandler(), settings);
+
+            for (int i = 0; i < 3; i++) {
+                sender.send(new MessagePayload("localhost", Level.OK, "service", Integer.toString(i)));
+            }
+
+            assertTrue(latch.await(5, TimeUnit.SECONDS), waitStrategy + " timed out waiting for passive checks to be sent");
+            assertThat(sent.get(2).getMessage(), is("2"));
+        }
+    }
+
+    @Test
+    public void shouldRejectPassiveChecksSentToRingBufferAfterShutdown() throws Exception {
+        NagiosSettings settings = new NagiosSettingsBuilder().withRingBuffer(16, WaitStrategy.BLOCKING).create();
+        List<MessagePayload> sent = new CopyOnWriteArrayList<>();
+        sender = new NonBlockingNagiosPassiveCheckSender(payload -> {
+            new SlowNagiosPassiveCheckSender().send(payload);
+            sent.add(payload);
+        }, new TestExceptionHandler(), settings);
+        sender.send(new MessagePayload());
+        sender.send(new MessagePayload());
+
+        sender.shutdown();
+
+        assertThrows(RejectedExecutionException.class, () -> sender.send(new MessagePayload()));
+        assertTrue(sender.awaitTermination(5, TimeUnit.SECONDS), "timed out waiting for queued passive checks");
+        assertThat(sent.size(), is(2));
+    }
+
+    @Test
+    public void shouldCountPassiveChecksDroppedWhenRingBufferFull() {
+        NagiosSettings settings = new NagiosSettingsBuilder().withRingBuffer(2, WaitStrategy.BLOCKING).create();
+        CountDownLatch blocked = new CountDownLatch(1);
+        sender = new NonBlockingNagiosPassiveCheckSender(payload -> {
+            try {
+                blocked.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }, new TestExceptionHandler(), settings);
+
+        BatchResult result = sender.sendAll(Arrays.asList(new MessagePayload(), new MessagePayload(), new MessagePayload(),
+                new MessagePayload(), new MessagePayload()));
+        blocked.countDown();
+
+        assertThat(result.getFailures().size(), is((int) sender.getDroppedCount()));
+        assertTrue(sender.getDroppedCount() >= 2L);
+    }
+
+    @Test
+    public void shouldSpoolOverflowingPassiveChecks(@TempDir File spoolDirectory) {
+        NagiosSettings settings = new NagiosSettingsBuilder()
+                .withQueueCapacity(2, Long.MAX_VALUE)
+                .withOverflowPolicy(OverflowPolicy.DROP_NEWEST)
+                .withSpool(spoolDirectory)
+                .create();
+        sender = new NonBlockingNagiosPassiveCheckSender(payload -> {
+            throw new NagiosException("NSCA unavailable");
+        }, new TestExceptionHandler(), settings);
+        sender.setExecutor(new CurrentThreadExecutorService(new CountDownLatch(1)));
+
+        for (int i = 0; i < 5; i++) {
+            sender.send(new MessagePayload());
+        }
+
+        assertThat(sender.getDroppedCount(), is(3L));
+        assertThat(sender.getSpoolSize(), is(3));
+    }
+
+    @Test
+    public void shouldSpoolFailedPassiveChecksAndReplayOnceSenderRecovers(@TempDir File spoolDirectory) throws Exception {
+        NagiosSettings settings = new NagiosSettingsBuilder().withSpool(spoolDirectory).create();
+        AtomicBoolean available = new AtomicBoolean();
+        List<MessagePayload> sent = new CopyOnWriteArrayList<>();
+        List<Exception> handled = new CopyOnWriteArrayList<>();
+        sender = new NonBlockingNagiosPassiveCheckSender(payload -> {
+            if (!available.get()) {
+                throw new NagiosException("NSCA unavailable");
+            }
+            sent.add(payload);
+        }, handled::add, settings);
+        MessagePayload payload = new MessagePayload("localhost", Level.WARNING, "Test Service Name", "spooled");
+
+        sender.send(payload);
+        Thread.sleep(100L);
+        assertThat(sent.isEmpty(), is(true));
+        available.set(true);
+
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (sent.isEmpty() && System.nanoTime() < deadline) {
+            Thread.sleep(10L);
+        }
+        assertThat(sent, contains(payload));
+        assertThat(sender.getSpoolSize(), is(0));
+        assertThat(handled.isEmpty(), is(true));
+    }
+
+    @Test
+    public void shouldNotReplaySpooledPassiveCheckOverNewerOneSent(@TempDir File spoolDirectory) throws Exception {
+        NagiosSettings settings = new NagiosSettingsBuilder().withSpool(spoolDirectory).create();
+        AtomicBoolean available = new AtomicBoolean();
+        List<MessagePayload> sent = new CopyOnWriteArrayList<>();
+        sender = new NonBlockingNagiosPassiveCheckSender(payload -> {
+            if (!available.get()) {
+                throw new NagiosException("NSCA unavailable");
+            }
+            sent.add(payload);
+        }, new TestExceptionHandler(), settings);
+        MessagePayload older = new MessagePayload("localhost", Level.CRITICAL, "Test Service Name", "older");
+        MessagePayload newer = new MessagePayload("localhost", Level.OK, "Test Service Name", "newer");
+
+        sender.send(older);
+        Thread.sleep(100L);
+        available.set(true);
+        sender.send(newer);
+
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (sender.getSpoolSize() > 0 && System.nanoTime() < deadline) {
+            Thread.sleep(10L);
+        }
+        assertThat(sender.getSpoolSize(), is(0));
+        assertThat(sent.get(sent.size() - 1), is(newer));
+    }
+
+    @Test
+    public void shouldSendPassiveChecksFasterThanReplayRateWhileSpoolDrains(@TempDir File spoolDirectory) throws Exception {
+        NagiosSettings settings = new NagiosSettingsBuilder().withSpool(spoolDirectory).withSpoolReplayRate(1).create();
+        AtomicBoolean available = new AtomicBoolean();
+        List<MessagePayload> sent = new CopyOnWriteArrayList<>();
+        sender = new NonBlockingNagiosPassiveCheckSender(payload -> {
+            if (!available.get()) {
+                throw new NagiosException("NSCA unavailable");
+            }
+            sent.add(payload);
+        }, new TestExceptionHandler(), settings);
+        for (int i = 0; i < 5; i++) {
+            sender.send(new MessagePayload("localhost", Level.CRITICAL, "spooled " + i, "outage"));
+        }
+        Thread.sleep(100L);
+        available.set(true);
+
+        List<MessagePayload> live = new ArrayList<>();
+        for (int i = 0; i < 50; i++) {
+            MessagePayload payload = new MessagePayload("localhost", Level.OK, "live " + i, "recovered");
+            live.add(payload);
+            sender.send(payload);
+        }
+
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(1);
+        while (!sent.containsAll(live) && System.nanoTime() < deadline) {
+            Thread.sleep(10L);
+        }
+        assertThat(sent.containsAll(live), is(true));
+        assertThat(sender.getSpoolSize(), greaterThan(0));
+    }
+
+    @Test
+    public void shouldSpoolPassiveChecksFailingWhileShuttingDown(@TempDir File spoolDirectory) {
+        NagiosSettings settings = new NagiosSettingsBuilder().withSpool(spoolDirectory).create();
+        PassiveCheckSender unavailable = payload -> {
+            new SlowNagiosPassiveCheckSender().send(payload);
+            throw new NagiosException("NSCA unavailable");
+        };
+        sender = new NonBlockingNagiosPassiveCheckSender(unavailable, new TestExceptionHandler(), settings);
+
+        for (int i = 0; i < 3; i++) {
+            sender.send(new MessagePayload());
+        }
+        sender.shutdown();
+
+        sender = new NonBlockingNagiosPassiveCheckSender(unavailable, new TestExceptionHandler(), settings);
+        assertThat(sender.getSpoolSize(), is(3));
+    }
+
+    @Test
+    public void shouldSpoolQueuedPassiveChecksRatherThanWaitForThemOnShutdown(@TempDir File spoolDirectory) throws Exception {
+        NagiosSettings settings = new NagiosSettingsBuilder()
+                .withSpool(spoolDirectory)
+                .withConnectionTimeout(100)
+                .withResponseTimeout(100)
+                .create();
+        CountDownLatch sending = new CountDownLatch(1);
+        CountDownLatch unreachable = new CountDownLatch(1);
+        sender = new NonBlockingNagiosPassiveCheckSender(payload -> {
+            sending.countDown();
+            try {
+                unreachable.await();
+            } catch (InterruptedException ignore) {
+            }
+            throw new NagiosException("NSCA unavailable");
+        }, new TestExceptionHandler(), settings);
+
+        for (int i = 0; i < 5; i++) {
+            sender.send(new MessagePayload());
+        }
+        sending.await(5, TimeUnit.SECONDS);
+        long start = System.nanoTime();
+        sender.shutdown();
+        long shutdownInMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        unreachable.countDown();
+
+        assertThat(shutdownInMs, lessThan(1000L));
+        sender = new NonBlockingNagiosPassiveCheckSender(payload -> {
+            throw new NagiosException("NSCA unavailable");
+        }, new TestExceptionHandler(), settings);
+        assertThat(sender.getSpoolSize(), is(4));
+    }
+
     private static class SlowNagiosPassiveCheckSender implements PassiveCheckSender {
 
         public void send(MessagePayload payload) throws NagiosException {
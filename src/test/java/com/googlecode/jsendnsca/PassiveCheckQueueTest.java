@@ -0,0 +1,277 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.googlecode.jsendnsca;
+
+import com.googlecode.jsendnsca.builders.NagiosSettingsBuilder;
+import org.apache.commons.lang3.StringUtils;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.empty;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class PassiveCheckQueueTest {
+
+    @Test
+    public void shouldDropNewestWhenFull() {
+        PassiveCheckQueue queue = queue(2, OverflowPolicy.DROP_NEWEST);
+        MessagePayload first = payload(Level.OK, "first");
+        MessagePayload second = payload(Level.OK, "second");
+
+        queue.offer(first);
+        queue.offer(second);
+        queue.offer(payload(Level.CRITICAL, "third"));
+
+        assertThat(drain(queue), contains(first, second));
+        assertThat(queue.getDroppedCount(), is(1L));
+    }
+
+    @Test
+    public void shouldDropOldestWhenFull() {
+        PassiveCheckQueue queue = queue(2, OverflowPolicy.DROP_OLDEST);
+        MessagePayload second = payload(Level.OK, "second");
+        MessagePayload third = payload(Level.OK, "third");
+
+        queue.offer(payload(Level.OK, "first"));
+        queue.offer(second);
+        queue.offer(third);
+
+        assertThat(drain(queue), contains(second, third));
+        assertThat(queue.getDroppedCount(), is(1L));
+    }
+
+    @Test
+    public void shouldDropOldestOfLowestLevelWhenFull() {
+        PassiveCheckQueue queue = queue(3, OverflowPolicy.DROP_LOWEST_LEVEL);
+        MessagePayload critical = payload(Level.CRITICAL, "critical");
+        MessagePayload warning = payload(Level.WARNING, "warning");
+        MessagePayload secondOk = payload(Level.OK, "second ok");
+        MessagePayload unknown = payload(Level.UNKNOWN, "unknown");
+
+        queue.offer(critical);
+        queue.offer(payload(Level.OK, "first ok"));
+        queue.offer(warning);
+        queue.offer(secondOk);
+        queue.offer(unknown);
+
+        assertThat(drain(queue), contains(critical, warning, unknown));
+        assertThat(queue.getDroppedCount(), is(2L));
+    }
+
+    @Test
+    public void shouldDropNewestIfLowerLevelThanAnyQueued() {
+        PassiveCheckQueue queue = queue(1, OverflowPolicy.DROP_LOWEST_LEVEL);
+        MessagePayload critical = payload(Level.CRITICAL, "critical");
+
+        queue.offer(critical);
+
+        assertThat(queue.offer(payload(Level.OK, "ok")), is(false));
+        assertThat(drain(queue), contains(critical));
+    }
+
+    @Test
+    public void shouldRejectAfterBlockingForOfferTimeout() {
+        PassiveCheckQueue queue = new PassiveCheckQueue(new NagiosSettingsBuilder()
+                .withQueueCapacity(1, Long.MAX_VALUE)
+                .withBlockingOverflowPolicy(50)
+                .create());
+        queue.offer(payload(Level.OK, "first"));
+
+        long start = System.nanoTime();
+        boolean offered = queue.offer(payload(Level.OK, "second"));
+
+        assertThat(offered, is(false));
+        assertTrue(System.nanoTime() - start >= 50_000_000L, "did not block for offer timeout");
+        assertThat(queue.getRejectedCount(), is(1L));
+    }
+
+    @Test
+    public void shouldBoundByEstimatedSizeInBytes() {
+        MessagePayload payload = payload(Level.OK, "message");
+        long capacityInBytes = PassiveCheckQueue.estimatedSizeInBytes(payload) * 2;
+        PassiveCheckQueue queue = new PassiveCheckQueue(new NagiosSettingsBuilder()
+                .withQueueCapacity(100, capacityInBytes)
+                .withOverflowPolicy(OverflowPolicy.DROP_NEWEST)
+                .create());
+
+        queue.offer(payload);
+        queue.offer(payload);
+        queue.offer(payload);
+
+        assertThat(queue.size(), is(2));
+        assertThat(queue.getDroppedCount(), is(1L));
+    }
+
+    @Test
+    public void shouldReplaceQueuedPassiveCheckForSameServiceInPlaceWhenCoalescing() {
+        PassiveCheckQueue queue = new PassiveCheckQueue(new NagiosSettingsBuilder()
+                .withQueueCapacity(2, Long.MAX_VALUE)
+                .withOverflowPolicy(OverflowPolicy.DROP_NEWEST)
+                .withCoalescingEnabled()
+                .create());
+        MessagePayload other = new MessagePayload("localhost", Level.OK, "other", "other");
+        MessagePayload latest = payload(Level.CRITICAL, "latest");
+
+        queue.offer(payload(Level.OK, "first"));
+        queue.offer(other);
+        queue.offer(payload(Level.WARNING, "second"));
+        queue.offer(latest);
+
+        assertThat(drain(queue), contains(latest, other));
+        assertThat(queue.getCoalescedCount(), is(2L));
+        assertThat(queue.getDroppedCount(), is(0L));
+    }
+
+    @Test
+    public void shouldKeepOnePassiveCheckPerServiceWhenCoalescedOneIsTooLargeToReplaceInPlace() {
+        MessagePayload other = new MessagePayload("localhost", Level.OK, "other", StringUtils.repeat('x', 101));
+        MessagePayload first = payload(Level.OK, "x");
+        MessagePayload larger = payload(Level.CRITICAL, StringUtils.repeat('x', 51));
+        long capacityInBytes = PassiveCheckQueue.estimatedSizeInBytes(other) + PassiveCheckQueue.estimatedSizeInBytes(first) + 20;
+        PassiveCheckQueue queue = new PassiveCheckQueue(new NagiosSettingsBuilder()
+                .withQueueCapacity(10, capacityInBytes)
+                .withOverflowPolicy(OverflowPolicy.DROP_OLDEST)
+                .withCoalescingEnabled()
+                .create());
+
+        queue.offer(other);
+        queue.offer(first);
+        queue.offer(larger);
+
+        assertThat(drain(queue), contains(larger));
+        assertThat(queue.getCoalescedCount(), is(1L));
+        assertThat(queue.getDroppedCount(), is(1L));
+    }
+
+    @Test
+    public void shouldQueueAgainOnceCoalescedPassiveCheckPolled() {
+        PassiveCheckQueue queue = new PassiveCheckQueue(new NagiosSettingsBuilder().withCoalescingEnabled().create());
+        MessagePayload first = payload(Level.OK, "first");
+        MessagePayload second = payload(Level.OK, "second");
+
+        queue.offer(first);
+        assertThat(queue.drain(1), contains(first));
+        queue.offer(second);
+
+        assertThat(drain(queue), contains(second));
+        assertThat(queue.getCoalescedCount(), is(0L));
+    }
+
+    @Test
+    public void shouldDrainAtMostMaxPassiveChecks() {
+        PassiveCheckQueue queue = queue(10, OverflowPolicy.DROP_OLDEST);
+        MessagePayload first = payload(Level.OK, "first");
+        MessagePayload second = payload(Level.OK, "second");
+        MessagePayload third = payload(Level.OK, "third");
+        queue.offer(first);
+        queue.offer(second);
+        queue.offer(third);
+
+        assertThat(queue.drain(2), contains(first, second));
+        assertThat(queue.drain(2), contains(third));
+        assertThat(queue.drain(2), is(empty()));
+    }
+
+    @Test
+    public void shouldDiscardPassiveChecksQueuedLongerThanTimeToLive() throws Exception {
+        PassiveCheckQueue queue = new PassiveCheckQueue(new NagiosSettingsBuilder().withQueueTimeToLive(50).create());
+        queue.offer(payload(Level.OK, "first"));
+        queue.offer(payload(Level.OK, "second"));
+        Thread.sleep(100L);
+        MessagePayload fresh = payload(Level.OK, "fresh");
+        queue.offer(fresh);
+
+        assertThat(drain(queue), contains(fresh));
+        assertThat(queue.getExpiredCount(), is(2L));
+        assertThat(queue.size(), is(0));
+    }
+
+    @Test
+    public void shouldRestartTimeToLiveWhenCoalesced() throws Exception {
+        PassiveCheckQueue queue = new PassiveCheckQueue(new NagiosSettingsBuilder()
+                .withQueueTimeToLive(100)
+                .withCoalescingEnabled()
+                .create());
+        queue.offer(payload(Level.OK, "first"));
+        Thread.sleep(75L);
+        MessagePayload latest = payload(Level.CRITICAL, "latest");
+        queue.offer(latest);
+        Thread.sleep(50L);
+
+        assertThat(drain(queue), contains(latest));
+        assertThat(queue.getExpiredCount(), is(0L));
+    }
+
+    @Test
+    public void shouldStopWaitingForSizeOnceReached() throws Exception {
+        PassiveCheckQueue queue = queue(10, OverflowPolicy.DROP_OLDEST);
+        Thread producer = new Thread(() -> {
+            queue.offer(payload(Level.OK, "first"));
+            queue.offer(payload(Level.OK, "second"));
+        });
+
+        long start = System.nanoTime();
+        producer.start();
+        queue.awaitSize(2, TimeUnit.SECONDS.toNanos(5));
+
+        assertThat(queue.size(), is(2));
+        assertTrue(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(5), "waited for whole timeout");
+        producer.join();
+    }
+
+    @Test
+    public void shouldPassOverflowToConsumerWithoutHoldingLock() throws Exception {
+        List<MessagePayload> drainedWhileOverflowing = new CopyOnWriteArrayList<>();
+        PassiveCheckQueue[] queue = new PassiveCheckQueue[1];
+        queue[0] = new PassiveCheckQueue(new NagiosSettingsBuilder()
+                .withQueueCapacity(1, Long.MAX_VALUE)
+                .withOverflowPolicy(OverflowPolicy.DROP_OLDEST)
+                .create(), payload -> {
+                    Thread drainer = new Thread(() -> drainedWhileOverflowing.addAll(drain(queue[0])));
+                    drainer.start();
+                    try {
+                        drainer.join(TimeUnit.SECONDS.toMillis(5));
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                });
+        MessagePayload second = payload(Level.OK, "second");
+
+        queue[0].offer(payload(Level.OK, "first"));
+        queue[0].offer(second);
+
+        assertThat(drainedWhileOverflowing, contains(second));
+    }
+
+    private static PassiveCheckQueue queue(int capacity, OverflowPolicy overflowPolicy) {
+        return new PassiveCheckQueue(new NagiosSettingsBuilder()
+                .withQueueCapacity(capacity, Long.MAX_VALUE)
+                .withOverflowPolicy(overflowPolicy)
+                .create());
+    }
+
+    private static List<MessagePayload> drain(PassiveCheckQueue queue) {
+        return queue.drain(Integer.MAX_VALUE);
+    }
+
+    private static MessagePayload payload(Level level, String message) {
+        return new MessagePayload("localhost", level, "service", message);
+    }
+}
@@ -0,0 +1,188 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.googlecode.jsendnsca;
+
+import com.googlecode.jsendnsca.builders.NagiosSettingsBuilder;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.is;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class PassiveCheckRingBufferTest {
+
+    @Test
+    public void shouldDrainCopiesOfPassiveChecksInOrder() {
+        PassiveCheckRingBuffer ringBuffer = ringBuffer(4, WaitStrategy.BLOCKING);
+        MessagePayload first = payload("first");
+        MessagePayload second = payload("second");
+
+        ringBuffer.offer(first);
+        ringBuffer.offer(second);
+        first.setMessage("changed after sending");
+
+        assertThat(drain(ringBuffer), contains(payload("first"), second));
+        assertThat(ringBuffer.isEmpty(), is(true));
+    }
+
+    @Test
+    public void shouldDropNewestWhenFull() {
+        List<MessagePayload> overflowed = new ArrayList<>();
+        PassiveCheckRingBuffer ringBuffer = new PassiveCheckRingBuffer(settings(2, WaitStrategy.BLOCKING), overflowed::add);
+        MessagePayload third = payload("third");
+
+        ringBuffer.offer(payload("first"));
+        ringBuffer.offer(payload("second"));
+        assertFalse(ringBuffer.offer(third));
+
+        assertThat(overflowed, contains(third));
+        assertThat(ringBuffer.getDroppedCount(), is(1L));
+        assertThat(drain(ringBuffer), contains(payload("first"), payload("second")));
+        assertTrue(ringBuffer.offer(third));
+    }
+
+    @Test
+    public void shouldDiscardPassiveChecksQueuedLongerThanTimeToLive() throws Exception {
+        PassiveCheckRingBuffer ringBuffer = new PassiveCheckRingBuffer(new NagiosSettingsBuilder()
+                .withRingBuffer(4, WaitStrategy.BLOCKING)
+                .withQueueTimeToLive(50)
+                .create());
+        ringBuffer.offer(payload("stale"));
+        Thread.sleep(100L);
+        ringBuffer.offer(payload("fresh"));
+
+        assertThat(drain(ringBuffer), contains(payload("fresh")));
+        assertThat(ringBuffer.getExpiredCount(), is(1L));
+        assertThat(ringBuffer.size(), is(0));
+    }
+
+    @Test
+    public void shouldStopWaitingOncePassiveCheckOfferedWithEachWaitStrategy() throws Exception {
+        for (WaitStrategy waitStrategy : WaitStrategy.values()) {
+            PassiveCheckRingBuffer ringBuffer = ringBuffer(4, waitStrategy);
+            Thread offering = new Thread(() -> {
+                sleep(50L);
+                ringBuffer.offer(payload("offered"));
+            });
+            offering.start();
+
+            assertTrue(ringBuffer.awaitSize(1, TimeUnit.SECONDS.toNanos(5)), waitStrategy + " timed out waiting");
+            offering.join();
+        }
+    }
+
+    @Test
+    public void shouldStopWaitingWhenClosed() throws Exception {
+        PassiveCheckRingBuffer ringBuffer = ringBuffer(4, WaitStrategy.BLOCKING);
+        new Thread(() -> {
+            sleep(50L);
+            ringBuffer.close();
+        }).start();
+
+        long start = System.nanoTime();
+        assertFalse(ringBuffer.awaitSize(1, TimeUnit.SECONDS.toNanos(5)));
+        assertTrue(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(5));
+    }
+
+    @Test
+    public void shouldRejectPassiveChecksOnceClosedButDrainThoseAlreadyQueued() {
+        PassiveCheckRingBuffer ringBuffer = ringBuffer(4, WaitStrategy.BLOCKING);
+        MessagePayload queued = payload("queued");
+        ringBuffer.offer(queued);
+
+        ringBuffer.close();
+
+        assertThrows(RejectedExecutionException.class, () -> ringBuffer.offer(payload("rejected")));
+        assertThat(ringBuffer.size(), is(1));
+        assertThat(drain(ringBuffer), contains(queued));
+        assertThat(ringBuffer.isEmpty(), is(true));
+    }
+
+    @Test
+    public void shouldDrainEveryPassiveCheckOfferedByConcurrentSenders() throws Exception {
+        final int senders = 4;
+        final int passiveChecksPerSender = 10000;
+        PassiveCheckRingBuffer ringBuffer = ringBuffer(64, WaitStrategy.YIELDING);
+        List<Throwable> errors = new CopyOnWriteArrayList<>();
+        CountDownLatch sent = new CountDownLatch(senders);
+        for (int i = 0; i < senders; i++) {
+            final String hostname = "host" + i;
+            new Thread(() -> {
+                for (int j = 0; j < passiveChecksPerSender; j++) {
+                    MessagePayload payload = new MessagePayload(hostname, Level.OK, "service", Integer.toString(j));
+                    while (!ringBuffer.offer(payload)) {
+                        Thread.yield();
+                    }
+                }
+                sent.countDown();
+            }).start();
+        }
+
+        int[] nextBySender = new int[senders];
+        List<MessagePayload> batch = new ArrayList<>();
+        int drained = 0;
+        while (drained < senders * passiveChecksPerSender) {
+            ringBuffer.awaitSize(1, TimeUnit.MILLISECONDS.toNanos(100));
+            ringBuffer.drainTo(batch, 16);
+            for (MessagePayload payload : batch) {
+                int sender = payload.getHostname().charAt(4) - '0';
+                if (Integer.parseInt(payload.getMessage()) != nextBySender[sender]++) {
+                    errors.add(new AssertionError("out of order " + payload));
+                }
+            }
+            drained += batch.size();
+            batch.clear();
+        }
+
+        assertTrue(sent.await(5, TimeUnit.SECONDS), "timed out waiting for senders");
+        assertThat(errors.size(), is(0));
+        assertThat(ringBuffer.isEmpty(), is(true));
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static NagiosSettings settings(int size, WaitStrategy waitStrategy) {
+        return new NagiosSettingsBuilder().withRingBuffer(size, waitStrategy).create();
+    }
+
+    private static PassiveCheckRingBuffer ringBuffer(int size, WaitStrategy waitStrategy) {
+        return new PassiveCheckRingBuffer(settings(size, waitStrategy));
+    }
+
+    private static List<MessagePayload> drain(PassiveCheckRingBuffer ringBuffer) {
+        List<MessagePayload> batch = new ArrayList<>();
+        ringBuffer.drainTo(batch, Integer.MAX_VALUE);
+        return batch;
+    }
+
+    private static MessagePayload payload(String message) {
+        return new MessagePayload("localhost", Level.OK, "service", message);
+    }
+}
@@ -0,0 +1,230 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.googlecode.jsendnsca;
+
+import com.googlecode.jsendnsca.builders.NagiosSettingsBuilder;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.empty;
+import static org.hamcrest.Matchers.greaterThan;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.not;
+
+public class PassiveCheckSpoolTest {
+
+    @TempDir
+    private File directory;
+
+    private final List<MessagePayload> replayed = new CopyOnWriteArrayList<>();
+    private final AtomicBoolean available = new AtomicBoolean(true);
+    private final PassiveCheckSender sender = payload -> {
+        if (!available.get()) {
+            throw new NagiosException("NSCA unavailable");
+        }
+        replayed.add(payload);
+    };
+    private PassiveCheckSpool spool;
+
+    @AfterEach
+    public void closeSpool() {
+        if (spool != null) {
+            spool.close();
+        }
+    }
+
+    @Test
+    public void shouldReplaySpooledPassiveChecksInOrder() throws Exception {
+        spool = new PassiveCheckSpool(settings().create(), sender, 10L);
+
+        MessagePayload first = payload("first");
+        MessagePayload second = payload(null);
+        MessagePayload third = payload("third é中");
+        spool.append(first);
+        spool.append(second);
+        spool.append(third);
+
+        awaitReplayed(3);
+        assertThat(replayed, contains(first, second, third));
+        assertThat(spool.size(), is(0));
+    }
+
+    @Test
+    public void shouldRetryUntilSenderRecovers() throws Exception {
+        available.set(false);
+        spool = new PassiveCheckSpool(settings().create(), sender, 10L);
+        MessagePayload payload = payload("while down");
+
+        spool.append(payload);
+        Thread.sleep(50L);
+        assertThat(spool.size(), is(1));
+        available.set(true);
+
+        awaitReplayed(1);
+        assertThat(replayed, contains(payload));
+    }
+
+    @Test
+    public void shouldReplayPassiveChecksStillSpooledAfterRestart() throws Exception {
+        spool = new PassiveCheckSpool(settings().create(), sender, 10L);
+        MessagePayload sent = payload("sent before restart");
+        spool.append(sent);
+        awaitReplayed(1);
+        awaitSpoolSize(0);
+        available.set(false);
+        MessagePayload first = payload("first");
+        MessagePayload second = payload("second");
+        spool.append(first);
+        spool.append(second);
+        spool.close();
+
+        replayed.clear();
+        spool = new PassiveCheckSpool(settings().create(), sender, 10L);
+
+        assertThat(spool.size(), is(2));
+        available.set(true);
+        awaitReplayed(2);
+        assertThat(replayed, contains(first, second));
+    }
+
+    @Test
+    public void shouldDiscardPassiveChecksSpooledLongerThanTimeToLive() throws Exception {
+        available.set(false);
+        spool = new PassiveCheckSpool(settings().withQueueTimeToLive(50).create(), sender, 10L);
+        spool.append(payload("stale"));
+        Thread.sleep(100L);
+        MessagePayload fresh = payload("fresh");
+        spool.append(fresh);
+
+        available.set(true);
+
+        awaitReplayed(1);
+        assertThat(replayed, contains(fresh));
+        assertThat(spool.getExpiredCount(), is(1L));
+        assertThat(spool.size(), is(0));
+    }
+
+    @Test
+    public void shouldDiscardSpooledPassiveChecksOlderThanOneSentForTheSameService() throws Exception {
+        available.set(false);
+        spool = new PassiveCheckSpool(settings().create(), sender, 10L);
+        spool.append(payload("superseded"));
+        MessagePayload otherService = new MessagePayload("localhost", Level.OK, "Other Service Name", "other service");
+        spool.append(otherService);
+        long mark = spool.mark();
+        spool.sent(payload("sent around the spool"), mark);
+        MessagePayload newer = payload("spooled after sending");
+        spool.append(newer);
+
+        available.set(true);
+
+        awaitReplayed(2);
+        awaitSpoolSize(0);
+        assertThat(replayed, contains(otherService, newer));
+        assertThat(spool.getSupersededCount(), is(1L));
+    }
+
+    @Test
+    public void shouldIgnoreRecordTornByCrash() throws Exception {
+        available.set(false);
+        spool = new PassiveCheckSpool(settings().create(), sender, 10L);
+        MessagePayload payload = payload("before crash");
+        spool.append(payload);
+        spool.append(payload("torn"));
+        spool.close();
+        File segment = directory.listFiles()[0];
+        try (RandomAccessFile file = new RandomAccessFile(segment, "rw")) {
+            file.seek(8);
+            int tornRecord = 8 + 8 + file.readInt();
+            file.seek(tornRecord + 8 + 1);
+            file.write(new byte[] {'X', 'X', 'X', 'X'});
+        }
+
+        available.set(true);
+        spool = new PassiveCheckSpool(settings().create(), sender, 10L);
+
+        awaitReplayed(1);
+        Thread.sleep(50L);
+        assertThat(replayed, contains(payload));
+    }
+
+    @Test
+    public void shouldRotateSegmentsAndDropOldestWhenFull() throws Exception {
+        available.set(false);
+        spool = new PassiveCheckSpool(settings().withSpoolCapacity(64 * 1024, 128 * 1024).create(), sender, 10L);
+        char[] large = new char[4096];
+        Arrays.fill(large, 'x');
+
+        for (int i = 0; i < 40; i++) {
+            spool.append(payload(i + new String(large)));
+        }
+
+        assertThat(spool.getDroppedCount(), greaterThan(0L));
+        assertThat(directory.listFiles().length, is(2));
+        available.set(true);
+        awaitReplayed(spool.size());
+        assertThat(replayed.get(0).getMessage().startsWith("0"), is(false));
+        assertThat(replayed.get(replayed.size() - 1).getMessage().startsWith("39"), is(true));
+    }
+
+    @Test
+    public void shouldDeleteReplayedSegments() throws Exception {
+        spool = new PassiveCheckSpool(settings().withSpoolCapacity(64 * 1024, 1024 * 1024).create(), sender, 10L);
+        char[] large = new char[4096];
+        Arrays.fill(large, 'x');
+
+        for (int i = 0; i < 40; i++) {
+            spool.append(payload(new String(large)));
+        }
+        awaitReplayed(40);
+
+        assertThat(Arrays.asList(directory.listFiles()), not(empty()));
+        assertThat(directory.listFiles().length, is(1));
+    }
+
+    private void awaitReplayed(int count) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (replayed.size() < count && System.nanoTime() < deadline) {
+            Thread.sleep(10L);
+        }
+    }
+
+    private void awaitSpoolSize(int size) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (spool.size() > size && System.nanoTime() < deadline) {
+            Thread.sleep(10L);
+        }
+    }
+
+    private NagiosSettingsBuilder settings() {
+        return new NagiosSettingsBuilder()
+                .withSpool(directory)
+                .withSpoolReplayRate(10000);
+    }
+
+    private static MessagePayload payload(String message) {
+        return new MessagePayload("localhost", Level.CRITICAL, "Test Service Name", message);
+    }
+}
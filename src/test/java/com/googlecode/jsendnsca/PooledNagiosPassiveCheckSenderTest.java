@@ -0,0 +1,128 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.googlecode.jsendnsca;
+
+import com.googlecode.jsendnsca.builders.MessagePayloadBuilder;
+import com.googlecode.jsendnsca.builders.NagiosSettingsBuilder;
+import com.googlecode.jsendnsca.mocks.NagiosNscaStub;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.RegisterExtension;
+
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.util.ArrayList;
+import java.util.List;
+
+import static com.googlecode.jsendnsca.encryption.Encryption.XOR;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.greaterThan;
+import static org.hamcrest.Matchers.hasItems;
+import static org.hamcrest.Matchers.is;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class PooledNagiosPassiveCheckSenderTest {
+
+    private static final String HOSTNAME = "localhost";
+    private static final String PASSWORD = "password";
+    @RegisterExtension
+    private static final NagiosNscaStub stub = NagiosNscaStub.listeningOnAnyFreePort(PASSWORD);
+
+    private PooledNagiosPassiveCheckSender sender;
+
+    @AfterEach
+    public void shutdownSender() {
+        if (sender != null) {
+            sender.shutdown();
+        }
+    }
+
+    @Test
+    public void shouldThrowNPEOnConstructingSenderWithNullNagiosSettings() {
+        NullPointerException npe = assertThrows(NullPointerException.class, () -> new PooledNagiosPassiveCheckSender(null));
+        assertThat(npe.getMessage(), is("nagiosSettings cannot be null"));
+    }
+
+    @Test
+    public void shouldSendPassiveChecksOverPooledConnection() throws Exception {
+        sender = new PooledNagiosPassiveCheckSender(nagiosSettings().withConnectionPoolSize(1).create());
+        Thread.sleep(100L);
+        final int connectionsBefore = stub.getConnectionCount();
+
+        List<MessagePayload> payloads = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            MessagePayload payload = payload("message " + i);
+            payloads.add(payload);
+            sender.send(payload);
+        }
+        Thread.sleep(50L);
+
+        assertThat(stub.getConnectionCount() - connectionsBefore, is(0));
+        assertThat(stub.getMessagePayloadList(), hasItems(payloads.toArray(new MessagePayload[0])));
+    }
+
+    @Test
+    public void shouldReplaceConnectionsOlderThanMaxConnectionAge() throws Exception {
+        sender = new PooledNagiosPassiveCheckSender(nagiosSettings().withConnectionPoolSize(1).withMaxConnectionAge(100).create());
+        Thread.sleep(50L);
+        final int connectionsBefore = stub.getConnectionCount();
+
+        Thread.sleep(300L);
+        MessagePayload payload = payload("after max connection age");
+        sender.send(payload);
+        Thread.sleep(50L);
+
+        assertThat(stub.getConnectionCount() - connectionsBefore, greaterThan(1));
+        assertThat(stub.getMessagePayloadList(), hasItems(payload));
+    }
+
+    @Test
+    public void shouldDivertToFallbackOnceCircuitBreakerOpens() throws Exception {
+        sender = new PooledNagiosPassiveCheckSender(nagiosSettings().withPort(closedPort()).withCircuitBreaker(50, 2, 60000).create());
+        MessagePayload payload = payload("diverted");
+        for (int i = 0; i < 10 && sender.getCircuitBreaker().getState() != CircuitBreaker.State.OPEN; i++) {
+            assertThrows(RuntimeException.class, () -> sender.send(payload));
+        }
+        assertThat(sender.getCircuitBreaker().getState(), is(CircuitBreaker.State.OPEN));
+
+        List<MessagePayload> diverted = new ArrayList<>();
+        sender.setCircuitBreakerFallback(diverted::add);
+        sender.send(payload);
+
+        assertThat(diverted, hasItems(payload));
+    }
+
+    private static int closedPort() throws IOException {
+        try (ServerSocket serverSocket = new ServerSocket(0)) {
+            return serverSocket.getLocalPort();
+        }
+    }
+
+    private static NagiosSettingsBuilder nagiosSettings() {
+        return new NagiosSettingsBuilder()
+                .withPort(stub.getPort())
+                .withNagiosHost(HOSTNAME)
+                .withPassword(PASSWORD)
+                .withEncryption(XOR);
+    }
+
+    private static MessagePayload payload(String message) {
+        return new MessagePayloadBuilder()
+                .withHostname(HOSTNAME)
+                .withLevel(Level.OK)
+                .withServiceName("Test Service Name")
+                .withMessage(message)
+                .create();
+    }
+}
@@ -0,0 +1,48 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.googlecode.jsendnsca;
+
+import com.googlecode.jsendnsca.builders.NagiosSettingsBuilder;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.instanceOf;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.not;
+
+public class SendExecutorsTest {
+
+    @Test
+    public void shouldUseVirtualThreadsOrFallBackToPlatformThreads() {
+        ExecutorService executor = SendExecutors.newExecutor(new NagiosSettingsBuilder().withVirtualThreads(8).create());
+
+        if (SendExecutors.virtualThreadsSupported()) {
+            assertThat(executor, not(instanceOf(ThreadPoolExecutor.class)));
+        } else {
+            assertThat(((ThreadPoolExecutor) executor).getMaximumPoolSize(), is(8));
+        }
+        executor.shutdown();
+    }
+
+    @Test
+    public void shouldUseThreadPoolOfMaxConcurrentSends() {
+        ExecutorService executor = SendExecutors.newExecutor(new NagiosSettingsBuilder().withMaxConcurrentSends(3).create());
+
+        assertThat(((ThreadPoolExecutor) executor).getMaximumPoolSize(), is(3));
+        executor.shutdown();
+    }
+}
@@ -0,0 +1,235 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.googlecode.jsendnsca;
+
+import com.googlecode.jsendnsca.builders.MessagePayloadBuilder;
+import com.googlecode.jsendnsca.builders.NagiosSettingsBuilder;
+import com.googlecode.jsendnsca.mocks.NagiosNscaStub;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.RegisterExtension;
+
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import static com.googlecode.jsendnsca.encryption.Encryption.XOR;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.everyItem;
+import static org.hamcrest.Matchers.greaterThan;
+import static org.hamcrest.Matchers.hasItem;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.lessThan;
+import static org.hamcrest.Matchers.not;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class ShardedNagiosPassiveCheckSenderTest {
+
+    private static final String PASSWORD = "password";
+    private static final int HOSTS = 10000;
+    @RegisterExtension
+    private static final NagiosNscaStub firstStub = NagiosNscaStub.listeningOnAnyFreePort(PASSWORD);
+    @RegisterExtension
+    private static final NagiosNscaStub secondStub = NagiosNscaStub.listeningOnAnyFreePort(PASSWORD);
+
+    private ShardedNagiosPassiveCheckSender sender;
+
+    @AfterEach
+    public void shutdownSender() {
+        if (sender != null) {
+            sender.shutdown();
+        }
+    }
+
+    @Test
+    public void shouldSpreadHostsEvenlyAcrossShards() {
+        sender = new ShardedNagiosPassiveCheckSender(Arrays.asList(settings(1), settings(2), settings(3)));
+
+        Map<NagiosSettings, Integer> hostsPerShard = new HashMap<>();
+        for (int i = 0; i < HOSTS; i++) {
+            hostsPerShard.merge(sender.getShard("host" + i), 1, Integer::sum);
+        }
+
+        assertThat(hostsPerShard.size(), is(3));
+        assertThat(hostsPerShard.values(), everyItem(greaterThan(HOSTS / 4)));
+    }
+
+    @Test
+    public void shouldOnlyMoveHostsToAddedShard() {
+        sender = new ShardedNagiosPassiveCheckSender(Arrays.asList(settings(1), settings(2), settings(3)));
+        Map<String, NagiosSettings> before = shardsOfHosts();
+
+        NagiosSettings added = settings(4);
+        sender.addShard(added);
+
+        int moved = 0;
+        for (Map.Entry<String, NagiosSettings> entry : before.entrySet()) {
+            NagiosSettings after = sender.getShard(entry.getKey());
+            if (after != entry.getValue()) {
+                assertThat(after, is(added));
+                moved++;
+            }
+        }
+        assertThat(moved, greaterThan(HOSTS / 6));
+        assertThat(moved, lessThan(HOSTS / 3));
+    }
+
+    @Test
+    public void shouldOnlyMoveHostsOfRemovedShard() {
+        NagiosSettings removed = settings(2);
+        sender = new ShardedNagiosPassiveCheckSender(Arrays.asList(settings(1), removed, settings(3)));
+        Map<String, NagiosSettings> before = shardsOfHosts();
+
+        sender.removeShard(removed);
+
+        Set<NagiosSettings> shardsAfter = new HashSet<>();
+        for (Map.Entry<String, NagiosSettings> entry : before.entrySet()) {
+            NagiosSettings after = sender.getShard(entry.getKey());
+            shardsAfter.add(after);
+            if (entry.getValue() != removed) {
+                assertThat(after, is(entry.getValue()));
+            }
+        }
+        assertThat(shardsAfter, not(hasItem(removed)));
+    }
+
+    @Test
+    public void shouldNotAllowSameDestinationsTwice() {
+        IllegalArgumentException ex = assertThrows(IllegalArgumentException.class,
+                () -> new ShardedNagiosPassiveCheckSender(Arrays.asList(settings(1), settings(1))));
+        assertThat(ex.getMessage(), is("shard for [127.0.0.1:1] already added"));
+    }
+
+    @Test
+    public void shouldSendEachPassiveCheckToShardOfItsHostname() throws Exception {
+        NagiosSettings first = stubSettings(firstStub);
+        NagiosSettings second = stubSettings(secondStub);
+        sender = new ShardedNagiosPassiveCheckSender(Arrays.asList(first, second));
+
+        MessagePayload toFirst = null;
+        MessagePayload toSecond = null;
+        for (int i = 0; toFirst == null || toSecond == null; i++) {
+            MessagePayload payload = new MessagePayloadBuilder()
+                    .withHostname("host" + i)
+                    .withLevel(Level.OK)
+                    .withServiceName("Test Service Name")
+                    .withMessage("sharded")
+                    .create();
+            if (sender.getShard(payload.getHostname()) == first) {
+                toFirst = payload;
+            } else {
+                toSecond = payload;
+            }
+        }
+        sender.send(toFirst);
+        sender.send(toSecond);
+        assertTrue(firstStub.awaitMessagePayload(toFirst, 5000), "timed out waiting for first shard");
+        assertTrue(secondStub.awaitMessagePayload(toSecond, 5000), "timed out waiting for second shard");
+
+        assertThat(firstStub.getMessagePayloadList(), hasItem(toFirst));
+        assertThat(firstStub.getMessagePayloadList(), not(hasItem(toSecond)));
+        assertThat(secondStub.getMessagePayloadList(), hasItem(toSecond));
+        assertThat(secondStub.getMessagePayloadList(), not(hasItem(toFirst)));
+    }
+
+    @Test
+    public void shouldRerouteOrSendPassiveChecksAlreadyQueuedForRemovedShard() throws Exception {
+        NagiosSettings first = stubSettings(firstStub);
+        NagiosSettings second = stubSettings(secondStub);
+        sender = new ShardedNagiosPassiveCheckSender(Arrays.asList(first, second));
+        List<MessagePayload> queued = new ArrayList<>();
+        for (int i = 0; queued.size() < 20; i++) {
+            if (sender.getShard("host" + i) == first) {
+                MessagePayload payload = new MessagePayload("host" + i, Level.OK, "Test Service Name", "queued for removed shard");
+                sender.send(payload);
+                queued.add(payload);
+            }
+        }
+
+        sender.removeShard(first);
+
+        for (MessagePayload payload : queued) {
+            assertTrue(firstStub.awaitMessagePayload(payload, 100) || secondStub.awaitMessagePayload(payload, 5000),
+                    "passive check queued for removed shard was not sent");
+        }
+    }
+
+    @Test
+    public void shouldRerouteQueuedPassiveChecksWithoutWaitingOnUnresponsiveRemovedShard() throws Exception {
+        try (ServerSocket unresponsive = new ServerSocket(0, 50, InetAddress.getLoopbackAddress())) {
+            NagiosSettings dead = new NagiosSettingsBuilder()
+                    .withNagiosHost("127.0.0.1")
+                    .withPort(unresponsive.getLocalPort())
+                    .withConnectionTimeout(500)
+                    .withResponseTimeout(500)
+                    .create();
+            NagiosSettings second = stubSettings(secondStub);
+            sender = new ShardedNagiosPassiveCheckSender(Arrays.asList(dead, second));
+            List<MessagePayload> queued = new ArrayList<>();
+            for (int i = 0; queued.size() < 20; i++) {
+                if (sender.getShard("host" + i) == dead) {
+                    MessagePayload payload = new MessagePayload("host" + i, Level.OK, "Test Service Name", "queued for unresponsive shard");
+                    sender.send(payload);
+                    queued.add(payload);
+                }
+            }
+
+            long start = System.nanoTime();
+            sender.removeShard(dead);
+            long elapsedInMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+            assertThat(elapsedInMs, is(lessThan(3000L)));
+            int rerouted = 0;
+            for (MessagePayload payload : queued) {
+                if (secondStub.awaitMessagePayload(payload, 1000)) {
+                    rerouted++;
+                }
+            }
+            // only those already being sent to the unresponsive server are lost
+            assertThat(rerouted, is(greaterThan(queued.size() - 4)));
+        }
+    }
+
+    private Map<String, NagiosSettings> shardsOfHosts() {
+        Map<String, NagiosSettings> shards = new HashMap<>();
+        for (int i = 0; i < HOSTS; i++) {
+            shards.put("host" + i, sender.getShard("host" + i));
+        }
+        return shards;
+    }
+
+    private static NagiosSettings settings(int port) {
+        return new NagiosSettingsBuilder()
+                .withNagiosHost("127.0.0.1")
+                .withPort(port)
+                .create();
+    }
+
+    private static NagiosSettings stubSettings(NagiosNscaStub stub) {
+        return new NagiosSettingsBuilder()
+                .withNagiosHost("localhost")
+                .withPort(stub.getPort())
+                .withPassword(PASSWORD)
+                .withEncryption(XOR)
+                .create();
+    }
+}
@@ -13,9 +13,15 @@
  */
 package com.googlecode.jsendnsca.builders;
 
+import com.googlecode.jsendnsca.NagiosDestination;
 import com.googlecode.jsendnsca.NagiosSettings;
+import com.googlecode.jsendnsca.OverflowPolicy;
+import com.googlecode.jsendnsca.WaitStrategy;
 import org.junit.jupiter.api.Test;
 
+import java.io.File;
+import java.util.Arrays;
+
 import static com.googlecode.jsendnsca.encryption.Encryption.XOR;
 import static org.apache.commons.lang3.StringUtils.EMPTY;
 import static org.junit.jupiter.api.Assertions.assertEquals;
@@ -47,6 +53,24 @@ public class NagiosSettingsBuilderTest {
             .withResponseTimeout(responseTimeout)
             .withEncryption(XOR)
             .withEncryptor(XOR.getEncryptor())
+            .withConnectionPoolSize(4)
+            .withMaxConnectionAge(15000)
+            .withVirtualThreads(16)
+            .withBroadcastConcurrency(8)
+            .withQueueCapacity(100, 1024)
+            .withBlockingOverflowPolicy(250)
+            .withQueueTimeToLive(30000)
+            .withRingBuffer(1024, WaitStrategy.BUSY_SPIN)
+            .withCoalescingEnabled()
+            .withBatching(50, 5)
+            .withAdaptivePacketSize()
+            .withAddressCacheTimeToLive(60000)
+            .withDestinations(new NagiosDestination("nagios1", 5667), new NagiosDestination("nagios2", 5668))
+            .withFailoverCoolDown(1000)
+            .withCircuitBreaker(50, 20, 5000)
+            .withSpool(new File("spool"))
+            .withSpoolCapacity(128 * 1024, 1024 * 1024)
+            .withSpoolReplayRate(10)
             .create();
 
         assertEquals(host, nagiosSettings.getNagiosHost());
@@ -56,6 +80,33 @@ public class NagiosSettingsBuilderTest {
         assertEquals(responseTimeout, nagiosSettings.getTimeout());
         assertEquals(XOR.getEncryptor(), nagiosSettings.getEncryptor());
         assertEquals(4096L, nagiosSettings.getMaxMessageSizeInChars());
+        assertEquals(4, nagiosSettings.getConnectionPoolSize());
+        assertEquals(15000, nagiosSettings.getMaxConnectionAge());
+        assertEquals(true, nagiosSettings.isVirtualThreadsEnabled());
+        assertEquals(16, nagiosSettings.getMaxConcurrentSends());
+        assertEquals(8, nagiosSettings.getBroadcastConcurrency());
+        assertEquals(100, nagiosSettings.getQueueCapacity());
+        assertEquals(1024L, nagiosSettings.getQueueCapacityInBytes());
+        assertEquals(OverflowPolicy.BLOCK, nagiosSettings.getOverflowPolicy());
+        assertEquals(250, nagiosSettings.getQueueOfferTimeout());
+        assertEquals(30000, nagiosSettings.getQueueTimeToLive());
+        assertEquals(1024, nagiosSettings.getRingBufferSize());
+        assertEquals(WaitStrategy.BUSY_SPIN, nagiosSettings.getWaitStrategy());
+        assertEquals(true, nagiosSettings.isCoalescingEnabled());
+        assertEquals(50, nagiosSettings.getMaxBatchSize());
+        assertEquals(5, nagiosSettings.getLinger());
+        assertEquals(true, nagiosSettings.isAdaptivePacketSizeEnabled());
+        assertEquals(60000, nagiosSettings.getAddressCacheTimeToLive());
+        assertEquals(Arrays.asList(new NagiosDestination("nagios1", 5667), new NagiosDestination("nagios2", 5668)),
+                nagiosSettings.getDestinations());
+        assertEquals(1000, nagiosSettings.getFailoverCoolDown());
+        assertEquals(50, nagiosSettings.getCircuitBreakerFailureRateThreshold());
+        assertEquals(20, nagiosSettings.getCircuitBreakerWindowSize());
+        assertEquals(5000, nagiosSettings.getCircuitBreakerOpenDuration());
+        assertEquals(new File("spool"), nagiosSettings.getSpoolDirectory());
+        assertEquals(128 * 1024, nagiosSettings.getSpoolSegmentSize());
+        assertEquals(1024L * 1024, nagiosSettings.getSpoolCapacityInBytes());
+        assertEquals(10, nagiosSettings.getSpoolReplayRate());
     }
 
     @Test
@@ -0,0 +1,170 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.googlecode.jsendnsca.encryption;
+
+import org.bouncycastle.crypto.BlockCipher;
+import org.bouncycastle.crypto.engines.BlowfishEngine;
+import org.bouncycastle.crypto.engines.RijndaelEngine;
+import org.bouncycastle.crypto.modes.CFBBlockCipher;
+import org.bouncycastle.crypto.params.KeyParameter;
+import org.bouncycastle.crypto.params.ParametersWithIV;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertAll;
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+
+public class EncryptionTest {
+
+    private static final String PASSWORD = "password";
+
+    @Test
+    public void shouldCarryCipherStateAcrossPassiveChecksSentOverOneConnection() {
+        final Random random = new Random(42);
+        final byte[] initVector = new byte[128];
+        random.nextBytes(initVector);
+        final byte[] first = new byte[720];
+        random.nextBytes(first);
+        final byte[] second = new byte[720];
+        random.nextBytes(second);
+
+        assertAll(Arrays.stream(new Encryption[] { Encryption.TRIPLE_DES, Encryption.RIJNDAEL128, Encryption.RIJNDAEL192,
+                Encryption.RIJNDAEL256, Encryption.BLOWFISH }).map(encryption -> () -> {
+            final Encryptor encryptor = encryption.getEncryptor();
+            final byte[] expected = new byte[first.length + second.length];
+            System.arraycopy(first, 0, expected, 0, first.length);
+            System.arraycopy(second, 0, expected, first.length, second.length);
+            encryptor.encrypt(expected, initVector, PASSWORD);
+
+            final byte[] actual = new byte[expected.length];
+            final EncryptionContext context = encryptor.initialise(initVector, PASSWORD);
+            final byte[] firstCopy = first.clone();
+            final byte[] secondCopy = second.clone();
+            context.encrypt(firstCopy);
+            context.encrypt(secondCopy);
+            System.arraycopy(firstCopy, 0, actual, 0, firstCopy.length);
+            System.arraycopy(secondCopy, 0, actual, firstCopy.length, secondCopy.length);
+
+            assertArrayEquals(expected, actual, encryption.name());
+        }));
+    }
+
+    @Test
+    public void shouldEncryptEachPassiveCheckIndependentlyWithXor() {
+        final byte[] initVector = new byte[128];
+        new Random(42).nextBytes(initVector);
+        final byte[] expected = new byte[720];
+        Arrays.fill(expected, (byte) 'X');
+        Encryption.XOR.getEncryptor().encrypt(expected, initVector, PASSWORD);
+
+        final EncryptionContext context = Encryption.XOR.getEncryptor().initialise(initVector, PASSWORD);
+        final byte[] first = new byte[720];
+        Arrays.fill(first, (byte) 'X');
+        final byte[] second = first.clone();
+        context.encrypt(first);
+        context.encrypt(second);
+
+        assertAll(() -> assertArrayEquals(expected, first), () -> assertArrayEquals(expected, second));
+    }
+
+    @Test
+    public void shouldMatchBouncyCastleCipherFeedbackWhenConnectionsShareCachedKeySchedule() {
+        final Random random = new Random(7);
+        final byte[] firstInitVector = new byte[128];
+        random.nextBytes(firstInitVector);
+        final byte[] secondInitVector = new byte[128];
+        random.nextBytes(secondInitVector);
+        final byte[] passiveCheck = new byte[720];
+        random.nextBytes(passiveCheck);
+
+        assertAll(
+                () -> assertMatchesBouncyCastle(Encryption.RIJNDAEL128, new RijndaelEngine(128), 16, firstInitVector, secondInitVector, passiveCheck),
+                () -> assertMatchesBouncyCastle(Encryption.RIJNDAEL192, new RijndaelEngine(192), 24, firstInitVector, secondInitVector, passiveCheck),
+                () -> assertMatchesBouncyCastle(Encryption.RIJNDAEL256, new RijndaelEngine(256), 32, firstInitVector, secondInitVector, passiveCheck),
+                () -> assertMatchesBouncyCastle(Encryption.BLOWFISH, new BlowfishEngine(), 56, firstInitVector, secondInitVector, passiveCheck));
+    }
+
+    @Test
+    public void shouldMatchTwoPassXorForAnyLengthAndPassword() {
+        final Random random = new Random(3);
+        final byte[] initVector = new byte[128];
+        random.nextBytes(initVector);
+
+        assertAll(Arrays.stream(new String[] { "", "pw", "password", "a much longer password than the rest" })
+                .flatMap(password -> Arrays.stream(new int[] { 0, 7, 720, 723, 4304 }).mapToObj(length -> () -> {
+                    final byte[] passiveCheck = new byte[length];
+                    random.nextBytes(passiveCheck);
+                    final byte[] expected = twoPassXor(passiveCheck.clone(), initVector, password);
+
+                    final byte[] actual = passiveCheck.clone();
+                    Encryption.XOR.getEncryptor().encrypt(actual, initVector, password);
+                    final EncryptionContext context = Encryption.XOR.getEncryptor().initialise(initVector, password);
+                    final byte[] actualOnConnection = passiveCheck.clone();
+                    context.encrypt(actualOnConnection);
+                    final byte[] actualLaterOnConnection = passiveCheck.clone();
+                    context.encrypt(actualLaterOnConnection);
+
+                    assertArrayEquals(expected, actual, password + "/" + length);
+                    assertArrayEquals(expected, actualOnConnection, password + "/" + length);
+                    assertArrayEquals(expected, actualLaterOnConnection, password + "/" + length);
+                })));
+    }
+
+    private static byte[] twoPassXor(byte[] passiveCheck, byte[] initVector, String password) {
+        for (int y = 0; y < passiveCheck.length; y++) {
+            passiveCheck[y] ^= initVector[y % initVector.length];
+        }
+        final byte[] passwordBytes = password.getBytes(StandardCharsets.US_ASCII);
+        for (int y = 0; passwordBytes.length > 0 && y < passiveCheck.length; y++) {
+            passiveCheck[y] ^= passwordBytes[y % passwordBytes.length];
+        }
+        return passiveCheck;
+    }
+
+    private static void assertMatchesBouncyCastle(Encryption encryption, BlockCipher engine, int keyLength,
+            byte[] firstInitVector, byte[] secondInitVector, byte[] passiveCheck) {
+        final byte[] expectedFirst = bouncyCastleCipherFeedback(engine, keyLength, firstInitVector, passiveCheck);
+        final byte[] expectedSecond = bouncyCastleCipherFeedback(engine, keyLength, secondInitVector, passiveCheck);
+
+        final EncryptionContext first = encryption.getEncryptor().initialise(firstInitVector, PASSWORD);
+        final EncryptionContext second = encryption.getEncryptor().initialise(secondInitVector, PASSWORD);
+        final byte[] actualFirst = new byte[passiveCheck.length * 2];
+        final byte[] actualSecond = new byte[passiveCheck.length * 2];
+        for (int offset = 0; offset < actualFirst.length; offset += passiveCheck.length) {
+            final byte[] firstPacket = passiveCheck.clone();
+            final byte[] secondPacket = passiveCheck.clone();
+            first.encrypt(firstPacket);
+            second.encrypt(secondPacket);
+            System.arraycopy(firstPacket, 0, actualFirst, offset, passiveCheck.length);
+            System.arraycopy(secondPacket, 0, actualSecond, offset, passiveCheck.length);
+        }
+
+        assertArrayEquals(expectedFirst, actualFirst, encryption.name());
+        assertArrayEquals(expectedSecond, actualSecond, encryption.name());
+    }
+
+    private static byte[] bouncyCastleCipherFeedback(BlockCipher engine, int keyLength, byte[] initVector, byte[] passiveCheck) {
+        final byte[] key = Arrays.copyOf(PASSWORD.getBytes(StandardCharsets.US_ASCII), keyLength);
+        final CFBBlockCipher cipher = new CFBBlockCipher(engine, 8);
+        cipher.init(true, new ParametersWithIV(new KeyParameter(key), Arrays.copyOf(initVector, keyLength)));
+        final byte[] bytes = new byte[passiveCheck.length * 2];
+        System.arraycopy(passiveCheck, 0, bytes, 0, passiveCheck.length);
+        System.arraycopy(passiveCheck, 0, bytes, passiveCheck.length, passiveCheck.length);
+        cipher.processBytes(bytes, 0, bytes.length, bytes, 0);
+        return bytes;
+    }
+}
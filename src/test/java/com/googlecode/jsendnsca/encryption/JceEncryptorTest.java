@@ -0,0 +1,139 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.googlecode.jsendnsca.encryption;
+
+import org.bouncycastle.crypto.engines.DESedeEngine;
+import org.bouncycastle.crypto.modes.CFBBlockCipher;
+import org.bouncycastle.crypto.params.KeyParameter;
+import org.bouncycastle.crypto.params.ParametersWithIV;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class JceEncryptorTest {
+
+    private static final String PASSWORD = "password";
+
+    private final byte[] initVector = new byte[128];
+    private final byte[] passiveCheck = new byte[4304];
+
+    public JceEncryptorTest() {
+        final Random random = new Random(11);
+        random.nextBytes(initVector);
+        random.nextBytes(passiveCheck);
+    }
+
+    @Test
+    public void shouldProduceSameOutputAsBouncyCastleRijndael128() {
+        final byte[] expected = passiveCheck.clone();
+        new AESEncryptor(16).encrypt(expected, initVector, PASSWORD);
+
+        final byte[] actual = passiveCheck.clone();
+        new JceAESEncryptor().encrypt(actual, initVector, PASSWORD);
+
+        assertArrayEquals(expected, actual);
+    }
+
+    @Test
+    public void shouldProduceSameOutputAsBouncyCastleRijndael128AcrossPassiveChecksOnOneConnection() {
+        final EncryptionContext expected = new AESEncryptor(16).initialise(initVector, PASSWORD);
+        final EncryptionContext actual = new JceAESEncryptor("SunJCE").initialise(initVector, PASSWORD);
+
+        for (int i = 0; i < 3; i++) {
+            final byte[] expectedBytes = passiveCheck.clone();
+            final byte[] actualBytes = passiveCheck.clone();
+            expected.encrypt(expectedBytes);
+            actual.encrypt(actualBytes);
+
+            assertArrayEquals(expectedBytes, actualBytes);
+        }
+    }
+
+    @Test
+    public void shouldKeepConnectionsWithDifferentPasswordsIndependent() {
+        final AESEncryptor shared = new AESEncryptor(16);
+        final EncryptionContext first = shared.initialise(initVector, PASSWORD);
+        final EncryptionContext second = shared.initialise(initVector, "other password");
+
+        encryptAndAssertSame(new AESEncryptor(16).initialise(initVector, PASSWORD), first);
+        encryptAndAssertSame(new AESEncryptor(16).initialise(initVector, "other password"), second);
+        encryptAndAssertSame(new JceAESEncryptor().initialise(initVector, PASSWORD), shared.initialise(initVector, PASSWORD));
+    }
+
+    @Test
+    public void shouldProduceSameOutputAsBouncyCastleTripleDes() {
+        final CFBBlockCipher cipher = new CFBBlockCipher(new DESedeEngine(), 8);
+        cipher.init(true, new ParametersWithIV(
+                new KeyParameter(Arrays.copyOf(PASSWORD.getBytes(StandardCharsets.US_ASCII), 24)),
+                Arrays.copyOf(initVector, 8)));
+        final byte[] expected = passiveCheck.clone();
+        cipher.processBytes(expected, 0, expected.length, expected, 0);
+
+        final byte[] actual = passiveCheck.clone();
+        Encryption.TRIPLE_DES.getEncryptor().encrypt(actual, initVector, PASSWORD);
+
+        assertArrayEquals(expected, actual);
+    }
+
+    @Test
+    public void shouldReinitialiseCipherReturnedByClosedConnectionWithoutDisturbingOpenOnes() {
+        final JceAESEncryptor encryptor = new JceAESEncryptor();
+        final EncryptionContext open = encryptor.initialise(initVector, PASSWORD);
+        final EncryptionContext expected = new AESEncryptor(16).initialise(initVector, PASSWORD);
+        encryptAndAssertSame(expected, open);
+
+        final EncryptionContext closed = encryptor.initialise(initVector, PASSWORD);
+        closed.encrypt(passiveCheck.clone());
+        closed.close();
+        closed.close();
+        final EncryptionContext reused = encryptor.initialise(initVector, PASSWORD);
+        final EncryptionContext expectedReused = new AESEncryptor(16).initialise(initVector, PASSWORD);
+
+        encryptAndAssertSame(expectedReused, reused);
+        encryptAndAssertSame(expected, open);
+    }
+
+    @Test
+    public void shouldReusePooledCipherForIndependentPassiveChecks() {
+        final JceAESEncryptor encryptor = new JceAESEncryptor();
+        final byte[] first = passiveCheck.clone();
+        final byte[] second = passiveCheck.clone();
+
+        encryptor.encrypt(first, initVector, PASSWORD);
+        encryptor.encrypt(second, initVector, PASSWORD);
+
+        assertArrayEquals(first, second);
+    }
+
+    @Test
+    public void shouldThrowForUnknownProvider() {
+        final JceAESEncryptor encryptor = new JceAESEncryptor("NoSuchProvider");
+
+        assertThrows(RuntimeException.class, () -> encryptor.initialise(initVector, PASSWORD));
+    }
+
+    private void encryptAndAssertSame(EncryptionContext expected, EncryptionContext actual) {
+        final byte[] expectedBytes = passiveCheck.clone();
+        final byte[] actualBytes = passiveCheck.clone();
+        expected.encrypt(expectedBytes);
+        actual.encrypt(actualBytes);
+
+        assertArrayEquals(expectedBytes, actualBytes);
+    }
+}
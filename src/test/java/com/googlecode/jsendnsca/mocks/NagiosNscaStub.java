@@ -22,19 +22,25 @@ import org.junit.jupiter.api.extension.ExtensionContext;
 import java.io.ByteArrayInputStream;
 import java.io.DataInputStream;
 import java.io.DataOutputStream;
+import java.io.EOFException;
 import java.io.IOException;
 import java.io.InputStream;
 import java.net.InetSocketAddress;
 import java.net.ServerSocket;
 import java.net.Socket;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.Date;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.CRC32;
 
 @SuppressWarnings({"ALL"})
 public class NagiosNscaStub implements BeforeEachCallback, AfterEachCallback, Runnable {
 
-    private final List<MessagePayload> messagePayloads = new LinkedList<MessagePayload>();
+    private final List<MessagePayload> messagePayloads = Collections.synchronizedList(new LinkedList<MessagePayload>());
+    private final AtomicInteger connectionCount = new AtomicInteger();
     private ServerSocket serverSocket;
     private final int port;
     private boolean listening;
@@ -87,7 +93,9 @@ public class NagiosNscaStub implements BeforeEachCallback, AfterEachCallback, Ru
     public void run() {
         while (listening) {
             try {
-                new MultiServerThread(serverSocket.accept()).start();
+                Socket socket = serverSocket.accept();
+                connectionCount.incrementAndGet();
+                new MultiServerThread(socket).start();
             } catch (IOException ignore) {
             }
         }
@@ -101,6 +109,21 @@ public class NagiosNscaStub implements BeforeEachCallback, AfterEachCallback, Ru
         return messagePayloads;
     }
 
+    public boolean awaitMessagePayload(MessagePayload payload, long timeoutInMs) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + timeoutInMs;
+        while (!messagePayloads.contains(payload)) {
+            if (System.currentTimeMillis() >= deadline) {
+                return false;
+            }
+            Thread.sleep(10);
+        }
+        return true;
+    }
+
+    public int getConnectionCount() {
+        return connectionCount.get();
+    }
+
     public void turnOnLargeMessageSupportAsInNsca291() {
         maxMessageSizeInChars = 4096;
     }
@@ -142,6 +165,7 @@ public class NagiosNscaStub implements BeforeEachCallback, AfterEachCallback, Ru
     @SuppressWarnings({"ClassExplicitlyExtendsThread"})
     private class MultiServerThread extends Thread {
         private static final int INITIALISATION_VECTOR_SIZE = 128;
+        private static final int LEGACY_MESSAGE_SIZE_IN_CHARS = 512;
 
         private Socket socket;
 
@@ -166,7 +190,13 @@ public class NagiosNscaStub implements BeforeEachCallback, AfterEachCallback, Ru
                     outputStream.writeInt((int) (new Date().getTime() / 1000));
                     outputStream.flush();
                     inputStream = socket.getInputStream();
-                    messagePayloads.add(parsePayload(inputStream, initVector));
+                    // NSCA keeps reading passive checks until the connection is closed
+                    try {
+                        while (true) {
+                            messagePayloads.add(parsePayload(inputStream, initVector));
+                        }
+                    } catch (EOFException endOfSession) {
+                    }
                 }
             } catch (IOException e) {
                 e.printStackTrace();
@@ -192,10 +222,16 @@ public class NagiosNscaStub implements BeforeEachCallback, AfterEachCallback, Ru
         private MessagePayload parsePayload(InputStream inputStream, byte[] initVector) throws IOException {
             DataInputStream stream = new DataInputStream(inputStream);
 
-            byte[] bytes = new byte[16 + 64 + 128 + maxMessageSizeInChars];
-            stream.readFully(bytes);
-
-            decrypt(bytes, initVector);
+            // like NSCA 2.9, accept a legacy packet when its CRC is valid before reading a large one
+            int messageSize = LEGACY_MESSAGE_SIZE_IN_CHARS;
+            byte[] encrypted = new byte[16 + 64 + 128 + maxMessageSizeInChars];
+            stream.readFully(encrypted, 0, 16 + 64 + 128 + messageSize);
+            byte[] bytes = decrypted(encrypted, 16 + 64 + 128 + messageSize, initVector);
+            if (maxMessageSizeInChars > messageSize && !hasValidCrc(bytes)) {
+                stream.readFully(encrypted, bytes.length, encrypted.length - bytes.length);
+                messageSize = maxMessageSizeInChars;
+                bytes = decrypted(encrypted, encrypted.length, initVector);
+            }
 
             stream = new DataInputStream(new ByteArrayInputStream(bytes));
 
@@ -210,7 +246,7 @@ public class NagiosNscaStub implements BeforeEachCallback, AfterEachCallback, Ru
             stream.readFully(serviceNameBytes);
             String serviceName = new String(serviceNameBytes).trim();
 
-            byte[] messageBytes = new byte[maxMessageSizeInChars];
+            byte[] messageBytes = new byte[messageSize];
             stream.readFully(messageBytes);
             String message = new String(messageBytes).trim();
             return new MessagePayloadBuilder().withHostname(hostName).withLevel(level).withServiceName(serviceName).withMessage(message).create();
@@ -223,6 +259,21 @@ public class NagiosNscaStub implements BeforeEachCallback, AfterEachCallback, Ru
             }
         }
 
+        private byte[] decrypted(byte[] encrypted, int length, byte[] initVector) {
+            byte[] bytes = Arrays.copyOf(encrypted, length);
+            decrypt(bytes, initVector);
+            return bytes;
+        }
+
+        private boolean hasValidCrc(byte[] bytes) {
+            int expected = ((bytes[4] & 0xFF) << 24) | ((bytes[5] & 0xFF) << 16) | ((bytes[6] & 0xFF) << 8) | (bytes[7] & 0xFF);
+            byte[] withoutCrc = bytes.clone();
+            Arrays.fill(withoutCrc, 4, 8, (byte) 0);
+            CRC32 crc = new CRC32();
+            crc.update(withoutCrc);
+            return (int) crc.getValue() == expected;
+        }
+
         private void decrypt(byte[] sendBuffer, byte[] initVector) {
             if (password != null) {
                 byte[] myPasswordBytes = password.getBytes();
@@ -16,6 +16,8 @@ package com.googlecode.jsendnsca.utils;
 import org.apache.commons.lang3.StringUtils;
 import org.junit.jupiter.api.Test;
 
+import java.nio.charset.StandardCharsets;
+
 import static org.junit.jupiter.api.Assertions.assertArrayEquals;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertNull;
@@ -78,4 +80,26 @@ public class ByteArrayUtilsTest {
 
         assertArrayEquals(expected, actual);
     }
+
+    @Test
+    public void shouldWriteNonAsciiCharactersAsQuestionMarksLikeUsAsciiEncoding() {
+        final String value = "a\u00e9\ud83d\ude00b";
+        final byte[] expected = new byte[6];
+        final byte[] ascii = value.getBytes(StandardCharsets.US_ASCII);
+        System.arraycopy(ascii, 0, expected, 0, ascii.length);
+
+        final byte[] actual = ByteArrayUtils.getFixedSizeBytes(6, value);
+
+        assertArrayEquals(expected, actual);
+    }
+
+    @Test
+    public void shouldClearPreviousContentsWhenWritingFixedStringIntoReusedArray() {
+        final byte[] expected = new byte[] { 9, 0, 0, 0, 0, 9 };
+        final byte[] actual = new byte[] { 9, 9, 9, 9, 9, 9 };
+
+        ByteArrayUtils.writeFixedString(actual, "   ", 1, 4);
+
+        assertArrayEquals(expected, actual);
+    }
 }